@@ -0,0 +1,166 @@
+package massim.agent.bench;
+
+import cz.agents.alite.communication.channel.DirectCommunicationChannel;
+import massim.agent.Action;
+import massim.agent.CellPercept;
+import massim.agent.MASPerception;
+import massim.agent.MASQueenAgent;
+import massim.agent.StartAgents;
+import massim.agent.driver.MessageCounter;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Check of the allocation of the deliberation in the steady state. The
+ * agents are stepped like by the in-memory step driver and the bytes
+ * allocated by every step are measured by the thread allocation counter of
+ * the JVM. The first runs warm up the JIT, the steady state of the other
+ * runs starts once all the agents started working, i.e. in the second
+ * round after all the agents announced they are ready.
+ * <p/>
+ * Every quiet step of the steady state, i.e. a step in which the agent
+ * neither receives nor sends a message, has to allocate nothing. The steps
+ * receiving messages only may allocate on average at most the given bytes
+ * per step. The steps sending messages allocate by the number of the sent
+ * messages, a sent message is a new {@link cz.agents.alite.communication.Message}
+ * of the communicator and a no-good is created for every sent or stored
+ * no-good, so they may allocate on average at most the given bytes per
+ * delivered message.
+ * <p/>
+ * The tree has no test framework, so the check is a program run by hand.
+ * <p/>
+ * Usage: <code>AllocationBenchmark [size] [runs] [warmupRuns] [maxSteps]
+ * [receivingBytes] [sendingBytes]</code>, exits with 1 if the steps of the
+ * steady state exceeded their allocation.
+ */
+public class AllocationBenchmark {
+
+	public static void main(String[] args) {
+		final int size = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+		final int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+		final int warmupRuns = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+		final int maxSteps = (args.length > 3) ? Integer.parseInt(args[3]) : 5000;
+		final double receivingBytes = (args.length > 4) ? Double.parseDouble(args[4]) : 128;
+		final double sendingBytes = (args.length > 5) ? Double.parseDouble(args[5]) : 1024;
+
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long thread = Thread.currentThread().getId();
+		// the reading itself may allocate, e.g. in the interpreter
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < 100000; i++) {
+			final long before = threads.getThreadAllocatedBytes(thread);
+			overhead = Math.min(overhead, threads.getThreadAllocatedBytes(thread) - before);
+		}
+
+		// steady state steps: quiet, receiving only and sending, see Steps
+		final Steps quiet = new Steps(), receiving = new Steps(), sending = new Steps();
+		for (int run = 0; run < runs; run++) {
+			final boolean measured = run >= warmupRuns;
+			final MessageCounter counter = new MessageCounter();
+			final List<MASQueenAgent> agents = new ArrayList<MASQueenAgent>(StartAgents.createAgents(StartAgents.DEFAULT_FACTORY, "run" + run + "-",
+					"localhost", 0, size, counter, new DirectCommunicationChannel.DefaultReceiverTable()));
+			final Random random = new Random(run);
+			final List<Integer> rows = new ArrayList<Integer>();
+			for (int i = 0; i < size; i++) {
+				rows.add(i);
+			}
+			Collections.shuffle(rows, random);
+			final int[] columns = new int[size];
+			final List<CellPercept> cells = Collections.emptyList();
+			for (int i = 0; i < size; i++) {
+				columns[i] = 1;
+			}
+
+			boolean announced = false, steady = false;
+			for (int step = 0; step < maxSteps; step++) {
+				// the agents start working in the round after all the myState were delivered
+				steady = announced;
+				announced = getCount(counter, "myState") >= size * (size - 1);
+				for (int i = 0; i < size; i++) {
+					final MASQueenAgent agent = agents.get(i);
+					final MASPerception percept = new MASPerception(columns[i], rows.get(i) + 1, 0, step, cells);
+					final int received = agent.getInboxSize() + agent.getPendingSize();
+					final long messages = counter.getTotal();
+
+					final long before = threads.getThreadAllocatedBytes(thread);
+					final Action action = agent.step(percept);
+					final long bytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+
+					if (action == Action.EAST) columns[i] = Math.min(columns[i] + 1, size);
+					if (action == Action.WEST) columns[i] = Math.max(columns[i] - 1, 1);
+					if (measured && steady) {
+						final long sent = counter.getTotal() - messages;
+						if (sent > 0) {
+							sending.add(bytes, sent);
+						} else if (received > 0) {
+							receiving.add(bytes, received);
+						} else {
+							quiet.add(bytes, 0);
+						}
+					}
+				}
+			}
+		}
+
+		System.out.println(String.format("size=%d runs=%d (warm-up %d), steady state steps:", size, runs, warmupRuns));
+		System.out.println("  quiet:     " + quiet);
+		System.out.println("  receiving: " + receiving + " per received message");
+		System.out.println("  sending:   " + sending + " per delivered message");
+		boolean failed = false;
+		if (quiet.allocating > 0) {
+			System.out.println("FAILED: the quiet steps should not allocate");
+			failed = true;
+		}
+		if (receiving.getBytesPerStep() > receivingBytes) {
+			System.out.println("FAILED: the receiving steps should allocate at most " + receivingBytes + "B per step");
+			failed = true;
+		}
+		if (sending.getBytesPerMessage() > sendingBytes) {
+			System.out.println("FAILED: the sending steps should allocate at most " + sendingBytes + "B per delivered message");
+			failed = true;
+		}
+		if (failed) {
+			System.exit(1);
+		}
+	}
+
+	/** @return the number of the received messages of given type */
+	private static long getCount(MessageCounter counter, String type) {
+		final Long count = counter.getCounts().get(type);
+		return (count == null) ? 0 : count;
+	}
+
+	/** Allocation of a kind of the steps. */
+	private static class Steps {
+
+		private long steps, allocating, bytes, maxBytes, messages;
+
+		private void add(long bytes, long messages) {
+			steps++;
+			this.messages += messages;
+			if (bytes > 0) {
+				allocating++;
+				this.bytes += bytes;
+				maxBytes = Math.max(maxBytes, bytes);
+			}
+		}
+
+		private double getBytesPerStep() {
+			return (steps == 0) ? 0.0 : (double) bytes / steps;
+		}
+
+		private double getBytesPerMessage() {
+			return (messages == 0) ? 0.0 : (double) bytes / messages;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("steps=%d, allocating=%d, max=%dB, %.1fB per step, %.1fB", steps, allocating, maxBytes,
+					getBytesPerStep(), getBytesPerMessage());
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package massim.agent.bench;
+
+import massim.agent.student.puzzle.ChessBoard;
+
+import java.util.Random;
+
+/**
+ * Chessboards for the benchmarks.
+ */
+public class Boards {
+
+	/** Seed of the random placement, the benchmarks run on the same boards. */
+	public static final long SEED = 42L;
+
+	private Boards() {}
+
+	/**
+	 * Creates a chessboard with given ratio of placed queens. The queens are
+	 * placed at positions of a valid solution, so checking the constraints
+	 * has to scan the whole board. The placed rows are chosen at random.
+	 *
+	 * @param size The size of the chessboard, at least 4.
+	 * @param fill The ratio of the rows with a placed queen.
+	 */
+	public static ChessBoard create(int size, double fill) {
+		final int[] solution = solution(size);
+		final ChessBoard chessBoard = new ChessBoard(size);
+		final Random random = new Random(SEED);
+		final int[] rows = permutation(size, random);
+		final int placed = (int) Math.round(fill * size);
+		for (int i = 0; i < placed; i++) {
+			chessBoard.setPosition(rows[i], solution[rows[i]]);
+		}
+		return chessBoard;
+	}
+
+	/**
+	 * Explicit solution of the N-queen puzzle, i.e. positions of the
+	 * queens indexed by row, see the explicit construction at
+	 * <a href="http://en.wikipedia.org/wiki/Eight_queens_puzzle">Wikipedia</a>.
+	 *
+	 * @param size The size of the chessboard, at least 4.
+	 */
+	public static int[] solution(int size) {
+		if (size < 4) throw new IllegalArgumentException("size=" + size);
+
+		// columns are numbered from 1 as in the construction
+		final int[] columns = new int[size];
+		int i = 0;
+		if (size % 6 == 3) {
+			for (int c = 4; c <= size; c += 2) columns[i++] = c;
+			columns[i++] = 2;
+			for (int c = 5; c <= size; c += 2) columns[i++] = c;
+			columns[i++] = 1;
+			columns[i++] = 3;
+		} else if (size % 6 == 2) {
+			for (int c = 2; c <= size; c += 2) columns[i++] = c;
+			columns[i++] = 3;
+			columns[i++] = 1;
+			for (int c = 7; c <= size; c += 2) columns[i++] = c;
+			columns[i++] = 5;
+		} else {
+			for (int c = 2; c <= size; c += 2) columns[i++] = c;
+			for (int c = 1; c <= size; c += 2) columns[i++] = c;
+		}
+
+		for (i = 0; i < size; i++) {
+			columns[i]--;
+		}
+		return columns;
+	}
+
+	/** @return random permutation of numbers <tt>0..size-1</tt> */
+	public static int[] permutation(int size, Random random) {
+		final int[] permutation = new int[size];
+		for (int i = 0; i < size; i++) {
+			permutation[i] = i;
+		}
+		for (int i = size - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int tmp = permutation[i];
+			permutation[i] = permutation[j];
+			permutation[j] = tmp;
+		}
+		return permutation;
+	}
+}
@@ -0,0 +1,52 @@
+package massim.agent.bench;
+
+import massim.agent.student.NoGood;
+import massim.agent.student.puzzle.ChessBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the constraint checks of the chessboard.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChessBoardBenchmark {
+
+	@Param({"8", "64", "512", "4096"})
+	public int size;
+
+	@Param({"0.25", "0.5", "1.0"})
+	public double fill;
+
+	private ChessBoard chessBoard;
+
+	@Setup
+	public void setUp() {
+		chessBoard = Boards.create(size, fill);
+	}
+
+	@Benchmark
+	public boolean checkConstraints() {
+		return chessBoard.checkConstraints();
+	}
+
+	@Benchmark
+	public NoGood getNoGoodForQueen() {
+		return chessBoard.getNoGoodForQueen(size - 1);
+	}
+}
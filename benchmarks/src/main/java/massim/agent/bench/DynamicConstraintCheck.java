@@ -0,0 +1,163 @@
+package massim.agent.bench;
+
+import massim.agent.StartAgents;
+import massim.agent.driver.DriverResult;
+import massim.agent.driver.InMemoryStepDriver;
+import massim.agent.student.SolverConfig;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Check of the dynamic constraints against the brute force search. The
+ * scenarios add and remove the constraints between the runs of the
+ * in-memory step driver, every run has to terminate with the verdict of the
+ * brute force search. A found solution satisfies the constraints, the
+ * driver does not finish the run otherwise.
+ * <p/>
+ * The tree has no test framework, so like {@link AllocationBenchmark} the
+ * check is a program run by hand.
+ * <p/>
+ * Usage: <code>DynamicConstraintCheck [maxSteps] [randomRuns]</code>, exits with
+ * 1 if a run did not terminate with the right verdict.
+ */
+public class DynamicConstraintCheck {
+
+	/** The number of the failed runs. */
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		final int maxSteps = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+		final int randomRuns = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+		// a change of the unsolvable puzzle restarts the unassigned first queen
+		final Scenario unsolvable = new Scenario("unsolvable", 4, false, maxSteps);
+		final int left = unsolvable.add(0, 1, false);
+		unsolvable.add(0, 2, false);
+		unsolvable.check();
+		unsolvable.add(3, 0, false);
+		unsolvable.check();
+		unsolvable.remove(left);
+		unsolvable.check();
+		unsolvable.close();
+
+		// the first queen pinned to the half pruned by the symmetry breaking
+		final Scenario pinned = new Scenario("symmetry-pinned", 8, true, maxSteps);
+		pinned.add(0, 6, true);
+		pinned.check();
+		pinned.close();
+
+		final Scenario moved = new Scenario("symmetry-moved", 8, true, maxSteps);
+		moved.check();
+		final int id = moved.add(0, 7, true);
+		moved.check();
+		moved.remove(id);
+		moved.check();
+		moved.close();
+
+		// the only solution left is ruled out by the middle column rule
+		final Scenario middle = new Scenario("symmetry-middle", 5, true, maxSteps);
+		middle.check();
+		middle.add(0, 2, true);
+		middle.check();
+		middle.add(1, 4, true);
+		middle.check();
+		middle.close();
+
+		// random changes of small puzzles, often unsolvable
+		final int[] sizes = {5, 6, 8};
+		for (int run = 0; run < randomRuns; run++) {
+			final Random random = new Random(run);
+			final int size = sizes[run % sizes.length];
+			final Scenario scenario = new Scenario("random-" + run, size, random.nextBoolean(), maxSteps);
+			final List<Integer> ids = new ArrayList<Integer>();
+			scenario.check();
+			for (int change = 0; change < 8; change++) {
+				if (!ids.isEmpty() && random.nextInt(3) == 0) {
+					scenario.remove(ids.remove(random.nextInt(ids.size())));
+				} else {
+					ids.add(scenario.add(random.nextInt(size), random.nextInt(size), random.nextInt(4) == 0));
+				}
+				scenario.check();
+			}
+			scenario.close();
+		}
+
+		if (failures > 0) {
+			System.out.println("FAILED: " + failures + " runs");
+			System.exit(1);
+		}
+	}
+
+	/** A run of the in-memory step driver continued after every change of the constraints. */
+	private static class Scenario {
+
+		private final String name;
+		private final int size;
+		private final InMemoryStepDriver driver;
+		/** The rows, the columns and whether pinned (1) of the constraints, by the identifiers. */
+		private final Map<Integer, int[]> constraints = new LinkedHashMap<Integer, int[]>();
+		private int checks = 0;
+
+		private Scenario(String name, int size, boolean symmetryBreaking, int maxSteps) {
+			this.name = name;
+			this.size = size;
+			final SolverConfig config = new SolverConfig();
+			config.symmetryBreaking = symmetryBreaking;
+			driver = new InMemoryStepDriver(size, 1, maxSteps);
+			driver.setAgentFactory(StartAgents.factory(config));
+		}
+
+		private int add(int row, int column, boolean pinned) {
+			final int id = driver.addConstraint(row, column, pinned);
+			constraints.put(id, new int[] {row, column, pinned ? 1 : 0});
+			return id;
+		}
+
+		private void remove(int id) {
+			driver.removeConstraint(id);
+			constraints.remove(id);
+		}
+
+		/** Continues the run and compares its verdict with the brute force search. */
+		private void check() {
+			final boolean finished = driver.run(Integer.MAX_VALUE);
+			final DriverResult result = driver.getResult();
+			final boolean solvable = place(new int[size], 0);
+			final boolean ok = finished && result.isTerminated() && result.isSolved() == solvable;
+			if (!ok) failures++;
+			System.out.println(String.format("%s #%d %s: solvable=%s, %s", name, ++checks, ok ? "ok" : "FAILED", solvable, result));
+		}
+
+		private void close() {
+			driver.shutdown();
+		}
+
+		/** @return <tt>true</tt> IFF the queens from given row on can be placed */
+		private boolean place(int[] columns, int row) {
+			if (row == size) return true;
+			for (int column = 0; column < size; column++) {
+				if (!isAllowed(row, column)) continue;
+				boolean attacked = false;
+				for (int other = 0; other < row && !attacked; other++) {
+					attacked = columns[other] == column || Math.abs(columns[other] - column) == row - other;
+				}
+				if (attacked) continue;
+				columns[row] = column;
+				if (place(columns, row + 1)) return true;
+			}
+			return false;
+		}
+
+		/** @return <tt>true</tt> IFF the constraints allow the queen of given row in given column */
+		private boolean isAllowed(int row, int column) {
+			for (int[] constraint : constraints.values()) {
+				if (constraint[0] == row && (constraint[2] == 1) != (constraint[1] == column)) return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package massim.agent.bench;
+
+import massim.agent.student.SolverConfig;
+import massim.agent.student.coloring.GraphColoringModel;
+import massim.agent.student.csp.AbtSolver;
+import massim.agent.student.csp.AgentView;
+import massim.agent.student.csp.ConstraintModel;
+import massim.agent.student.csp.VariableNoGood;
+import massim.agent.student.puzzle.NQueensModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of the ABT kernel over the constraint models, without the
+ * agents and the server. The solvers of the variables run in synchronous
+ * rounds in one thread, the messages sent in a round are received in the
+ * next one. The run ends when no message is sent (a solution), by an empty
+ * no-good (no solution) or after the maximal number of the rounds.
+ * <p/>
+ * Usage: <code>KernelBenchmark queens [sizes] [seeds] [maxRounds]</code> or
+ * <code>KernelBenchmark coloring [sizes] [seeds] [maxRounds] [colors] [density]</code>,
+ * e.g. <code>KernelBenchmark coloring 20,40 5 100000 4 0.1</code>. The
+ * no-goods are the whole agent views like sent by the agents, i.e. the
+ * search backtracks chronologically, so the sparse graphs of more vertices
+ * may take too many rounds.
+ */
+public class KernelBenchmark {
+
+	public static void main(String[] args) {
+		final String type = (args.length > 0) ? args[0] : "queens";
+		final String[] sizes = ((args.length > 1) ? args[1] : "8,16,32").split(",");
+		final int seeds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+		final int maxRounds = (args.length > 3) ? Integer.parseInt(args[3]) : 100000;
+		final int colors = (args.length > 4) ? Integer.parseInt(args[4]) : 3;
+		final double density = (args.length > 5) ? Double.parseDouble(args[5]) : 0.1;
+
+		// warm up the JVM on a small instance
+		for (int i = 0; i < 20; i++) {
+			run(createModel(type, 8, colors, density, i), i, maxRounds);
+		}
+
+		System.out.println("model,seed,rounds,solved,unsolvable,okMessages,noGoods,wallMillis");
+		for (String size : sizes) {
+			for (long seed = 0; seed < seeds; seed++) {
+				final ConstraintModel model = createModel(type, Integer.parseInt(size.trim()), colors, density, seed);
+				System.out.println(model + "," + seed + "," + run(model, seed, maxRounds));
+			}
+		}
+	}
+
+	/** @return the model of given type and size */
+	private static ConstraintModel createModel(String type, int size, int colors, double density, long seed) {
+		if ("queens".equals(type)) return new NQueensModel(size, false);
+		if ("coloring".equals(type)) return GraphColoringModel.random(size, colors, density, seed);
+		throw new IllegalArgumentException("unknown model " + type);
+	}
+
+	/** @return the result of a run of the solvers of given model as a CSV row */
+	static String run(ConstraintModel model, long seed, int maxRounds) {
+		final int n = model.getVariables();
+		final SolverConfig config = new SolverConfig();
+		config.seed = seed;
+		final List<AbtSolver<VariableNoGood>> solvers = new ArrayList<AbtSolver<VariableNoGood>>(n);
+		List<List<Object>> inboxes = new ArrayList<List<Object>>(n);
+		List<List<Object>> outboxes = new ArrayList<List<Object>>(n);
+		for (int i = 0; i < n; i++) {
+			solvers.add(new AbtSolver<VariableNoGood>(model.createVariable(i), model.createView(), new ArrayList<VariableNoGood>(), null));
+			solvers.get(i).getVariable().shuffle(config.createRandom(i));
+			inboxes.add(new ArrayList<Object>());
+			outboxes.add(new ArrayList<Object>());
+		}
+
+		final long start = System.nanoTime();
+		long okMessages = 0, noGoods = 0;
+		boolean unsolvable = false, sent = true;
+		int rounds = 0;
+		while (sent && !unsolvable && rounds < maxRounds) {
+			sent = false;
+			for (int i = 0; i < n && !unsolvable; i++) {
+				final AbtSolver<VariableNoGood> solver = solvers.get(i);
+				final List<Object> inbox = inboxes.get(i);
+				for (Object message : inbox) {
+					if (message instanceof VariableNoGood) {
+						solver.receiveNoGood((VariableNoGood) message);
+					} else {
+						final int[] ok = (int[]) message;
+						solver.receiveValue(ok[0], ok[1]);
+					}
+				}
+				if (rounds > 0 && inbox.isEmpty()) continue;
+				inbox.clear();
+
+				switch (solver.revise(AbtSolver.NO_DEADLINE)) {
+					case CHANGED:
+						final int[] ok = {i, solver.getVariable().getValue()};
+						for (int j = i + 1; j < n; j++) {
+							outboxes.get(j).add(ok);
+						}
+						okMessages += n - 1 - i;
+						sent |= i + 1 < n;
+						break;
+					case INCONSISTENT:
+						final VariableNoGood noGood = solver.getNoGood();
+						if (noGood.isEmpty()) {
+							unsolvable = true;
+						} else {
+							outboxes.get(i - 1).add(noGood);
+							noGoods++;
+							sent = true;
+						}
+						break;
+					default:
+						// still consistent, nothing to send
+				}
+			}
+			final List<List<Object>> received = outboxes;
+			outboxes = inboxes;
+			inboxes = received;
+			rounds++;
+		}
+		final double millis = (System.nanoTime() - start) / 1e6;
+		return String.format("%d,%s,%s,%d,%d,%.3f", rounds, isSolution(model, solvers), unsolvable, okMessages, noGoods, millis);
+	}
+
+	/** @return <tt>true</tt> IFF the values of the variables are a solution, checked by a new view */
+	private static boolean isSolution(ConstraintModel model, List<AbtSolver<VariableNoGood>> solvers) {
+		final AgentView view = model.createView();
+		for (AbtSolver<VariableNoGood> solver : solvers) {
+			if (!solver.getVariable().hasValue()) return false;
+			view.setValue(solver.getVariable().getIndex(), solver.getVariable().getValue());
+		}
+		return view.isConsistent();
+	}
+}
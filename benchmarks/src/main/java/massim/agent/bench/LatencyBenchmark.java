@@ -0,0 +1,105 @@
+package massim.agent.bench;
+
+import massim.agent.channel.EmulatedNetwork;
+import massim.agent.channel.LinkModel;
+import massim.agent.driver.DriverResult;
+import massim.agent.driver.InMemoryStepDriver;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * End-to-end benchmark of the solver under message latency, runs the
+ * agents by the in-memory step driver over an emulated network for a
+ * sweep of link delays and seeds. The delay 0 is the direct delivery,
+ * i.e. the baseline. The random part of the delays is given as a ratio of
+ * the delay.
+ * <p/>
+ * Usage: <code>LatencyBenchmark [size] [delays] [seeds] [maxSteps] [jitter] [distribution] [reorder] [output]</code>,
+ * e.g. <code>LatencyBenchmark 16 0,1,2,4,8 5 20000 0.5 exponential 0 latency</code>
+ * writes <tt>latency.csv</tt> and prints the degradation against the baseline.
+ */
+public class LatencyBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		final int size = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+		final int[] delays = parseInts((args.length > 1) ? args[1] : "0,1,2,4,8");
+		final int seeds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+		final int maxSteps = (args.length > 3) ? Integer.parseInt(args[3]) : 20000;
+		final double jitter = (args.length > 4) ? Double.parseDouble(args[4]) : 0.5;
+		final LinkModel.Distribution distribution = LinkModel.Distribution.valueOf((args.length > 5) ? args[5] : "exponential");
+		final double reorder = (args.length > 6) ? Double.parseDouble(args[6]) : 0;
+		final String output = (args.length > 7) ? args[7] : "latency";
+
+		// warm up the JVM on a small instance
+		new InMemoryStepDriver(8, -1, maxSteps).run();
+
+		final PrintWriter out = new PrintWriter(new FileWriter(output + ".csv"));
+		double baselineSteps = 0, baselineMessages = 0, baselineMillis = 0;
+		try {
+			out.println("delay,jitter,distribution,reorder,size,seed,steps,terminated,solved,wallMillis,messages,peakInFlight");
+			System.out.println(String.format("%6s %10s %10s %12s %10s %8s %8s", "delay", "steps", "messages", "wallMillis", "inFlight", "steps/0", "msgs/0"));
+			for (int delay : delays) {
+				final List<DriverResult> results = new ArrayList<DriverResult>();
+				int peakInFlight = 0;
+				for (long seed = 0; seed < seeds; seed++) {
+					final InMemoryStepDriver driver = new InMemoryStepDriver(size, seed, maxSteps);
+					EmulatedNetwork network = null;
+					if (delay > 0) {
+						final LinkModel model = new LinkModel();
+						model.delay = delay;
+						model.jitter = jitter * delay;
+						model.distribution = distribution;
+						model.reorder = reorder;
+						network = new EmulatedNetwork(model, seed);
+						driver.setNetwork(network);
+					}
+					final DriverResult result = driver.run();
+					final int inFlight = (network == null) ? 0 : network.getPeakInFlight();
+					peakInFlight = Math.max(peakInFlight, inFlight);
+					results.add(result);
+					out.printf("%d,%.2f,%s,%.2f,%d,%d,%d,%s,%s,%.3f,%d,%d%n", delay, jitter * delay, distribution, reorder, size, seed,
+							result.getSteps(), result.isTerminated(), result.isSolved(), result.getWallMillis(), result.getMessages(), inFlight);
+				}
+
+				final double steps = median(results, 0), messages = median(results, 1), millis = median(results, 2);
+				if (delay == delays[0]) {
+					baselineSteps = steps;
+					baselineMessages = messages;
+					baselineMillis = millis;
+				}
+				System.out.println(String.format("%6d %10.0f %10.0f %12.1f %10d %7.2fx %7.2fx", delay, steps, messages, millis, peakInFlight,
+						steps / baselineSteps, messages / baselineMessages));
+			}
+		} finally {
+			out.close();
+		}
+		System.out.println(String.format("medians of %d seeds, baseline delay %d: %.1fms", seeds, delays[0], baselineMillis));
+	}
+
+	/** @return median of the steps (0), of the messages (1) or of the wall time (2) of given results */
+	private static double median(List<DriverResult> results, int metric) {
+		final double[] values = new double[results.size()];
+		for (int i = 0; i < values.length; i++) {
+			final DriverResult result = results.get(i);
+			values[i] = (metric == 0) ? result.getSteps() : (metric == 1) ? result.getMessages() : result.getWallMillis();
+		}
+		Arrays.sort(values);
+		final int middle = values.length / 2;
+		return (values.length % 2 == 1) ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+	}
+
+	/** @return integers parsed from a comma separated list */
+	private static int[] parseInts(String list) {
+		final String[] values = list.split(",");
+		final int[] ints = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			ints[i] = Integer.parseInt(values[i].trim());
+		}
+		return ints;
+	}
+}
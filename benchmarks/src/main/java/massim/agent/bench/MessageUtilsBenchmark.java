@@ -0,0 +1,64 @@
+package massim.agent.bench;
+
+import cz.agents.alite.communication.DefaultCommunicator;
+import cz.agents.alite.communication.Message;
+import massim.agent.student.NoGood;
+import massim.agent.student.utils.MessageData;
+import massim.agent.student.utils.MessageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the round trip of the messages exchanged by the agents,
+ * i.e. creating the content, wrapping it into a message and parsing it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageUtilsBenchmark {
+
+	@Param({"8", "64", "512", "4096"})
+	public int size;
+
+	@Param({"0.25", "0.5", "1.0"})
+	public double fill;
+
+	private DefaultCommunicator communicator;
+	private NoGood noGood;
+	private Integer position;
+
+	@Setup
+	public void setUp() {
+		communicator = new DefaultCommunicator("bench");
+		noGood = Boards.create(size, fill).getNoGoodForQueen(size - 1);
+		position = size / 2;
+	}
+
+	@Benchmark
+	public Integer okRoundTrip() {
+		final Message message = communicator.createMessage(MessageUtils.create("Ok?", position));
+		final MessageData<?> data = MessageUtils.parse(message);
+		return MessageUtils.getData(data);
+	}
+
+	@Benchmark
+	public NoGood noGoodRoundTrip() {
+		final Message message = communicator.createMessage(MessageUtils.create("NoGood", noGood));
+		final MessageData<?> data = MessageUtils.parse(message);
+		return MessageUtils.getData(data);
+	}
+}
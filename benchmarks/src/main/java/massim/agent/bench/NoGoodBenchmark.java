@@ -0,0 +1,63 @@
+package massim.agent.bench;
+
+import massim.agent.student.NoGood;
+import massim.agent.student.puzzle.ChessBoard;
+import massim.agent.student.puzzle.Queen;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the no-good operations, the no-good holds the context of
+ * the last queen, i.e. all the other placed queens.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NoGoodBenchmark {
+
+	@Param({"8", "64", "512", "4096"})
+	public int size;
+
+	@Param({"0.25", "0.5", "1.0"})
+	public double fill;
+
+	private ChessBoard chessBoard;
+	private NoGood noGood;
+	private Queen queen;
+
+	@Setup
+	public void setUp() {
+		chessBoard = Boards.create(size, fill);
+		noGood = chessBoard.getNoGoodForQueen(size - 1);
+		// the no-good is sent to the deepest queen of its context
+		int deepest = 0;
+		for (int i = 0; i < size - 1; i++) {
+			if (noGood.hasPosition(i)) deepest = i;
+		}
+		queen = new Queen(deepest, size);
+	}
+
+	@Benchmark
+	public boolean verifyContext() {
+		return noGood.verifyContext(chessBoard);
+	}
+
+	@Benchmark
+	public NoGood createNoGoodForQueen() {
+		return noGood.createNoGoodForQueen(queen);
+	}
+}
@@ -0,0 +1,53 @@
+package massim.agent.bench;
+
+import massim.agent.student.puzzle.Queen;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of searching the domain of a queen, the fill ratio is the
+ * ratio of the unavailable positions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueenBenchmark {
+
+	@Param({"8", "64", "512", "4096"})
+	public int size;
+
+	@Param({"0.25", "0.5", "0.9"})
+	public double fill;
+
+	private Queen queen;
+
+	@Setup
+	public void setUp() {
+		queen = new Queen(size - 1, size);
+		final int[] positions = Boards.permutation(size, new Random(Boards.SEED));
+		final int unavailable = Math.min((int) Math.round(fill * size), size - 1);
+		for (int i = 0; i < unavailable; i++) {
+			queen.markUnavailable(positions[i]);
+		}
+	}
+
+	@Benchmark
+	public int nextPosition() {
+		return queen.nextPosition();
+	}
+}
@@ -0,0 +1,109 @@
+package massim.agent.bench;
+
+import massim.agent.driver.DriverResult;
+import massim.agent.driver.InMemoryStepDriver;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * End-to-end scaling benchmark of the solver, runs the agents by the
+ * in-memory step driver for a sweep of chessboard sizes and seeds.
+ * <p/>
+ * Usage: <code>ScalingBenchmark [sizes] [seeds] [maxSteps] [output]</code>,
+ * e.g. <code>ScalingBenchmark 8,16,32 5 10000 scaling</code> writes
+ * <tt>scaling.csv</tt> and <tt>scaling.json</tt>.
+ */
+public class ScalingBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		final int[] sizes = parseSizes((args.length > 0) ? args[0] : "8,16,32,64");
+		final int seeds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		final int maxSteps = (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+		final String output = (args.length > 3) ? args[3] : "scaling";
+
+		// warm up the JVM on a small instance
+		new InMemoryStepDriver(8, -1, maxSteps).run();
+
+		final List<DriverResult> results = new ArrayList<DriverResult>();
+		for (int size : sizes) {
+			for (long seed = 0; seed < seeds; seed++) {
+				final DriverResult result = new InMemoryStepDriver(size, seed, maxSteps).run();
+				System.err.println(result);
+				results.add(result);
+			}
+		}
+
+		writeCsv(results, output + ".csv");
+		writeJson(results, output + ".json");
+	}
+
+	/** Writes given results as CSV, one column for the count of every message type. */
+	static void writeCsv(List<DriverResult> results, String file) throws IOException {
+		final TreeSet<String> types = new TreeSet<String>();
+		for (DriverResult result : results) {
+			types.addAll(result.getMessagesByType().keySet());
+		}
+
+		final PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.print("size,seed,steps,terminated,solved,wallMillis,messages,peakInbox,allocatedBytes,allocationMBps");
+			for (String type : types) {
+				out.print(",msg:" + type);
+			}
+			out.println();
+			for (DriverResult result : results) {
+				out.printf("%d,%d,%d,%s,%s,%.3f,%d,%d,%d,%.1f", result.getSize(), result.getSeed(), result.getSteps(),
+						result.isTerminated(), result.isSolved(), result.getWallMillis(), result.getMessages(),
+						result.getPeakInboxSize(), result.getAllocatedBytes(), result.getAllocationRate());
+				for (String type : types) {
+					final Long count = result.getMessagesByType().get(type);
+					out.print("," + ((count == null) ? 0 : count));
+				}
+				out.println();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/** Writes given results as a JSON array. */
+	static void writeJson(List<DriverResult> results, String file) throws IOException {
+		final PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("[");
+			for (int i = 0; i < results.size(); i++) {
+				final DriverResult result = results.get(i);
+				out.printf("  {\"size\": %d, \"seed\": %d, \"steps\": %d, \"terminated\": %s, \"solved\": %s, \"wallMillis\": %.3f, "
+						+ "\"messages\": %d, \"peakInbox\": %d, \"allocatedBytes\": %d, \"allocationMBps\": %.1f, \"messagesByType\": {",
+						result.getSize(), result.getSeed(), result.getSteps(), result.isTerminated(), result.isSolved(),
+						result.getWallMillis(), result.getMessages(), result.getPeakInboxSize(), result.getAllocatedBytes(),
+						result.getAllocationRate());
+				String separator = "";
+				for (Map.Entry<String, Long> entry : result.getMessagesByType().entrySet()) {
+					out.print(separator + "\"" + entry.getKey() + "\": " + entry.getValue());
+					separator = ", ";
+				}
+				out.println((i < results.size() - 1) ? "}}," : "}}");
+			}
+			out.println("]");
+		} finally {
+			out.close();
+		}
+	}
+
+	/** @return sizes parsed from a comma separated list */
+	private static int[] parseSizes(String list) {
+		final String[] values = list.split(",");
+		final int[] sizes = new int[values.length];
+		for (int i = 0; i < values.length; i++) {
+			sizes[i] = Integer.parseInt(values[i].trim());
+		}
+		return sizes;
+	}
+}
@@ -1,5 +1,7 @@
 package massim.agent;
 
+import massim.agent.jfr.XmlEvent;
+import massim.agent.log.PacketLog;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -37,6 +39,22 @@ public abstract class AbstractAgent {
 	private class SocketClosedException extends Exception {
 	}
 
+	/**
+	 * Destination of the outgoing packets. By default the packets are written
+	 * to the agent's own socket, an agent runtime may attach its own writer.
+	 */
+	public interface PacketWriter {
+
+		/**
+		 * Writes one packet to the server. The packet does not contain the
+		 * terminating zero byte, the writer is responsible for framing.
+		 *
+		 * @param packet Serialized XML document.
+		 * @throws IOException When the packet cannot be written.
+		 */
+		void writePacket(byte[] packet) throws IOException;
+	}
+
 	private int networkPort;
 	private String networkHost;
 	private InetSocketAddress socketAddress;
@@ -50,6 +68,30 @@ public abstract class AbstractAgent {
 	protected DocumentBuilderFactory documentBuilderFactory;
 	private TransformerFactory transformerFactory;
 
+	private PacketWriter packetWriter;
+	private AgentLifecycleListener lifecycleListener = NO_LISTENER;
+	private int connectTimeout = 2000;
+
+	private volatile boolean disconnected = false;
+
+	/** Listener used when no other is registered. */
+	private static final AgentLifecycleListener NO_LISTENER = new AgentLifecycleListener() {
+		public void connecting(AbstractAgent agent) {
+		}
+
+		public void connected(AbstractAgent agent) {
+		}
+
+		public void authenticated(AbstractAgent agent, boolean success) {
+		}
+
+		public void simulationStarted(AbstractAgent agent) {
+		}
+
+		public void actionSent(AbstractAgent agent) {
+		}
+	};
+
 	protected static Logger logger = Logger.getLogger("agentLog.log");
 
 	public static String getDate() {
@@ -91,6 +133,28 @@ public abstract class AbstractAgent {
 		this.username = username;
 	}
 
+	/**
+	 * Records a packet exchanged with the server in the asynchronous packet
+	 * log, the packet is formatted later by the log.
+	 *
+	 * @see PacketLog
+	 */
+	public void logPacket(boolean outgoing, byte[] packet) {
+		if (logger.isLoggable(Level.ALL)) {
+			PacketLog.getDefault().record(username, outgoing, packet, 0, packet.length);
+		}
+	}
+
+	/** @return number of the queen of the agent for the JFR events, -1 if not known */
+	protected int getEventQueen() {
+		return -1;
+	}
+
+	/** @return size of the chessboard for the JFR events, -1 if not known */
+	protected int getEventSize() {
+		return -1;
+	}
+
 	public String getPassword() {
 		return password;
 	}
@@ -99,6 +163,36 @@ public abstract class AbstractAgent {
 		this.password = password;
 	}
 
+	public PacketWriter getPacketWriter() {
+		return packetWriter;
+	}
+
+	/**
+	 * Attaches a writer for the outgoing packets, <code>null</code> means
+	 * the packets are written to the agent's own socket.
+	 */
+	public void setPacketWriter(PacketWriter packetWriter) {
+		this.packetWriter = packetWriter;
+	}
+
+	public AgentLifecycleListener getLifecycleListener() {
+		return lifecycleListener;
+	}
+
+	/** Registers a listener of the agent's lifecycle, <code>null</code> to remove it. */
+	public void setLifecycleListener(AgentLifecycleListener lifecycleListener) {
+		this.lifecycleListener = (lifecycleListener == null) ? NO_LISTENER : lifecycleListener;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/** Sets the timeout of connecting to the server (in milliseconds). */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
 	/**
 	 * Starts the agent main thread.
 	 *
@@ -152,20 +246,7 @@ public abstract class AbstractAgent {
 	public boolean receiveAuthenticationResult() throws IOException {
 
 		try {
-			Document doc = receiveDocument();
-			Element root = doc.getDocumentElement();
-			if (root == null) return false;
-			if (!root.getAttribute("type").equalsIgnoreCase("auth-response")) return false;
-			NodeList nl = root.getChildNodes();
-			Element authresult = null;
-			for (int i = 0; i < nl.getLength(); i++) {
-				Node n = nl.item(i);
-				if (n.getNodeType() == Element.ELEMENT_NODE && n.getNodeName().equalsIgnoreCase("authentication")) {
-					authresult = (Element) n;
-					break;
-				}
-			}
-			if (!authresult.getAttribute("result").equalsIgnoreCase("ok")) return false;
+			return checkAuthenticationResult(receiveDocument());
 		} catch (SAXException e) {
 			e.printStackTrace();
 			return false;
@@ -176,6 +257,28 @@ public abstract class AbstractAgent {
 			e.printStackTrace();
 			return false;
 		}
+	}
+
+	/**
+	 * Checks the authentication response received from the server.
+	 *
+	 * @param doc XML Document received as a response to the authentication.
+	 * @return true when the authentication hat been successful, false otherwise.
+	 */
+	public boolean checkAuthenticationResult(Document doc) {
+		Element root = doc.getDocumentElement();
+		if (root == null) return false;
+		if (!root.getAttribute("type").equalsIgnoreCase("auth-response")) return false;
+		NodeList nl = root.getChildNodes();
+		Element authresult = null;
+		for (int i = 0; i < nl.getLength(); i++) {
+			Node n = nl.item(i);
+			if (n.getNodeType() == Element.ELEMENT_NODE && n.getNodeName().equalsIgnoreCase("authentication")) {
+				authresult = (Element) n;
+				break;
+			}
+		}
+		if (authresult == null || !authresult.getAttribute("result").equalsIgnoreCase("ok")) return false;
 
 		return true;
 	}
@@ -216,13 +319,9 @@ public abstract class AbstractAgent {
 			buffer.write(read);
 			read = inputStream.read();
 		}
-		String s = "Server -> Agent: AgentName " + this.username + "\n" + buffer.toString();
-
-		synchronized (logger) {
-			logger.log(Level.ALL, s);
-		}
-
-		return buffer.toByteArray();
+		final byte[] packet = buffer.toByteArray();
+		logPacket(false, packet);
+		return packet;
 	}
 
 	/**
@@ -239,7 +338,23 @@ public abstract class AbstractAgent {
 	public Document receiveDocument() throws SAXException, IOException, ParserConfigurationException, SocketClosedException {
 
 		byte[] raw = receivePacket();
-		Document doc = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(raw));
+		return parseDocument(raw);
+	}
+
+	/**
+	 * Converts the data of one received packet to a XML Document object.
+	 *
+	 * @param raw Packet data without the terminating zero byte.
+	 * @return A valid XML Document object.
+	 * @throws SAXException When the received data is not well-formed.
+	 * @throws IOException When the data cannot be read.
+	 * @throws ParserConfigurationException
+	 */
+	public Document parseDocument(byte[] raw) throws SAXException, IOException, ParserConfigurationException {
+		final XmlEvent event = new XmlEvent();
+		event.begin();
+		final Document doc = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(raw));
+		event.complete(username, getEventQueen(), getEventSize(), "parse", raw.length);
 		return doc;
 	}
 
@@ -255,7 +370,7 @@ public abstract class AbstractAgent {
 	 * @see #doAuthentication(String, String) doAuthentication
 	 * @see #processLogIn() processLogIn
 	 * @see #receiveDocument() receiveDocument
-	 * @see #processMessage(Element) processMessage
+	 * @see #processDocument(Document) processDocument
 	 */
 	public void agentThread() {
 
@@ -263,23 +378,8 @@ public abstract class AbstractAgent {
 
 		try {
 
-			socketAddress = new InetSocketAddress(networkHost, networkPort);
-
-			if (socketAddress.isUnresolved()) {
-				throw new RuntimeException("The internet address " + networkHost + " at port " + networkPort + " is unresolvable");
-			}
-
-			socket.connect(socketAddress, 2000);
-			inputStream = socket.getInputStream();
-			outputStream = socket.getOutputStream();
-
-			System.out.println("Successfully connected");
+			if (!connectAndAuthenticate()) return;
 
-			boolean auth = doAuthentication(username, password);
-			if (!auth) {
-				System.out.println("Authentication failed");
-				return;
-			}
 			processLogIn();
 			while (true) {
 				Document doc = null;
@@ -291,22 +391,15 @@ public abstract class AbstractAgent {
 					e.printStackTrace();
 				}
 
-				Element el_root = doc.getDocumentElement();
-
-				if (el_root == null) {
-					System.out.println("No document element found");
-					continue;
-				}
-
-				if (el_root.getNodeName().equals("message")) {
-					if (!processMessage(el_root)) break;
-				}
-				else {
-					System.out.println("Unknown document received");
-				}
+				if (doc == null) continue;
+				if (!processDocument(doc)) break;
 			}
 
 		} catch (IOException e) {
+			if (disconnected) {
+				System.out.println("Disconnected");
+				return;
+			}
 			System.out.println("IOException");
 			e.printStackTrace();
 			return;
@@ -315,6 +408,93 @@ public abstract class AbstractAgent {
 		}
 	}
 
+	/**
+	 * Connects the agent to the server and authenticates it. The lifecycle
+	 * listener is notified about the progress, it may also delay the connection.
+	 *
+	 * @return true when the agent is connected and authenticated, false otherwise.
+	 * @throws IOException When the connection cannot be established.
+	 * @see AgentLifecycleListener
+	 */
+	private boolean connectAndAuthenticate() throws IOException {
+
+		try {
+			lifecycleListener.connecting(this);
+		} catch (InterruptedException e) {
+			System.out.println("Interrupted before connecting");
+			lifecycleListener.authenticated(this, false);
+			return false;
+		}
+
+		boolean auth = false;
+		try {
+			socketAddress = new InetSocketAddress(networkHost, networkPort);
+
+			if (socketAddress.isUnresolved()) {
+				throw new RuntimeException("The internet address " + networkHost + " at port " + networkPort + " is unresolvable");
+			}
+
+			socket.connect(socketAddress, connectTimeout);
+			socket.setTcpNoDelay(true);
+			inputStream = socket.getInputStream();
+			outputStream = socket.getOutputStream();
+
+			System.out.println("Successfully connected");
+			lifecycleListener.connected(this);
+
+			auth = doAuthentication(username, password);
+			if (!auth) {
+				System.out.println("Authentication failed");
+			}
+		} finally {
+			lifecycleListener.authenticated(this, auth);
+		}
+
+		return auth;
+	}
+
+	/**
+	 * Closes the connection to the server, the agent's main thread
+	 * ends as soon as it notices the closed socket.
+	 *
+	 * @see #agentThread() agentThread
+	 */
+	public void disconnect() {
+		disconnected = true;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Dispatches one document received from the server. Documents with
+	 * the <code>message</code> root element are passed to the
+	 * <code>processMessage</code> method, any other documents are skipped.
+	 *
+	 * @param doc XML Document received from the server.
+	 * @return false when the agent should stop receiving messages, true otherwise.
+	 * @see #processMessage(Element) processMessage
+	 */
+	public boolean processDocument(Document doc) {
+
+		Element el_root = doc.getDocumentElement();
+
+		if (el_root == null) {
+			System.out.println("No document element found");
+			return true;
+		}
+
+		if (el_root.getNodeName().equals("message")) {
+			return processMessage(el_root);
+		}
+		else {
+			System.out.println("Unknown document received");
+		}
+		return true;
+	}
+
 	/**
 	 * This method parses the message received from the server and selects
 	 * the right action to do next. The messages must be of the type:
@@ -414,7 +594,10 @@ public abstract class AbstractAgent {
 			try {
 
 				// sending of action only for request-action message!!!
-				if (type.equals("request-action")) sendDocument(doc);
+				if (type.equals("request-action")) {
+					sendDocument(doc);
+					lifecycleListener.actionSent(this);
+				}
 
 			} catch (IOException e) {
 				System.out.println("IO Exception while trying to send action");
@@ -432,11 +615,14 @@ public abstract class AbstractAgent {
 	public void processSimulationEnd(Element perception, long currenttime) {
 	}
 
+	/**
+	 * Called when the simulation starts. The lifecycle listener may hold
+	 * the agent here until the whole agent population is ready.
+	 *
+	 * @see AgentLifecycleListener#simulationStarted(AbstractAgent)
+	 */
 	public void processSimulationStart(Element perception, long currenttime) {
-		try {
-			Thread.sleep(2000);
-		} catch (InterruptedException e) {
-		}
+		lifecycleListener.simulationStarted(this);
 	}
 
 	public void processLogIn() {
@@ -449,15 +635,24 @@ public abstract class AbstractAgent {
 	 * @throws IOException
 	 */
 	public void sendDocument(Document doc) throws IOException {
+		final XmlEvent event = new XmlEvent();
+		event.begin();
 		try {
-			transformerFactory.newTransformer().transform(new DOMSource(doc), new StreamResult(outputStream));
-
 			ByteArrayOutputStream temp = new ByteArrayOutputStream();
 			transformerFactory.newTransformer().transform(new DOMSource(doc), new StreamResult(temp));
-			String s = "Agent -> Server:\n" + temp.toString();
-			logger.log(Level.ALL, s);
-			outputStream.write(0);
-			outputStream.flush();
+			final byte[] packet = temp.toByteArray();
+			logPacket(true, packet);
+
+			if (packetWriter != null) {
+				packetWriter.writePacket(packet);
+			}
+			else {
+				// write the packet at once, a separate terminator would wait for the delayed ACK
+				temp.write(0);
+				temp.writeTo(outputStream);
+				outputStream.flush();
+			}
+			event.complete(username, getEventQueen(), getEventSize(), "send", temp.size());
 		} catch (TransformerConfigurationException e) {
 			System.out.println("transformer config error");
 			e.printStackTrace();
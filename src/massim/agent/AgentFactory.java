@@ -0,0 +1,12 @@
+package massim.agent;
+
+/**
+ * Factory of the queen agents, allows to run different agent implementations
+ * or configurations.
+ */
+public interface AgentFactory {
+
+	/** Creates a new agent for the simulation with given number of agents. */
+	MASQueenAgent createAgent(String host, int port, String username, String password, int nAgents);
+
+}
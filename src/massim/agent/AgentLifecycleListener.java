@@ -0,0 +1,39 @@
+package massim.agent;
+
+/**
+ * Listener of the agent's connection and simulation lifecycle.
+ * <p/>
+ * The callbacks are invoked in the order of the declaration, in the thread
+ * processing the agent's connection. The callbacks <code>connecting</code>
+ * and <code>simulationStarted</code> may block the agent, i.e. to bound
+ * the number of simultaneous connections or to wait for other agents.
+ */
+public interface AgentLifecycleListener {
+
+	/**
+	 * Called before the agent connects to the server. Each call is followed
+	 * by exactly one call of <code>authenticated</code>, even if the
+	 * connection fails.
+	 *
+	 * @param agent The agent.
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	void connecting(AbstractAgent agent) throws InterruptedException;
+
+	/** Called when the agent is connected to the server. */
+	void connected(AbstractAgent agent);
+
+	/**
+	 * Called when the authentication is over.
+	 *
+	 * @param agent The agent.
+	 * @param success Whether the agent is connected and authenticated.
+	 */
+	void authenticated(AbstractAgent agent, boolean success);
+
+	/** Called when the agent receives the <code>sim-start</code> message. */
+	void simulationStarted(AbstractAgent agent);
+
+	/** Called every time the agent sends an action to the server. */
+	void actionSent(AbstractAgent agent);
+}
@@ -13,21 +13,33 @@ public class MASPerception {
 
 	final Collection<CellPercept> cellPercepts;
 
+	/** Server time of the request (in milliseconds), 0 if unknown. */
+	final long timestamp;
+	/** Server time the action must be sent by (in milliseconds), 0 if there is no deadline. */
+	final long deadline;
+
 	public MASPerception(int posX, int poxY, int cowsInCoral, int step,
 						 Collection<CellPercept> cellPercepts) {
+		this(posX, poxY, cowsInCoral, step, cellPercepts, 0, 0);
+	}
+
+	public MASPerception(int posX, int poxY, int cowsInCoral, int step,
+						 Collection<CellPercept> cellPercepts, long timestamp, long deadline) {
 		super();
 		this.posX = posX;
 		this.poxY = poxY;
 		this.cowsInCoral = cowsInCoral;
 		this.step = step;
 		this.cellPercepts = cellPercepts;
+		this.timestamp = timestamp;
+		this.deadline = deadline;
 	}
 
 	@Override
 	public String toString() {
 		return "MASPerception [posX=" + posX + ", poxY=" + poxY
 				+ ", cowsInCoral=" + cowsInCoral + ", step=" + step
-				+ ", cellPercepts=" + cellPercepts + "]";
+				+ ", deadline=" + deadline + ", cellPercepts=" + cellPercepts + "]";
 	}
 
 	public int getPosX() {
@@ -49,4 +61,17 @@ public class MASPerception {
 	public Collection<CellPercept> getCellPercepts() {
 		return cellPercepts;
 	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/** @return time the agent has to respond (in milliseconds), -1 if there is no deadline */
+	public long getTimeBudget() {
+		return (deadline > 0 && timestamp > 0) ? Math.max(0, deadline - timestamp) : -1;
+	}
 }
@@ -4,10 +4,17 @@ import cz.agents.alite.communication.Communicator;
 import cz.agents.alite.communication.Message;
 import cz.agents.alite.communication.MessageHandler;
 import cz.agents.alite.communication.content.Content;
+import massim.agent.jfr.MessageSendEvent;
+import massim.agent.metrics.MessageMetrics;
+import massim.agent.metrics.SentMessage;
+import massim.agent.metrics.TypedMessage;
+import massim.agent.trace.TraceRecorder;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
@@ -15,21 +22,43 @@ import java.util.List;
 /** Description of an agent for the simulation */
 public abstract class MASQueenAgent extends AbstractAgent implements MessageHandler {
 
-	interface OnPositionChangedCallback {
+	public interface OnPositionChangedCallback {
 		void positionChanged(Position pos);
 	}
 
-	interface OnAgentFinishedCallback {
+	public interface OnAgentFinishedCallback {
 		void agentFinished(boolean solutionFound);
 	}
 
 	Communicator communicator;
 	List<String> agents = new LinkedList<String>();
-	List<Message> inbox = new LinkedList<Message>();
+	/** Received messages, guarded by the agent, reused to receive without allocation. */
+	private final List<Message> inbox = new ArrayList<Message>();
+	/** Times of sending of the messages in the inbox (see System.nanoTime), guarded by the agent. */
+	private long[] sentTimes = new long[16];
+	/** Size of the inbox, readable without the lock. */
+	private volatile int inboxSize;
+	/** Messages taken from the inbox and not processed yet, a ring used by the agent only. */
+	private Message[] pending = new Message[16];
+	/** Times of sending of the pending messages, a ring parallel to them. */
+	private long[] pendingSentTimes = new long[16];
+	private int pendingHead, pendingSize;
+	/** Identifier of the next message stamped by the agent. */
+	private long nextMessageId;
 
 	private OnPositionChangedCallback positionChangedCallback;
 	private OnAgentFinishedCallback agentFinishedCallback;
 	private int nAgents;
+	/** Number of the queen of the agent, i.e. its row, -1 before the first step. */
+	private int queenNumber = -1;
+
+	/** The number of actions decided after the deadline. */
+	private volatile int missedDeadlines;
+
+	/** Metrics of the messaging, null if disabled. */
+	private MessageMetrics metrics = MessageMetrics.getDefault();
+	/** Recorder of the inputs of the agent, null if disabled. */
+	private TraceRecorder trace = TraceRecorder.getDefault();
 
 	public MASQueenAgent(String host, int port, String username, String password) {
 		this.setUsername(username);
@@ -40,31 +69,151 @@ public abstract class MASQueenAgent extends AbstractAgent implements MessageHand
 
 	@Override
 	public synchronized void notify(Message msg) {
+		if (trace != null) {
+			trace.received(getUsername(), msg);
+		}
 		inbox.add(msg);
+		final int n = inbox.size();
+		if (n > sentTimes.length) {
+			sentTimes = Arrays.copyOf(sentTimes, 2 * sentTimes.length);
+		}
+		sentTimes[n - 1] = (metrics == null) ? 0 : (msg instanceof SentMessage) ? ((SentMessage) msg).getSentNanos() : System.nanoTime();
+		inboxSize = n;
+	}
+
+	/** @return the number of received messages waiting in the inbox */
+	public int getInboxSize() {
+		return inboxSize;
+	}
+
+	/** @return the number of the messages taken from the inbox and not processed yet */
+	public int getPendingSize() {
+		return pendingSize;
 	}
 
-	protected synchronized List<Message> getNewMessages() {
-		LinkedList<Message> newMessages = new LinkedList<Message>(inbox);
-		inbox = new LinkedList<Message>();
+	/** @return the messages received since the last call, including the pending ones */
+	protected List<Message> getNewMessages() {
+		takeNewMessages();
+		final List<Message> newMessages = new ArrayList<Message>(pendingSize);
+		Message msg;
+		while ((msg = pollMessage()) != null) {
+			newMessages.add(msg);
+		}
 		return newMessages;
 	}
 
+	/**
+	 * Takes the messages received since the last call from the inbox, they
+	 * are pending until polled (see {@link #pollMessage()}), without
+	 * allocation once the buffers are large enough.
+	 */
+	protected void takeNewMessages() {
+		synchronized (this) {
+			final int n = inbox.size();
+			if (pendingSize + n > pending.length) {
+				growPending(pendingSize + n);
+			}
+			final int mask = pending.length - 1;
+			for (int i = 0; i < n; i++) {
+				final int index = (pendingHead + pendingSize++) & mask;
+				pending[index] = inbox.get(i);
+				pendingSentTimes[index] = sentTimes[i];
+			}
+			inbox.clear();
+			inboxSize = 0;
+			if (trace != null) {
+				trace.polled(getUsername(), n);
+			}
+		}
+	}
+
+	/**
+	 * Polls the next pending message to be processed, the time since the
+	 * message was sent is recorded by the metrics, since its arrival into
+	 * the inbox if not stamped by the sender (see {@link SentMessage}).
+	 *
+	 * @return the message, null if there are no pending messages
+	 */
+	protected Message pollMessage() {
+		if (pendingSize == 0) return null;
+		final Message msg = pending[pendingHead];
+		final long sent = pendingSentTimes[pendingHead];
+		pending[pendingHead] = null;
+		pendingHead = (pendingHead + 1) & (pending.length - 1);
+		pendingSize--;
+		if (metrics != null && msg.getContent().getData() instanceof TypedMessage) {
+			final String type = ((TypedMessage) msg.getContent().getData()).getType();
+			metrics.received(type, (sent == 0) ? -1 : System.nanoTime() - sent);
+		}
+		return msg;
+	}
+
+	/** Grows the ring of the pending messages to hold at least given number of messages. */
+	private void growPending(int capacity) {
+		final int length = Integer.highestOneBit(capacity - 1) << 1;
+		final Message[] messages = new Message[length];
+		final long[] times = new long[length];
+		for (int i = 0; i < pendingSize; i++) {
+			final int index = (pendingHead + i) & (pending.length - 1);
+			messages[i] = pending[index];
+			times[i] = pendingSentTimes[index];
+		}
+		pending = messages;
+		pendingSentTimes = times;
+		pendingHead = 0;
+	}
+
+	/** Sets the metrics of the messaging, null to disable. */
+	public void setMetrics(MessageMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/** Sets the recorder of the inputs of the agent, null to disable. */
+	public void setTraceRecorder(TraceRecorder trace) {
+		this.trace = trace;
+	}
+
+	@Override
+	protected int getEventQueen() {
+		return queenNumber;
+	}
+
+	@Override
+	protected int getEventSize() {
+		return nAgents;
+	}
+
+	/** Records sending of given content to given number of receivers. */
+	private void recordSent(Content content, int receivers) {
+		if (metrics != null && content.getData() instanceof TypedMessage) {
+			metrics.sent(((TypedMessage) content.getData()).getType(), receivers);
+		}
+		if (trace != null) {
+			trace.sent(getUsername(), content, receivers);
+		}
+	}
+
 	public void setCommunicator(Communicator communicator, List<String> agents) {
 		this.communicator = communicator;
 		this.agents = new LinkedList<String>(agents);
 		this.nAgents = agents.size();
+		if (trace != null) {
+			trace.agent(getUsername(), agents);
+		}
 	}
 
 	protected void sendMessage(String receiver, Content content) {
-		Message msg = communicator.createMessage(content);
-		LinkedList<String> receivers = new LinkedList<String>();
-		receivers.add(receiver);
-		msg.addReceivers(receivers);
+		Message msg = createMessage(content);
+		msg.addReceiver(receiver);
+		recordSent(content, 1);
+		final MessageSendEvent event = new MessageSendEvent();
+		event.begin();
 		communicator.sendMessage(msg);
+		event.complete(getUsername(), queenNumber, nAgents, getType(content), 1);
 	}
 
 	protected void broadcast(Content content) {
-		Message msg = communicator.createMessage(content);
+		Message msg = createMessage(content);
 		LinkedList<String> receivers = new LinkedList<String>();
 		for (String agent : agents) {
 			if (!agent.equals(getUsername())) {
@@ -72,7 +221,23 @@ public abstract class MASQueenAgent extends AbstractAgent implements MessageHand
 			}
 		}
 		msg.addReceivers(receivers);
+		recordSent(content, receivers.size());
+		final MessageSendEvent event = new MessageSendEvent();
+		event.begin();
 		communicator.sendMessage(msg);
+		event.complete(getUsername(), queenNumber, nAgents, getType(content), receivers.size());
+	}
+
+	/** @return new message with given content, stamped with the time of sending if the metrics are enabled */
+	private Message createMessage(Content content) {
+		if (metrics == null) return communicator.createMessage(content);
+		return new SentMessage(communicator.getAddress(), content, nextMessageId++, System.nanoTime());
+	}
+
+	/** @return type of the message with given content */
+	private static String getType(Content content) {
+		final Object data = content.getData();
+		return (data instanceof TypedMessage) ? ((TypedMessage) data).getType() : "?";
 	}
 
 	@Override
@@ -94,15 +259,13 @@ public abstract class MASQueenAgent extends AbstractAgent implements MessageHand
 									 long currenttime, long deadline) {
 		//super.processRequestAction(perception, target, currenttime, deadline);
 
+		final long received = System.nanoTime();
+
 		// process percepts
 
 		int posX = Integer.parseInt(perception.getAttribute("posx"));
 		int posY = Integer.parseInt(perception.getAttribute("posy"));
 
-		if (positionChangedCallback != null) {
-			positionChangedCallback.positionChanged(new Position(posX, posY));
-		}
-
 		int cowsInCorral = Integer.parseInt(perception.getAttribute("cowsInCorral"));
 
 		int step = Integer.parseInt(perception.getAttribute("step"));
@@ -181,15 +344,70 @@ public abstract class MASQueenAgent extends AbstractAgent implements MessageHand
 			}
 		}
 
-		MASPerception percept = new MASPerception(posX, posY, cowsInCorral, step, cellPercepts);
+		MASPerception percept = new MASPerception(posX, posY, cowsInCorral, step, cellPercepts, currenttime, deadline);
 
-		Action action = deliberate(percept);
+		Action action = step(percept);
+
+		final long budget = percept.getTimeBudget();
+		if (budget >= 0 && System.nanoTime() - received > budget * 1000000L) {
+			missedDeadlines++;
+		}
 
 		target.setAttribute("type", action.toString().toLowerCase());
 	}
 
+	/**
+	 * Performs one simulation step of the agent, i.e. reports its position
+	 * and decides the next action. Allows to drive the agent without the
+	 * server connection.
+	 */
+	public Action step(MASPerception percept) {
+		queenNumber = percept.getPosY() - 1;
+		if (trace != null) {
+			trace.step(getUsername(), percept);
+		}
+		if (positionChangedCallback != null) {
+			positionChangedCallback.positionChanged(new Position(percept.getPosX(), percept.getPosY()));
+		}
+		if (metrics == null) {
+			return deliberate(percept);
+		}
+		final long t = System.nanoTime();
+		final Action action = deliberate(percept);
+		metrics.deliberated(System.nanoTime() - t);
+		return action;
+	}
+
+	/**
+	 * Decides the next action of the agent. The perception carries the
+	 * deadline of the action, the agent should respond before it.
+	 *
+	 * @see MASPerception#getTimeBudget()
+	 */
 	abstract protected Action deliberate(MASPerception percept);
 
+	/** @return the number of actions decided after the deadline */
+	public int getMissedDeadlines() {
+		return missedDeadlines;
+	}
+
+	/** Runs the agent connected to the server, the agent shuts down when the connection ends. */
+	@Override
+	public void agentThread() {
+		try {
+			super.agentThread();
+		} finally {
+			shutdown();
+		}
+	}
+
+	/**
+	 * Releases the resources the agent holds outside of itself, e.g. its
+	 * MBeans, called when the agent is not stepped any more.
+	 */
+	public void shutdown() {
+	}
+
 	public void registerPositionChangedCallback(OnPositionChangedCallback callback) {
 		this.positionChangedCallback = callback;
 	}
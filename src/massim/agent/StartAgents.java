@@ -1,61 +1,234 @@
 package massim.agent;
 
 import cz.agents.alite.communication.DefaultCommunicator;
+import cz.agents.alite.communication.MessageHandler;
 import cz.agents.alite.communication.channel.CommunicationChannelException;
 import cz.agents.alite.communication.channel.DirectCommunicationChannel;
 import cz.agents.alite.communication.channel.DirectCommunicationChannel.ReceiverTable;
+import massim.agent.channel.ChannelFactory;
+import massim.agent.channel.ClusterNetwork;
+import massim.agent.channel.EmulatedNetwork;
+import massim.agent.metrics.MessageMetrics;
+import massim.agent.runtime.AgentRuntime;
+import massim.agent.runtime.RuntimeConfig;
+import massim.agent.runtime.StartupCoordinator;
+import massim.agent.student.BlockQueenAgent;
 import massim.agent.student.MyQueenAgent;
+import massim.agent.student.SolverConfig;
 
+import java.io.IOException;
 import java.util.LinkedList;
+import java.util.List;
 
 public class StartAgents {
 
 	final static int N_AGENTS = 8;
 
+	/** Factory of the default agents. */
+	public static final AgentFactory DEFAULT_FACTORY = factory(new SolverConfig());
+
+	/** @return factory of the default agents with given solver configuration */
+	public static AgentFactory factory(final SolverConfig solverConfig) {
+		return new AgentFactory() {
+			@Override
+			public MASQueenAgent createAgent(String host, int port, String username, String password, int nAgents) {
+				if (solverConfig.blockSize > 1) {
+					return new BlockQueenAgent(host, port, username, password, nAgents, solverConfig);
+				}
+				return new MyQueenAgent(host, port, username, password, nAgents, solverConfig);
+			}
+		};
+	}
+
+	/** Starts the agents, the optional arguments are the host and the port of the server and the number of the agents. */
 	public static void main(String[] args) {
-		startAgents("localhost", 12300, N_AGENTS);
+		final String host = (args.length > 0) ? args[0] : "localhost";
+		final int port = (args.length > 1) ? Integer.parseInt(args[1]) : 12300;
+		final int nAgents = (args.length > 2) ? Integer.parseInt(args[2]) : N_AGENTS;
+		final AgentRuntime runtime = startAgents(host, port, nAgents, RuntimeConfig.fromSystemProperties());
+
+		// disconnect all the agents when the JVM is terminated
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				runtime.shutdown();
+			}
+		});
+
+		try {
+			runtime.awaitTermination();
+		} catch (InterruptedException e) {
+			runtime.shutdown();
+		}
+		System.out.println(MessageMetrics.getDefault());
 	}
 
 	public static void startAgents(String host, int port, int nAgents) {
-		ReceiverTable receiverTable = new DirectCommunicationChannel.DefaultReceiverTable();
+		startAgents(host, port, nAgents, new RuntimeConfig());
+	}
+
+	/**
+	 * Starts the agents connected to the server at given address. When the
+	 * membership of the nodes is set (see {@link ClusterNetwork#fromSystemProperties()}),
+	 * only the agents of this node are started and the other agents are
+	 * reached over the network.
+	 */
+	public static AgentRuntime startAgents(String host, int port, int nAgents, RuntimeConfig config) {
+		final AgentFactory factory = factory(SolverConfig.fromSystemProperties());
+		final ClusterNetwork cluster = ClusterNetwork.fromSystemProperties();
+		final List<MASQueenAgent> agents;
+		if (cluster == null) {
+			final EmulatedNetwork network = EmulatedNetwork.fromSystemProperties();
+			agents = createAgents(factory, "", host, port, nAgents, null, new DirectCommunicationChannel.DefaultReceiverTable(),
+					(network == null) ? ChannelFactory.DIRECT : network);
+		} else {
+			agents = createLocalAgents(factory, host, port, nAgents, cluster);
+		}
+
+		final AgentRuntime runtime = config.createRuntime(agents.size());
+		final StartupCoordinator coordinator = config.createStartupCoordinator(agents.size());
+		for (MASQueenAgent agent : agents) {
+			// setup connection to the server
+			agent.setConnectTimeout(config.connectTimeout);
+			agent.setLifecycleListener(coordinator);
+		}
+
+		// start all the agents at once, the communication is set up
+		try {
+			runtime.start(agents);
+		} catch (IOException e) {
+			System.out.println("Unable to start the agents");
+			e.printStackTrace();
+		}
+		return runtime;
+	}
+
+	/**
+	 * Creates the agents and sets up their communication infrastructure,
+	 * the agents are not connected to the server.
+	 *
+	 * @param monitor Message handler notified about all the messages received by the agents, may be null.
+	 */
+	public static List<MASQueenAgent> createAgents(String host, int port, int nAgents, MessageHandler monitor) {
+		return createAgents(DEFAULT_FACTORY, "", host, port, nAgents, monitor);
+	}
+
+	/**
+	 * Creates the agents and sets up their communication infrastructure,
+	 * the agents are not connected to the server. The agents of every call
+	 * communicate only with each other, so several populations can live in
+	 * one JVM.
+	 *
+	 * @param factory Factory of the agents.
+	 * @param namespace Prefix of the agent names.
+	 * @param monitor Message handler notified about all the messages received by the agents, may be null.
+	 */
+	public static List<MASQueenAgent> createAgents(AgentFactory factory, String namespace, String host, int port, int nAgents, MessageHandler monitor) {
+		return createAgents(factory, namespace, host, port, nAgents, monitor, new DirectCommunicationChannel.DefaultReceiverTable());
+	}
+
+	/**
+	 * Creates the agents and sets up their communication infrastructure
+	 * using given receiver table, see {@link #createAgent}.
+	 */
+	public static List<MASQueenAgent> createAgents(AgentFactory factory, String namespace, String host, int port, int nAgents, MessageHandler monitor,
+			ReceiverTable receiverTable) {
+		return createAgents(factory, namespace, host, port, nAgents, monitor, receiverTable, ChannelFactory.DIRECT);
+	}
 
+	/**
+	 * Creates the agents and sets up their communication infrastructure
+	 * using given receiver table and channels, see {@link #createAgent}.
+	 */
+	public static List<MASQueenAgent> createAgents(AgentFactory factory, String namespace, String host, int port, int nAgents, MessageHandler monitor,
+			ReceiverTable receiverTable, ChannelFactory channelFactory) {
 		LinkedList<String> agentNames = new LinkedList<String>();
 
 		for (int i = 1; i <= nAgents; i++) {
-			agentNames.add(idToAgentName(i));
+			agentNames.add(namespace + idToAgentName(i));
 		}
 
+		LinkedList<MASQueenAgent> agents = new LinkedList<MASQueenAgent>();
+
 		for (int i = 1; i <= nAgents; i++) {
-			String agentName = idToAgentName(i);
+			String agentName = namespace + idToAgentName(i);
 			System.out.println("Adding agent " + agentName);
+			agents.add(createAgent(factory, agentName, host, port, agentNames, monitor, receiverTable, channelFactory));
+		}
+		return agents;
+	}
 
-			final MASQueenAgent agent = new MyQueenAgent(host, port, agentName, "1", nAgents);
-
-			DefaultCommunicator communicator = new DefaultCommunicator(agentName);
-			try {
-				communicator.addChannel(new DirectCommunicationChannel(communicator, receiverTable));
-			} catch (CommunicationChannelException e) {
-				e.printStackTrace();
+	/**
+	 * Creates the agents hosted by the node of given network, all the
+	 * agents have to be members of the network, and starts the network.
+	 */
+	private static List<MASQueenAgent> createLocalAgents(AgentFactory factory, String host, int port, int nAgents, final ClusterNetwork cluster) {
+		final List<String> agentNames = new LinkedList<String>();
+		for (int i = 1; i <= nAgents; i++) {
+			final String agentName = idToAgentName(i);
+			if (cluster.getMembership().getNode(agentName) == null) {
+				throw new IllegalArgumentException("The agent " + agentName + " is not in the membership");
 			}
-			communicator.addMessageHandler(agent);
+			agentNames.add(agentName);
+		}
 
-			// setup communication infrastructure
-			agent.setCommunicator(communicator, agentNames);
+		final ReceiverTable receiverTable = new DirectCommunicationChannel.DefaultReceiverTable();
+		final List<MASQueenAgent> agents = new LinkedList<MASQueenAgent>();
+		for (String agentName : agentNames) {
+			if (!cluster.isLocal(agentName)) continue;
+			System.out.println("Adding agent " + agentName);
+			agents.add(createAgent(factory, agentName, host, port, agentNames, null, receiverTable, cluster));
+		}
+		try {
+			cluster.start();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to start the network", e);
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				cluster.shutdown();
+			}
+		});
+		return agents;
+	}
 
-			// start in a new thread
-			new Thread(new Runnable() {
-				@Override
-				public void run() {
-					agent.start();
-				}
-			}).run();
+	/**
+	 * Creates one agent and sets up its communication infrastructure. An
+	 * agent created with the name of an existing agent replaces it in given
+	 * receiver table, e.g. when restarted after a crash.
+	 *
+	 * @param agentNames Names of all the agents.
+	 * @param monitor Message handler notified about all the messages received by the agent, may be null.
+	 */
+	public static MASQueenAgent createAgent(AgentFactory factory, String agentName, String host, int port, List<String> agentNames, MessageHandler monitor,
+			ReceiverTable receiverTable) {
+		return createAgent(factory, agentName, host, port, agentNames, monitor, receiverTable, ChannelFactory.DIRECT);
+	}
 
-			Thread.yield();
+	/**
+	 * Creates one agent communicating by a channel of given factory, see
+	 * {@link #createAgent(AgentFactory, String, String, int, List, MessageHandler, ReceiverTable)}.
+	 */
+	public static MASQueenAgent createAgent(AgentFactory factory, String agentName, String host, int port, List<String> agentNames, MessageHandler monitor,
+			ReceiverTable receiverTable, ChannelFactory channelFactory) {
+		final MASQueenAgent agent = factory.createAgent(host, port, agentName, "1", agentNames.size());
+
+		DefaultCommunicator communicator = new DefaultCommunicator(agentName);
+		try {
+			communicator.addChannel(channelFactory.createChannel(communicator, receiverTable));
+		} catch (CommunicationChannelException e) {
+			e.printStackTrace();
+		}
+		communicator.addMessageHandler(agent);
+		if (monitor != null) {
+			communicator.addMessageHandler(monitor);
 		}
+
+		// setup communication infrastructure
+		agent.setCommunicator(communicator, agentNames);
+		return agent;
 	}
 
 	private static String idToAgentName(int i) {
 		return (i % 2 == 1) ? "a" + (i / 2 + 1) : "b" + (i / 2);
 	}
 }
-
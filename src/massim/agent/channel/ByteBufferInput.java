@@ -0,0 +1,110 @@
+package massim.agent.channel;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Data input reading a byte buffer in place, i.e. the frames are decoded
+ * without copying them out of the buffer. The input reads from the
+ * position up to the limit of the buffer.
+ */
+class ByteBufferInput implements DataInput {
+
+	private ByteBuffer buffer;
+
+	/** Reads given buffer from its position up to its limit. */
+	ByteBufferInput reset(ByteBuffer buffer) {
+		this.buffer = buffer;
+		return this;
+	}
+
+	private ByteBuffer require(int n) throws EOFException {
+		if (buffer.remaining() < n) throw new EOFException();
+		return buffer;
+	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		require(len).get(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) {
+		final int skipped = Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return require(1).get() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		return require(1).get();
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return require(1).get() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		return require(2).getShort();
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return require(2).getShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		return require(2).getChar();
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		return require(4).getInt();
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		return require(8).getLong();
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return require(4).getFloat();
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return require(8).getDouble();
+	}
+
+	@Override
+	public String readLine() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		try {
+			return DataInputStream.readUTF(this);
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+}
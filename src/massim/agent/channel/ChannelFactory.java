@@ -0,0 +1,29 @@
+package massim.agent.channel;
+
+import cz.agents.alite.communication.CommunicationReceiver;
+import cz.agents.alite.communication.channel.CommunicationChannel;
+import cz.agents.alite.communication.channel.CommunicationChannelException;
+import cz.agents.alite.communication.channel.DirectCommunicationChannel;
+import cz.agents.alite.communication.channel.DirectCommunicationChannel.ReceiverTable;
+
+/**
+ * Factory of the communication channels of the agents, allows to run the
+ * agents over different transports.
+ */
+public interface ChannelFactory {
+
+	/** Factory of the in-process channels delivering the messages at once. */
+	ChannelFactory DIRECT = new ChannelFactory() {
+		@Override
+		public CommunicationChannel createChannel(CommunicationReceiver receiver, ReceiverTable receiverTable) throws CommunicationChannelException {
+			return new DirectCommunicationChannel(receiver, receiverTable);
+		}
+	};
+
+	/**
+	 * Creates the channel of given receiver, the receiver is registered in
+	 * given receiver table.
+	 */
+	CommunicationChannel createChannel(CommunicationReceiver receiver, ReceiverTable receiverTable) throws CommunicationChannelException;
+
+}
@@ -0,0 +1,148 @@
+package massim.agent.channel;
+
+import cz.agents.alite.communication.CommunicationReceiver;
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.channel.CommunicationChannel;
+import cz.agents.alite.communication.channel.CommunicationChannelException;
+import cz.agents.alite.communication.channel.DirectCommunicationChannel;
+import cz.agents.alite.communication.channel.DirectCommunicationChannel.ReceiverTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Network of the agents split across several processes (nodes), one
+ * instance per process. The agents of the node communicate directly, the
+ * messages for the agents of the other nodes are passed to the transport
+ * of the subclass, once per node with the receivers on that node. The node
+ * hosting an agent is given by the static {@link Membership}.
+ */
+public abstract class ClusterNetwork implements ChannelFactory {
+
+	protected final Membership membership;
+	protected final String localNode;
+
+	/** Channel of a local agent, delivers the received messages by the receiver table. */
+	private volatile DirectCommunicationChannel local;
+
+	/**
+	 * Constructor of the ClusterNetwork class.
+	 *
+	 * @param membership the agents of all the nodes
+	 * @param localNode address of this node (host:port) as given in the membership
+	 */
+	protected ClusterNetwork(Membership membership, String localNode) {
+		if (membership.getAgents(localNode).isEmpty()) throw new IllegalArgumentException("no agents of the node " + localNode);
+		this.membership = membership;
+		this.localNode = localNode;
+	}
+
+	/**
+	 * Returns the network configured by the membership file given by
+	 * <tt>massim.membership</tt> and the address of this node given by
+	 * <tt>massim.node</tt>, null if the membership is not set. The nodes
+	 * communicate by the shared memory in the directory given by
+	 * <tt>massim.shm</tt> if set, over TCP otherwise. The network is not
+	 * started, it should be started once the local agents are created.
+	 */
+	public static ClusterNetwork fromSystemProperties() {
+		final String path = System.getProperty("massim.membership");
+		if (path == null) return null;
+		final String node = System.getProperty("massim.node");
+		if (node == null) throw new IllegalArgumentException("massim.node is not set");
+		final Membership membership;
+		try {
+			membership = Membership.load(new File(path));
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to read the membership " + path, e);
+		}
+		final String shm = System.getProperty("massim.shm");
+		if (shm != null) {
+			return new SharedMemoryNetwork(membership, node, new File(shm), Integer.getInteger("massim.shm.ringBytes", SharedMemoryNetwork.DEFAULT_RING_BYTES));
+		}
+		return new SocketNetwork(membership, node);
+	}
+
+	/** @return the agents of all the nodes */
+	public Membership getMembership() {
+		return membership;
+	}
+
+	/** @return true if given agent is hosted by this node */
+	public boolean isLocal(String agent) {
+		return localNode.equals(membership.getNode(agent));
+	}
+
+	@Override
+	public CommunicationChannel createChannel(CommunicationReceiver receiver, ReceiverTable receiverTable) throws CommunicationChannelException {
+		if (!isLocal(receiver.getAddress())) {
+			throw new CommunicationChannelException("The agent " + receiver.getAddress() + " is not a member of the node " + localNode);
+		}
+		final DirectCommunicationChannel direct = new DirectCommunicationChannel(receiver, receiverTable);
+		if (local == null) local = direct;
+		return new ClusterChannel(direct);
+	}
+
+	/** Starts the transport, i.e. the communication with the other nodes. */
+	public abstract void start() throws IOException;
+
+	/** Stops the transport. */
+	public abstract void shutdown();
+
+	/** Sends given message to given receivers hosted by given node. */
+	protected abstract void send(String node, Message message, List<String> receivers) throws CommunicationChannelException;
+
+	/** Delivers given message received from another node to the local receivers. */
+	protected void deliver(Message message) {
+		final DirectCommunicationChannel channel = local;
+		if (channel == null) return;
+		try {
+			channel.sendMessage(message);
+		} catch (CommunicationChannelException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** Channel of a local agent, sends the messages for the other nodes by the transport. */
+	private class ClusterChannel implements CommunicationChannel {
+
+		private final DirectCommunicationChannel direct;
+
+		private ClusterChannel(DirectCommunicationChannel direct) {
+			this.direct = direct;
+		}
+
+		@Override
+		public void sendMessage(Message message) throws CommunicationChannelException {
+			boolean hasLocal = false;
+			Map<String, List<String>> remote = null;
+			for (String receiver : message.getReceivers()) {
+				final String node = membership.getNode(receiver);
+				if (node == null) throw new CommunicationChannelException("Unknown agent " + receiver);
+				if (node.equals(localNode)) {
+					hasLocal = true;
+					continue;
+				}
+				if (remote == null) remote = new LinkedHashMap<String, List<String>>();
+				List<String> receivers = remote.get(node);
+				if (receivers == null) {
+					receivers = new ArrayList<String>();
+					remote.put(node, receivers);
+				}
+				receivers.add(receiver);
+			}
+
+			// the direct channel delivers to the local receivers only
+			if (hasLocal) direct.sendMessage(message);
+			if (remote != null) {
+				for (Map.Entry<String, List<String>> entry : remote.entrySet()) {
+					send(entry.getKey(), message, entry.getValue());
+				}
+			}
+		}
+	}
+}
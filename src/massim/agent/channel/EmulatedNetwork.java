@@ -0,0 +1,271 @@
+package massim.agent.channel;
+
+import cz.agents.alite.communication.CommunicationReceiver;
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.channel.CommunicationChannel;
+import cz.agents.alite.communication.channel.CommunicationChannelException;
+import cz.agents.alite.communication.channel.DirectCommunicationChannel;
+import cz.agents.alite.communication.channel.DirectCommunicationChannel.ReceiverTable;
+import massim.agent.metrics.SentMessage;
+import massim.agent.runtime.NamedThreadFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emulated network between the agents, delays, reorders, duplicates and
+ * loses the messages by the {@link LinkModel}s of the links. The channels
+ * of the agents wrap the direct channels and submit the sent messages to
+ * the network, the network delivers them by the direct channels when
+ * their delay elapses. The in-flight messages are held in a
+ * {@link TimerWheel}.
+ * <p/>
+ * The time of the network advances in ticks, either by the driver of the
+ * agents (see {@link massim.agent.driver.InMemoryStepDriver#setNetwork}),
+ * or in real time by a background thread (see {@link #start(long)}). The
+ * delays are drawn by a seeded random generator in the order of the
+ * ticks, so a network advanced by the in-memory driver is deterministic.
+ * <p/>
+ * Note ABT expects the links to preserve the order of the messages and the
+ * termination detection of the agents counts the messages, so reordering,
+ * duplication and loss may prevent the agents from terminating.
+ */
+public class EmulatedNetwork implements ChannelFactory {
+
+	private final LinkModel defaultModel;
+	/** Models of the links differing from the default one, by {@link #getLinkKey}. */
+	private final Map<String, LinkModel> models = new HashMap<String, LinkModel>();
+	/** State of the links used so far, by {@link #getLinkKey}. */
+	private final Map<String, Link> links = new HashMap<String, Link>();
+	private final Random random;
+
+	/** The messages submitted since the last tick. */
+	private final ConcurrentLinkedQueue<Delivery> submitted = new ConcurrentLinkedQueue<Delivery>();
+	private final TimerWheel<Delivery> wheel;
+	private final TimerWheel.Expiry<Delivery> deliver = new TimerWheel.Expiry<Delivery>() {
+		@Override
+		public void expired(Delivery delivery) {
+			try {
+				delivery.channel.sendMessage(delivery.message);
+				delivered.incrementAndGet();
+			} catch (CommunicationChannelException e) {
+				e.printStackTrace();
+			}
+		}
+	};
+
+	private final AtomicLong sent = new AtomicLong(), delivered = new AtomicLong();
+	private final AtomicLong duplicated = new AtomicLong(), lost = new AtomicLong();
+	private volatile int inFlight = 0, peakInFlight = 0;
+
+	private ScheduledExecutorService ticker;
+
+	/**
+	 * Constructor of the EmulatedNetwork class.
+	 *
+	 * @param defaultModel model of the links
+	 * @param seed seed of the random delays
+	 */
+	public EmulatedNetwork(LinkModel defaultModel, long seed) {
+		this(defaultModel, seed, 1024);
+	}
+
+	/**
+	 * Constructor of the EmulatedNetwork class.
+	 *
+	 * @param defaultModel model of the links
+	 * @param seed seed of the random delays
+	 * @param buckets the number of the buckets of the timer wheel, should exceed the usual delay
+	 */
+	public EmulatedNetwork(LinkModel defaultModel, long seed, int buckets) {
+		this.defaultModel = defaultModel.copy();
+		this.random = new Random(seed);
+		this.wheel = new TimerWheel<Delivery>(buckets);
+	}
+
+	/**
+	 * Returns the network configured by the system properties of the
+	 * {@link LinkModel} and <tt>massim.net.seed</tt>, null if the property
+	 * <tt>massim.net.delay</tt> is not set. The network is started with the
+	 * tick given by <tt>massim.net.tickMillis</tt> (1 by default).
+	 */
+	public static EmulatedNetwork fromSystemProperties() {
+		if (System.getProperty("massim.net.delay") == null) return null;
+		final EmulatedNetwork network = new EmulatedNetwork(LinkModel.fromSystemProperties(), Long.getLong("massim.net.seed", 0));
+		network.start(Long.getLong("massim.net.tickMillis", 1));
+		return network;
+	}
+
+	/** Sets the model of the link from given sender to given receiver, must be called before the run. */
+	public synchronized void setLinkModel(String sender, String receiver, LinkModel model) {
+		models.put(getLinkKey(sender, receiver), model.copy());
+	}
+
+	@Override
+	public CommunicationChannel createChannel(CommunicationReceiver receiver, ReceiverTable receiverTable) throws CommunicationChannelException {
+		return new EmulatedChannel(new DirectCommunicationChannel(receiver, receiverTable));
+	}
+
+	/**
+	 * Advances the network to the next tick, i.e. delivers the messages
+	 * whose delay elapsed. The messages submitted since the last tick are
+	 * delivered by this tick at the earliest.
+	 */
+	public synchronized void advance() {
+		Delivery delivery;
+		while ((delivery = submitted.poll()) != null) {
+			schedule(delivery);
+		}
+		wheel.advance(deliver);
+		inFlight = wheel.size();
+	}
+
+	/** Advances the network in real time by a background thread, one tick per given number of milliseconds. */
+	public synchronized void start(long tickMillis) {
+		if (ticker != null) throw new IllegalStateException("already started");
+		ticker = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("network-"));
+		ticker.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				advance();
+			}
+		}, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/** Stops the background thread, the in-flight messages are not delivered. */
+	public synchronized void stop() {
+		if (ticker != null) {
+			ticker.shutdownNow();
+			ticker = null;
+		}
+	}
+
+	/** Schedules the delivery of a submitted message to every receiver. */
+	private void schedule(Delivery submitted) {
+		final Message message = submitted.message;
+		final boolean single = message.getReceivers().size() == 1;
+		for (String receiver : message.getReceivers()) {
+			final Link link = getLink(message.getSender(), receiver);
+			if (link.model.loss > 0 && random.nextDouble() < link.model.loss) {
+				lost.incrementAndGet();
+				continue;
+			}
+			final int copies = (link.model.duplicate > 0 && random.nextDouble() < link.model.duplicate) ? 2 : 1;
+			for (int i = 0; i < copies; i++) {
+				long deadline = wheel.getTick() + link.model.sampleDelay(random);
+				if (link.model.reorder <= 0 || random.nextDouble() >= link.model.reorder) {
+					// not overtaking the previous messages of the link
+					deadline = Math.max(deadline, link.lastDeadline);
+					link.lastDeadline = deadline;
+				}
+				wheel.schedule(new Delivery(submitted.channel, single ? message : copy(message, receiver)), deadline);
+			}
+			if (copies > 1) duplicated.incrementAndGet();
+		}
+		peakInFlight = Math.max(peakInFlight, wheel.size());
+	}
+
+	/** @return copy of given message for one receiver */
+	private static Message copy(Message message, String receiver) {
+		final Message copy = SentMessage.copyOf(message);
+		copy.addReceiver(receiver);
+		return copy;
+	}
+
+	private Link getLink(String sender, String receiver) {
+		final String key = getLinkKey(sender, receiver);
+		Link link = links.get(key);
+		if (link == null) {
+			final LinkModel model = models.get(key);
+			link = new Link((model == null) ? defaultModel : model);
+			links.put(key, link);
+		}
+		return link;
+	}
+
+	private static String getLinkKey(String sender, String receiver) {
+		return sender + "->" + receiver;
+	}
+
+	/** @return the number of the messages sent to the receivers */
+	public long getSent() {
+		return sent.get();
+	}
+
+	/** @return the number of the messages delivered to the receivers, including the duplicates */
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	/** @return the number of the duplicated messages */
+	public long getDuplicated() {
+		return duplicated.get();
+	}
+
+	/** @return the number of the lost messages */
+	public long getLost() {
+		return lost.get();
+	}
+
+	/** @return the number of the messages in flight after the last tick */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/** @return the maximal number of the messages in flight */
+	public int getPeakInFlight() {
+		return peakInFlight;
+	}
+
+	@Override
+	public String toString() {
+		return "EmulatedNetwork [" + defaultModel + ", sent=" + getSent() + ", delivered=" + getDelivered() + ", duplicated=" + getDuplicated()
+				+ ", lost=" + getLost() + ", inFlight=" + getInFlight() + ", peakInFlight=" + getPeakInFlight() + "]";
+	}
+
+	/** State of a link. */
+	private static class Link {
+
+		private final LinkModel model;
+		/** Deadline of the last ordered message of the link. */
+		private long lastDeadline = 0;
+
+		private Link(LinkModel model) {
+			this.model = model;
+		}
+	}
+
+	/** A message to be delivered by given direct channel. */
+	private static class Delivery {
+
+		private final DirectCommunicationChannel channel;
+		private final Message message;
+
+		private Delivery(DirectCommunicationChannel channel, Message message) {
+			this.channel = channel;
+			this.message = message;
+		}
+	}
+
+	/** Channel of an agent submitting the sent messages to the network. */
+	private class EmulatedChannel implements CommunicationChannel {
+
+		private final DirectCommunicationChannel direct;
+
+		private EmulatedChannel(DirectCommunicationChannel direct) {
+			this.direct = direct;
+		}
+
+		@Override
+		public void sendMessage(Message message) {
+			sent.addAndGet(message.getReceivers().size());
+			submitted.add(new Delivery(direct, message));
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package massim.agent.channel;
+
+import java.io.ByteArrayOutputStream;
+
+/** Output stream of an encoded frame exposing its buffer, reused for the frames. */
+class FrameBuffer extends ByteArrayOutputStream {
+
+	FrameBuffer() {
+		super(256);
+	}
+
+	/** @return the buffer holding the first {@link #size()} bytes of the frame */
+	byte[] array() {
+		return buf;
+	}
+}
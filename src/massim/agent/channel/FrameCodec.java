@@ -0,0 +1,52 @@
+package massim.agent.channel;
+
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.content.Content;
+import massim.agent.metrics.SentMessage;
+import massim.agent.student.utils.MessageCodec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Encoding of the messages passed between the nodes, i.e. the sender, the
+ * id, the time of sending (see {@link SentMessage}), the receivers and the
+ * content. One codec serves one direction of a
+ * connection, the frames have to be decoded in the order of encoding.
+ */
+class FrameCodec {
+
+	private final MessageCodec codec = new MessageCodec();
+
+	/** Writes given message for given receivers. */
+	void write(DataOutput out, Message message, List<String> receivers) throws IOException {
+		codec.writeString(out, message.getSender());
+		out.writeLong(message.getId());
+		out.writeLong((message instanceof SentMessage) ? ((SentMessage) message).getSentWallNanos() : 0);
+		MessageCodec.writeVarInt(out, receivers.size());
+		for (String receiver : receivers) {
+			codec.writeString(out, receiver);
+		}
+		codec.writeContent(out, message.getContent());
+	}
+
+	/** @return message read from given input */
+	Message read(DataInput in) throws IOException {
+		final String sender = codec.readString(in);
+		final long id = in.readLong();
+		final long sentWallNanos = in.readLong();
+		final String[] receivers = new String[MessageCodec.readVarInt(in)];
+		for (int i = 0; i < receivers.length; i++) {
+			receivers[i] = codec.readString(in);
+		}
+		final Content content = codec.readContent(in);
+		final Message message = (sentWallNanos == 0) ? new Message(sender, content, id)
+				: new SentMessage(sender, content, id, SentMessage.fromWallNanos(sentWallNanos));
+		for (String receiver : receivers) {
+			message.addReceiver(receiver);
+		}
+		return message;
+	}
+}
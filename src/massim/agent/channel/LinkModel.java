@@ -0,0 +1,93 @@
+package massim.agent.channel;
+
+import java.util.Random;
+
+/**
+ * Model of a link between two agents of the {@link EmulatedNetwork}. The
+ * delay of a message is the base delay plus a random part of given mean
+ * and distribution, in the ticks of the network. The links preserve the
+ * order of the messages unless reordering is allowed.
+ */
+public class LinkModel {
+
+	/** Distributions of the random part of the delay. */
+	public enum Distribution {
+		/** No random part. */
+		constant,
+		/** Uniform between zero and twice the mean. */
+		uniform,
+		/** Exponential with given mean. */
+		exponential,
+		/** Pareto (Lomax) with the shape 2 and given mean, i.e. a heavy tail. */
+		pareto
+	}
+
+	/** Base delay of the messages (in ticks), the messages are delivered in the next tick at the earliest. */
+	public int delay = 1;
+	/** Mean of the random part of the delay (in ticks). */
+	public double jitter = 0;
+	/** Distribution of the random part of the delay. */
+	public Distribution distribution = Distribution.constant;
+	/** Probability a message may overtake the previous messages of the link. */
+	public double reorder = 0;
+	/** Probability a message is delivered twice. */
+	public double duplicate = 0;
+	/** Probability a message is lost. */
+	public double loss = 0;
+
+	/** @return copy of this model */
+	public LinkModel copy() {
+		final LinkModel model = new LinkModel();
+		model.delay = delay;
+		model.jitter = jitter;
+		model.distribution = distribution;
+		model.reorder = reorder;
+		model.duplicate = duplicate;
+		model.loss = loss;
+		return model;
+	}
+
+	/** @return a random delay of a message (in ticks) */
+	public long sampleDelay(Random random) {
+		double extra;
+		switch (distribution) {
+			case uniform:
+				extra = 2 * jitter * random.nextDouble();
+				break;
+			case exponential:
+				extra = -jitter * Math.log(1 - random.nextDouble());
+				break;
+			case pareto:
+				// Lomax of the shape 2, i.e. shifted to start at zero
+				extra = jitter * (1 / Math.sqrt(1 - random.nextDouble()) - 1);
+				break;
+			case constant:
+			default:
+				extra = jitter;
+		}
+		return delay + Math.round(extra);
+	}
+
+	/**
+	 * Reads the model from system properties, i.e. <tt>massim.net.delay</tt>,
+	 * <tt>massim.net.jitter</tt>, <tt>massim.net.distribution</tt>,
+	 * <tt>massim.net.reorder</tt>, <tt>massim.net.duplicate</tt> and
+	 * <tt>massim.net.loss</tt>.
+	 */
+	public static LinkModel fromSystemProperties() {
+		final LinkModel model = new LinkModel();
+		model.delay = Integer.getInteger("massim.net.delay", model.delay);
+		model.jitter = Double.parseDouble(System.getProperty("massim.net.jitter", String.valueOf(model.jitter)));
+		model.distribution = Distribution.valueOf(System.getProperty("massim.net.distribution", model.distribution.name()));
+		model.reorder = Double.parseDouble(System.getProperty("massim.net.reorder", String.valueOf(model.reorder)));
+		model.duplicate = Double.parseDouble(System.getProperty("massim.net.duplicate", String.valueOf(model.duplicate)));
+		model.loss = Double.parseDouble(System.getProperty("massim.net.loss", String.valueOf(model.loss)));
+		return model;
+	}
+
+	@Override
+	public String toString() {
+		return "LinkModel [delay=" + delay + ", jitter=" + jitter + " " + distribution + ", reorder=" + reorder
+				+ ", duplicate=" + duplicate + ", loss=" + loss + "]";
+	}
+}
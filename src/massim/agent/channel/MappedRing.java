@@ -0,0 +1,188 @@
+package massim.agent.channel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Single-producer single-consumer ring of frames in a memory-mapped file,
+ * the producer and the consumer may live in different processes. The
+ * header holds the positions of the consumer (head) and of the producer
+ * (tail) on separate cache lines, the positions only grow. A frame is its
+ * length (4 bytes) followed by the data, aligned to 8 bytes. A frame not
+ * fitting before the end of the ring is preceded by a padding frame of the
+ * length -1.
+ * <p/>
+ * The producer writes a frame and publishes it by a release store of the
+ * tail, the consumer reads the tail by an acquire load and hands out the
+ * frames in place, the space is released by a release store of the head
+ * once the frames are processed.
+ */
+class MappedRing {
+
+	private static final int MAGIC = 0x52494E47;
+	private static final int MAGIC_OFFSET = 0;
+	private static final int CAPACITY_OFFSET = 4;
+	private static final int HEAD_OFFSET = 64;
+	private static final int TAIL_OFFSET = 128;
+	private static final int HEADER = 192;
+	private static final int PADDING = -1;
+
+	private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+	private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/** Handler of the consumed frames. */
+	interface Consumer {
+
+		/** Called for every frame, the data are between the position and the limit of given buffer. */
+		void frame(ByteBuffer frame) throws IOException;
+
+	}
+
+	private final MappedByteBuffer buffer;
+	/** View of the data of a frame written by the producer or handed to the consumer. */
+	private final ByteBuffer view;
+	private final int capacity, mask;
+
+	/** Position of the owner side, i.e. the tail of the producer or the head of the consumer. */
+	private long position;
+	/** The last seen position of the other side. */
+	private long cached;
+
+	private MappedRing(MappedByteBuffer buffer, int capacity) {
+		this.buffer = buffer;
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		// the frames are encoded in the big-endian order of the data streams
+		this.view = buffer.duplicate();
+		buffer.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Creates a new ring in given file, replacing the old one, to be
+	 * consumed by the caller.
+	 *
+	 * @param capacity size of the data, rounded up to a power of two
+	 */
+	static MappedRing create(File file, int capacity) throws IOException {
+		if (capacity < 64 || capacity > (1 << 30)) throw new IllegalArgumentException("capacity=" + capacity);
+		capacity = Integer.highestOneBit(capacity - 1) << 1;
+		if (file.exists() && !file.delete()) throw new IOException("Unable to delete " + file);
+		final MappedByteBuffer buffer = map(file, HEADER + capacity);
+		final MappedRing ring = new MappedRing(buffer, capacity);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		LONG.setRelease(buffer, HEAD_OFFSET, 0L);
+		LONG.setRelease(buffer, TAIL_OFFSET, 0L);
+		// the producer opens the ring once the header is complete
+		INT.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+		return ring;
+	}
+
+	/** @return the ring in given file to be produced by the caller, null if the ring is not created yet */
+	static MappedRing open(File file) throws IOException {
+		if (file.length() < HEADER) return null;
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			final MappedByteBuffer header = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+			header.order(ByteOrder.nativeOrder());
+			if ((int) INT.getAcquire(header, MAGIC_OFFSET) != MAGIC) return null;
+			final int capacity = header.getInt(CAPACITY_OFFSET);
+			final MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER + capacity);
+			final MappedRing ring = new MappedRing(buffer, capacity);
+			ring.position = (long) LONG.getAcquire(buffer, TAIL_OFFSET);
+			return ring;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static MappedByteBuffer map(File file, int size) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(size);
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/** @return the maximal length of a frame */
+	int getMaxFrameLength() {
+		return capacity - 8;
+	}
+
+	/**
+	 * Appends a frame of given data, by the producer.
+	 *
+	 * @return false if the ring is full
+	 */
+	boolean offer(byte[] data, int length) {
+		if (length > getMaxFrameLength()) throw new IllegalArgumentException("frame length " + length);
+		final int size = align(4 + length);
+		int offset = (int) position & mask;
+		if (offset + size > capacity) {
+			// pad to the end of the ring first
+			if (!hasSpace(capacity - offset)) return false;
+			buffer.putInt(HEADER + offset, PADDING);
+			position += capacity - offset;
+			LONG.setRelease(buffer, TAIL_OFFSET, position);
+			offset = 0;
+		}
+		if (!hasSpace(size)) return false;
+
+		buffer.putInt(HEADER + offset, length);
+		view.clear().position(HEADER + offset + 4);
+		view.put(data, 0, length);
+		position += size;
+		LONG.setRelease(buffer, TAIL_OFFSET, position);
+		return true;
+	}
+
+	/** @return true if there is given space after the tail, by the producer */
+	private boolean hasSpace(int size) {
+		if (position + size - cached <= capacity) return true;
+		cached = (long) LONG.getAcquire(buffer, HEAD_OFFSET);
+		return position + size - cached <= capacity;
+	}
+
+	/**
+	 * Hands the available frames to given consumer and releases their
+	 * space, by the consumer.
+	 *
+	 * @return the number of the consumed frames
+	 */
+	int drain(Consumer consumer) throws IOException {
+		if (position == cached) {
+			cached = (long) LONG.getAcquire(buffer, TAIL_OFFSET);
+			if (position == cached) return 0;
+		}
+		int frames = 0;
+		try {
+			while (position < cached) {
+				final int offset = (int) position & mask;
+				final int length = buffer.getInt(HEADER + offset);
+				if (length == PADDING) {
+					position += capacity - offset;
+					continue;
+				}
+				view.limit(HEADER + offset + 4 + length).position(HEADER + offset + 4);
+				position += align(4 + length);
+				consumer.frame(view);
+				frames++;
+			}
+		} finally {
+			LONG.setRelease(buffer, HEAD_OFFSET, position);
+		}
+		return frames;
+	}
+
+	private static int align(int size) {
+		return (size + 7) & ~7;
+	}
+}
@@ -0,0 +1,105 @@
+package massim.agent.channel;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Static membership of the agents split across several processes, maps the
+ * agent names to the addresses of the nodes, i.e. of the processes hosting
+ * them. The file has one agent per line, the name followed by the address
+ * of its node, e.g.
+ * <pre>
+ * # agent  node
+ * a1       localhost:7001
+ * b1       localhost:7002
+ * </pre>
+ * The lines starting by <tt>#</tt> are comments.
+ */
+public class Membership {
+
+	/** Addresses of the nodes by the agent names. */
+	private final Map<String, String> nodes = new LinkedHashMap<String, String>();
+
+	/** @return membership read from given file */
+	public static Membership load(File file) throws IOException {
+		final FileReader reader = new FileReader(file);
+		try {
+			return parse(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/** @return membership read from given reader */
+	public static Membership parse(Reader reader) throws IOException {
+		final Membership membership = new Membership();
+		final BufferedReader lines = new BufferedReader(reader);
+		String line;
+		int number = 0;
+		while ((line = lines.readLine()) != null) {
+			number++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) continue;
+			final String[] fields = line.split("\\s+");
+			if (fields.length != 2 || fields[1].lastIndexOf(':') < 0) {
+				throw new IOException("line " + number + ": expected an agent name and host:port, got " + line);
+			}
+			membership.add(fields[0], fields[1]);
+		}
+		return membership;
+	}
+
+	/** Adds given agent hosted by the node of given address (host:port). */
+	public void add(String agent, String node) {
+		if (nodes.containsKey(agent)) throw new IllegalArgumentException("duplicate agent " + agent);
+		nodes.put(agent, node);
+	}
+
+	/** @return address of the node hosting given agent, null for an unknown agent */
+	public String getNode(String agent) {
+		return nodes.get(agent);
+	}
+
+	/** @return names of the agents hosted by given node */
+	public List<String> getAgents(String node) {
+		final List<String> agents = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : nodes.entrySet()) {
+			if (entry.getValue().equals(node)) agents.add(entry.getKey());
+		}
+		return agents;
+	}
+
+	/** @return addresses of all the nodes */
+	public List<String> getNodes() {
+		final List<String> result = new ArrayList<String>();
+		for (String node : nodes.values()) {
+			if (!result.contains(node)) result.add(node);
+		}
+		return result;
+	}
+
+	/** @return names of all the agents */
+	public List<String> getAgents() {
+		return Collections.unmodifiableList(new ArrayList<String>(nodes.keySet()));
+	}
+
+	/** @return socket address of given node address (host:port) */
+	public static InetSocketAddress toSocketAddress(String node) {
+		final int colon = node.lastIndexOf(':');
+		return new InetSocketAddress(node.substring(0, colon), Integer.parseInt(node.substring(colon + 1)));
+	}
+
+	@Override
+	public String toString() {
+		return "Membership " + nodes;
+	}
+}
@@ -0,0 +1,266 @@
+package massim.agent.channel;
+
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.channel.CommunicationChannelException;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Network of the agents split across several processes on one host
+ * communicating by shared memory, i.e. by {@link MappedRing}s in files of
+ * a common directory (preferably in memory, e.g. <tt>/dev/shm</tt>).
+ * <p/>
+ * There is one ring per ordered pair of nodes, created by the receiving
+ * node when started and removed when shut down. The agents of a node
+ * append the frames to the ring of the receiving node under a lock, i.e.
+ * the node is the single producer of the ring, a sender waits while the
+ * ring is full. The frames are encoded as by the {@link SocketNetwork}.
+ * One thread of the receiving node polls its rings, decodes the frames in
+ * place and delivers the messages, the thread backs off from spinning to
+ * parking when the rings are empty.
+ * <p/>
+ * The ring of a node is opened by the first message sent to it, the nodes
+ * have to be started by then. A ring left behind by a killed process has to
+ * be removed before the next run.
+ */
+public class SharedMemoryNetwork extends ClusterNetwork {
+
+	/** Default size of a ring. */
+	public static final int DEFAULT_RING_BYTES = 1 << 20;
+	/** Time to wait for the ring of a node to be created. */
+	private static final long OPEN_TIMEOUT_MILLIS = 10000;
+
+	private final File directory;
+	private final int ringBytes;
+	/** Rings to the other nodes, by their addresses. */
+	private final Map<String, Outbound> outbound = new LinkedHashMap<String, Outbound>();
+	/** Rings from the other nodes, created when started. */
+	private final List<Inbound> inbound = new ArrayList<Inbound>();
+
+	private Poller poller;
+
+	private final AtomicLong framesSent = new AtomicLong(), framesReceived = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong(), fullWaits = new AtomicLong();
+
+	/**
+	 * Constructor of the SharedMemoryNetwork class.
+	 *
+	 * @param membership the agents of all the nodes, the nodes have to share the host
+	 * @param localNode address of this node (host:port) as given in the membership
+	 * @param directory directory of the rings
+	 * @param ringBytes size of a ring
+	 */
+	public SharedMemoryNetwork(Membership membership, String localNode, File directory, int ringBytes) {
+		super(membership, localNode);
+		final String host = Membership.toSocketAddress(localNode).getHostString();
+		for (String node : membership.getNodes()) {
+			if (!Membership.toSocketAddress(node).getHostString().equals(host)) {
+				throw new IllegalArgumentException("The node " + node + " is not on the host " + host);
+			}
+			if (!node.equals(localNode)) outbound.put(node, new Outbound(getRingFile(directory, localNode, node)));
+		}
+		this.directory = directory;
+		this.ringBytes = ringBytes;
+	}
+
+	/** @return file of the ring from given node to given node */
+	private static File getRingFile(File directory, String from, String to) {
+		return new File(directory, (from + "-" + to).replaceAll("[^A-Za-z0-9.-]", "_") + ".ring");
+	}
+
+	/** Creates the rings from the other nodes and starts polling them. */
+	@Override
+	public synchronized void start() throws IOException {
+		if (poller != null) throw new IllegalStateException("already started");
+		if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Unable to create " + directory);
+		for (String node : membership.getNodes()) {
+			if (node.equals(localNode)) continue;
+			final File file = getRingFile(directory, node, localNode);
+			inbound.add(new Inbound(file, MappedRing.create(file, ringBytes)));
+		}
+		System.out.println("Node " + localNode + ": polling " + inbound.size() + " rings in " + directory + ", agents " + membership.getAgents(localNode));
+
+		poller = new Poller();
+		poller.start();
+	}
+
+	/** Stops polling and removes the rings from the other nodes. */
+	@Override
+	public synchronized void shutdown() {
+		if (poller == null) return;
+		poller.running = false;
+		LockSupport.unpark(poller);
+		try {
+			poller.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		poller = null;
+		for (Inbound ring : inbound) {
+			ring.file.delete();
+		}
+		inbound.clear();
+	}
+
+	@Override
+	protected void send(String node, Message message, List<String> receivers) throws CommunicationChannelException {
+		outbound.get(node).send(message, receivers);
+	}
+
+	/** @return the number of the frames sent to the other nodes */
+	public long getFramesSent() {
+		return framesSent.get();
+	}
+
+	/** @return the number of the frames received from the other nodes */
+	public long getFramesReceived() {
+		return framesReceived.get();
+	}
+
+	/** @return the number of the bytes of the frames sent to the other nodes */
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	/** @return the number of the times a sender found a ring full */
+	public long getFullWaits() {
+		return fullWaits.get();
+	}
+
+	@Override
+	public String toString() {
+		return "SharedMemoryNetwork [node=" + localNode + ", framesSent=" + getFramesSent() + ", framesReceived=" + getFramesReceived()
+				+ ", bytesSent=" + getBytesSent() + ", fullWaits=" + getFullWaits() + "]";
+	}
+
+	/** Waits by spinning first, then by yielding and then by parking, given the number of the idle rounds. */
+	private static void idle(int rounds) {
+		if (rounds < 100) {
+			Thread.onSpinWait();
+		} else if (rounds < 200) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+		}
+	}
+
+	/** Ring to another node, the senders of this node take turns on it. */
+	private class Outbound {
+
+		private final File file;
+		private final FrameBuffer frame = new FrameBuffer();
+		private final DataOutputStream out = new DataOutputStream(frame);
+		private final FrameCodec codec = new FrameCodec();
+		private MappedRing ring;
+		/** The codec failed, its string table may be ahead of the receiver. */
+		private boolean broken = false;
+
+		Outbound(File file) {
+			this.file = file;
+		}
+
+		synchronized void send(Message message, List<String> receivers) throws CommunicationChannelException {
+			if (broken) throw new CommunicationChannelException("The ring " + file + " is broken by a previous message");
+			if (ring == null) ring = open();
+
+			frame.reset();
+			try {
+				codec.write(out, message, receivers);
+			} catch (IOException e) {
+				broken = true;
+				throw new CommunicationChannelException("Unable to encode the message for " + file, e);
+			}
+			if (frame.size() > ring.getMaxFrameLength()) {
+				broken = true;
+				throw new CommunicationChannelException("The message of " + frame.size() + " bytes exceeds the ring " + file);
+			}
+
+			int rounds = 0;
+			while (!ring.offer(frame.array(), frame.size())) {
+				if (rounds == 0) fullWaits.incrementAndGet();
+				idle(rounds++);
+			}
+			framesSent.incrementAndGet();
+			bytesSent.addAndGet(frame.size());
+		}
+
+		/** @return the ring opened once the receiving node creates it */
+		private MappedRing open() throws CommunicationChannelException {
+			final long deadline = System.currentTimeMillis() + OPEN_TIMEOUT_MILLIS;
+			try {
+				MappedRing opened;
+				while ((opened = MappedRing.open(file)) == null) {
+					if (System.currentTimeMillis() > deadline) {
+						throw new CommunicationChannelException("The ring " + file + " was not created in " + OPEN_TIMEOUT_MILLIS + "ms");
+					}
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+				}
+				return opened;
+			} catch (IOException e) {
+				throw new CommunicationChannelException("Unable to open the ring " + file, e);
+			}
+		}
+	}
+
+	/** Ring from another node, decodes the frames in place. */
+	private class Inbound implements MappedRing.Consumer {
+
+		private final File file;
+		private final MappedRing ring;
+		private final FrameCodec codec = new FrameCodec();
+		private final ByteBufferInput in = new ByteBufferInput();
+
+		Inbound(File file, MappedRing ring) {
+			this.file = file;
+			this.ring = ring;
+		}
+
+		@Override
+		public void frame(ByteBuffer frame) throws IOException {
+			final Message message = codec.read(in.reset(frame));
+			framesReceived.incrementAndGet();
+			deliver(message);
+		}
+	}
+
+	/** Thread polling the rings from the other nodes. */
+	private class Poller extends Thread {
+
+		private volatile boolean running = true;
+
+		Poller() {
+			super("shm-network-" + localNode);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			int rounds = 0;
+			while (running) {
+				int frames = 0;
+				for (Inbound ring : inbound) {
+					try {
+						frames += ring.ring.drain(ring);
+					} catch (IOException e) {
+						System.out.println("Node " + localNode + ": invalid frame in " + ring.file + ", " + e.getMessage());
+					}
+				}
+				if (frames > 0) {
+					rounds = 0;
+				} else {
+					idle(rounds++);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,437 @@
+package massim.agent.channel;
+
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.channel.CommunicationChannelException;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Network of the agents split across several processes communicating over
+ * TCP, the processes may run on different hosts.
+ * <p/>
+ * Every node listens on the port of its address and connects to every
+ * other node, the connection is used for the messages in one direction
+ * only. A message is sent as a frame of its length (4 bytes) followed by
+ * the sender, the id, the receivers on the node and the content encoded
+ * by a {@link FrameCodec} of the connection. The frames are appended to
+ * the write buffer of the peer and written by a single selector thread,
+ * so the frames sent while the previous write is in progress are
+ * coalesced into one write. The received messages are delivered in the
+ * selector thread.
+ * <p/>
+ * The frames sent before the peer is reachable are held until the
+ * connection is established, the nodes may be started in any order. The
+ * frames in the buffers of a lost connection are lost.
+ */
+public class SocketNetwork extends ClusterNetwork {
+
+	/** Maximal length of a frame, longer frames are considered corrupted. */
+	private static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+	/** Initial size of the buffers of a connection. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+	/** Delay of the next attempt to connect to a peer. */
+	private static final long RECONNECT_MILLIS = 100;
+
+	/** Connections to the other nodes, by their addresses. */
+	private final Map<String, Peer> peers = new LinkedHashMap<String, Peer>();
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private volatile Selector selector;
+	private SelectorLoop loop;
+
+	private final AtomicLong framesSent = new AtomicLong(), framesReceived = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong(), writes = new AtomicLong();
+
+	/**
+	 * Constructor of the SocketNetwork class.
+	 *
+	 * @param membership the agents of all the nodes
+	 * @param localNode address of this node (host:port) as given in the membership
+	 */
+	public SocketNetwork(Membership membership, String localNode) {
+		super(membership, localNode);
+		for (String node : membership.getNodes()) {
+			if (!node.equals(localNode)) peers.put(node, new Peer(node));
+		}
+	}
+
+	/** Starts listening and connecting to the other nodes. */
+	@Override
+	public synchronized void start() throws IOException {
+		if (loop != null) throw new IllegalStateException("already started");
+		selector = Selector.open();
+		final ServerSocketChannel server = ServerSocketChannel.open();
+		server.configureBlocking(false);
+		server.socket().setReuseAddress(true);
+		server.socket().bind(new InetSocketAddress(Membership.toSocketAddress(localNode).getPort()));
+		server.register(selector, SelectionKey.OP_ACCEPT, new Acceptor(server));
+		System.out.println("Node " + localNode + ": listening, agents " + membership.getAgents(localNode));
+
+		loop = new SelectorLoop();
+		loop.start();
+	}
+
+	/** Closes all the connections. */
+	@Override
+	public synchronized void shutdown() {
+		if (loop == null) return;
+		loop.running = false;
+		selector.wakeup();
+		loop = null;
+	}
+
+	@Override
+	protected void send(String node, Message message, List<String> receivers) throws CommunicationChannelException {
+		peers.get(node).send(message, receivers);
+	}
+
+	/** Runs given task in the selector thread. */
+	private void execute(Runnable task) {
+		tasks.add(task);
+		final Selector current = selector;
+		if (current != null) current.wakeup();
+	}
+
+	/** @return the number of the frames sent to the other nodes */
+	public long getFramesSent() {
+		return framesSent.get();
+	}
+
+	/** @return the number of the frames received from the other nodes */
+	public long getFramesReceived() {
+		return framesReceived.get();
+	}
+
+	/** @return the number of the bytes written to the other nodes */
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	/** @return the number of the writes to the sockets, i.e. the frames per write show the coalescing */
+	public long getWrites() {
+		return writes.get();
+	}
+
+	@Override
+	public String toString() {
+		return "SocketNetwork [node=" + localNode + ", framesSent=" + getFramesSent() + ", framesReceived=" + getFramesReceived()
+				+ ", bytesSent=" + getBytesSent() + ", writes=" + getWrites() + "]";
+	}
+
+	/** Handler of the ready keys of the selector. */
+	private interface Handler {
+
+		/** Called in the selector thread when the key is ready. */
+		void ready(SelectionKey key) throws IOException;
+
+		/** Called in the selector thread when the handling failed. */
+		void failed(IOException e);
+
+	}
+
+	/** Selector thread serving all the connections of the node. */
+	private class SelectorLoop extends Thread {
+
+		private volatile boolean running = true;
+
+		SelectorLoop() {
+			super("socket-network-" + localNode);
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					long timeout = 0;
+					final long now = System.currentTimeMillis();
+					for (Peer peer : peers.values()) {
+						if (peer.channel != null) continue;
+						if (peer.retryAt <= now) {
+							peer.connect();
+						} else if (timeout == 0 || peer.retryAt - now < timeout) {
+							timeout = peer.retryAt - now;
+						}
+					}
+					selector.select(timeout);
+
+					Runnable task;
+					while ((task = tasks.poll()) != null) {
+						task.run();
+					}
+
+					final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						final SelectionKey key = keys.next();
+						keys.remove();
+						final Handler handler = (Handler) key.attachment();
+						try {
+							if (key.isValid()) handler.ready(key);
+						} catch (IOException e) {
+							handler.failed(e);
+						}
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} catch (ClosedSelectorException e) {
+				// terminated
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					close(key.channel());
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private static void close(Channel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+	}
+
+	/** Accepts the connections of the other nodes. */
+	private class Acceptor implements Handler {
+
+		private final ServerSocketChannel server;
+
+		Acceptor(ServerSocketChannel server) {
+			this.server = server;
+		}
+
+		@Override
+		public void ready(SelectionKey key) throws IOException {
+			SocketChannel channel;
+			while ((channel = server.accept()) != null) {
+				channel.configureBlocking(false);
+				channel.register(selector, SelectionKey.OP_READ, new Inbound(channel));
+			}
+		}
+
+		@Override
+		public void failed(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** Connection from another node, decodes the frames and delivers the messages. */
+	private class Inbound implements Handler {
+
+		private final SocketChannel channel;
+		private final FrameCodec codec = new FrameCodec();
+		private final ByteBufferInput in = new ByteBufferInput();
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		Inbound(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void ready(SelectionKey key) throws IOException {
+			if (channel.read(buffer) == -1) {
+				close(channel);
+				return;
+			}
+			buffer.flip();
+			int needed = 0;
+			while (buffer.remaining() >= 4) {
+				final int length = buffer.getInt(buffer.position());
+				if (length < 0 || length > MAX_FRAME_LENGTH) throw new IOException("invalid frame length " + length);
+				if (buffer.remaining() < 4 + length) {
+					needed = 4 + length;
+					break;
+				}
+				final int limit = buffer.limit(), end = buffer.position() + 4 + length;
+				buffer.position(buffer.position() + 4).limit(end);
+				final Message message;
+				try {
+					message = codec.read(in.reset(buffer));
+				} catch (RuntimeException e) {
+					// a corrupted frame fails this connection only, not the selector thread
+					throw new IOException("invalid frame, " + e, e);
+				}
+				buffer.limit(limit).position(end);
+				framesReceived.incrementAndGet();
+				deliver(message);
+			}
+			buffer.compact();
+			if (needed > buffer.capacity()) {
+				final ByteBuffer larger = ByteBuffer.allocate(Integer.highestOneBit(needed) << 1);
+				buffer.flip();
+				buffer = larger.put(buffer);
+			}
+		}
+
+		@Override
+		public void failed(IOException e) {
+			System.out.println("Node " + localNode + ": invalid connection, " + e.getMessage());
+			close(channel);
+		}
+	}
+
+	/** Connection to another node, buffers and writes the frames. */
+	private class Peer implements Handler {
+
+		private final String node;
+
+		/** Encodes the frames, guarded by this peer. */
+		private FrameCodec codec = new FrameCodec();
+		private final FrameBuffer frame = new FrameBuffer();
+		private final DataOutputStream out = new DataOutputStream(frame);
+		/** Frames appended since the last write, guarded by this peer. */
+		private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+		private boolean writeRequested = false;
+
+		/** The fields below are used by the selector thread only. */
+		private SocketChannel channel;
+		private SelectionKey key;
+		private boolean established = false;
+		private long retryAt = 0;
+		/** Frames being written, in the read mode. */
+		private ByteBuffer writing = ByteBuffer.allocate(BUFFER_SIZE).flip();
+
+		Peer(String node) {
+			this.node = node;
+		}
+
+		/** Appends the frame of given message for given receivers. */
+		void send(Message message, List<String> receivers) throws CommunicationChannelException {
+			synchronized (this) {
+				frame.reset();
+				try {
+					codec.write(out, message, receivers);
+				} catch (IOException e) {
+					// the string table of the codec may be ahead of the peer
+					execute(new Runnable() {
+						@Override
+						public void run() {
+							disconnect(true);
+						}
+					});
+					throw new CommunicationChannelException("Unable to encode the message for the node " + node, e);
+				}
+				if (pending.remaining() < 4 + frame.size()) {
+					final ByteBuffer larger = ByteBuffer.allocate(Integer.highestOneBit(pending.position() + 4 + frame.size()) << 1);
+					pending.flip();
+					pending = larger.put(pending);
+				}
+				pending.putInt(frame.size()).put(frame.array(), 0, frame.size());
+				framesSent.incrementAndGet();
+				if (writeRequested) return;
+				writeRequested = true;
+			}
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					if (established && key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+			});
+		}
+
+		/** Starts connecting to the node, in the selector thread. */
+		void connect() throws IOException {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			try {
+				final boolean connected = channel.connect(Membership.toSocketAddress(node));
+				key = channel.register(selector, connected ? 0 : SelectionKey.OP_CONNECT, this);
+				if (connected) connected();
+			} catch (IOException e) {
+				failed(e);
+			}
+		}
+
+		private void connected() {
+			System.out.println("Node " + localNode + ": connected to " + node);
+			established = true;
+			// the peer never writes, reading detects the closed connection
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+
+		@Override
+		public void ready(SelectionKey key) throws IOException {
+			if (key.isConnectable()) {
+				channel.finishConnect();
+				connected();
+				return;
+			}
+			if (key.isReadable() && channel.read(ByteBuffer.allocate(1)) == -1) {
+				throw new IOException("closed by the peer");
+			}
+			if (key.isValid() && key.isWritable()) flush();
+		}
+
+		/** Writes the pending frames, swaps the buffers so the senders append to an empty one meanwhile. */
+		private void flush() throws IOException {
+			while (true) {
+				if (!writing.hasRemaining()) {
+					synchronized (this) {
+						if (pending.position() == 0) {
+							writeRequested = false;
+							key.interestOps(SelectionKey.OP_READ);
+							return;
+						}
+						final ByteBuffer written = writing;
+						writing = pending;
+						pending = written;
+						pending.clear();
+					}
+					writing.flip();
+				}
+				final int n = channel.write(writing);
+				writes.incrementAndGet();
+				bytesSent.addAndGet(n);
+				if (writing.hasRemaining()) return;
+			}
+		}
+
+		@Override
+		public void failed(IOException e) {
+			if (established) {
+				System.out.println("Node " + localNode + ": connection to " + node + " lost, " + e.getMessage());
+			}
+			disconnect(established);
+		}
+
+		/** Closes the connection and schedules the next attempt, the buffered frames are dropped if given. */
+		private void disconnect(boolean drop) {
+			if (channel != null) close(channel);
+			channel = null;
+			key = null;
+			established = false;
+			retryAt = System.currentTimeMillis() + RECONNECT_MILLIS;
+			if (drop) {
+				synchronized (this) {
+					codec = new FrameCodec();
+					pending.clear();
+					writing.clear().flip();
+					writeRequested = false;
+				}
+			}
+		}
+	}
+}
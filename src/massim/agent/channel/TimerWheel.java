@@ -0,0 +1,110 @@
+package massim.agent.channel;
+
+/**
+ * Hashed timer wheel, i.e. a ring of buckets indexed by the deadline tick.
+ * Scheduling is O(1), a tick visits one bucket only, so the wheel holds
+ * millions of timeouts at a small cost. Timeouts further than the ring
+ * stay in their bucket for more rounds. The timeouts expiring in the same
+ * tick expire in the order of scheduling.
+ * <p/>
+ * The wheel is not thread-safe.
+ */
+public class TimerWheel<T> {
+
+	/** Handler of the expired timeouts. */
+	public interface Expiry<T> {
+
+		/** Called for every expired value. */
+		void expired(T value);
+
+	}
+
+	private final Node<T>[] heads, tails;
+	private final int mask;
+	/** The current tick. */
+	private long tick = 0;
+	/** The number of the scheduled timeouts. */
+	private int size = 0;
+
+	/**
+	 * Constructor of the TimerWheel class.
+	 *
+	 * @param buckets the number of the buckets, rounded up to a power of two
+	 */
+	@SuppressWarnings("unchecked")
+	public TimerWheel(int buckets) {
+		if (buckets < 1) throw new IllegalArgumentException("buckets=" + buckets);
+		final int length = (buckets == 1) ? 1 : Integer.highestOneBit(buckets - 1) << 1;
+		mask = length - 1;
+		heads = (Node<T>[]) new Node<?>[length];
+		tails = (Node<T>[]) new Node<?>[length];
+	}
+
+	/** @return the current tick */
+	public long getTick() {
+		return tick;
+	}
+
+	/** @return the number of the scheduled timeouts */
+	public int size() {
+		return size;
+	}
+
+	/** Schedules given value to expire in given tick, at the next tick at the earliest. */
+	public void schedule(T value, long deadline) {
+		final Node<T> node = new Node<T>(value, Math.max(deadline, tick + 1));
+		final int index = (int) node.deadline & mask;
+		if (tails[index] == null) {
+			heads[index] = node;
+		} else {
+			tails[index].next = node;
+		}
+		tails[index] = node;
+		size++;
+	}
+
+	/**
+	 * Moves to the next tick and expires its timeouts.
+	 *
+	 * @return the number of the expired timeouts
+	 */
+	public int advance(Expiry<T> expiry) {
+		tick++;
+		final int index = (int) tick & mask;
+		Node<T> node = heads[index];
+		heads[index] = tails[index] = null;
+		int expired = 0;
+		while (node != null) {
+			final Node<T> next = node.next;
+			node.next = null;
+			if (node.deadline <= tick) {
+				size--;
+				expired++;
+				expiry.expired(node.value);
+			} else {
+				// a later round
+				if (tails[index] == null) {
+					heads[index] = node;
+				} else {
+					tails[index].next = node;
+				}
+				tails[index] = node;
+			}
+			node = next;
+		}
+		return expired;
+	}
+
+	/** A scheduled timeout. */
+	private static class Node<T> {
+
+		private final T value;
+		private final long deadline;
+		private Node<T> next;
+
+		private Node(T value, long deadline) {
+			this.value = value;
+			this.deadline = deadline;
+		}
+	}
+}
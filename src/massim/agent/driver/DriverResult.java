@@ -0,0 +1,106 @@
+package massim.agent.driver;
+
+import java.util.Map;
+
+/**
+ * Result of a run of the in-memory step driver.
+ */
+public class DriverResult {
+
+	/** Size of the chessboard, i.e. the number of agents. */
+	private final int size;
+	/** Seed of the run. */
+	private final long seed;
+	/** The number of simulated steps. */
+	private final int steps;
+	/** Whether the agents terminated at all. */
+	private final boolean terminated;
+	/** Whether the agents found a solution. */
+	private final boolean solved;
+	/** Wall time of the run (in nanoseconds). */
+	private final long wallNanos;
+	/** The total number of delivered messages. */
+	private final long messages;
+	/** The numbers of delivered messages by type. */
+	private final Map<String, Long> messagesByType;
+	/** Maximal number of messages waiting in an inbox of an agent. */
+	private final int peakInboxSize;
+	/** Bytes allocated by the run, -1 if not supported by the JVM. */
+	private final long allocatedBytes;
+
+	/** Constructor of the DriverResult class. */
+	public DriverResult(int size, long seed, int steps, boolean terminated, boolean solved, long wallNanos,
+						long messages, Map<String, Long> messagesByType, int peakInboxSize, long allocatedBytes) {
+		this.size = size;
+		this.seed = seed;
+		this.steps = steps;
+		this.terminated = terminated;
+		this.solved = solved;
+		this.wallNanos = wallNanos;
+		this.messages = messages;
+		this.messagesByType = messagesByType;
+		this.peakInboxSize = peakInboxSize;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	/** @return size of the chessboard */
+	public int getSize() {
+		return size;
+	}
+
+	/** @return seed of the run */
+	public long getSeed() {
+		return seed;
+	}
+
+	/** @return the number of simulated steps, i.e. steps to the solution if solved */
+	public int getSteps() {
+		return steps;
+	}
+
+	/** @return <tt>true</tt> IFF all the agents terminated before the step limit */
+	public boolean isTerminated() {
+		return terminated;
+	}
+
+	/** @return <tt>true</tt> IFF the queens ended in a valid solution */
+	public boolean isSolved() {
+		return solved;
+	}
+
+	/** @return wall time of the run (in milliseconds) */
+	public double getWallMillis() {
+		return wallNanos / 1e6;
+	}
+
+	/** @return the total number of delivered messages */
+	public long getMessages() {
+		return messages;
+	}
+
+	/** @return the numbers of delivered messages by type */
+	public Map<String, Long> getMessagesByType() {
+		return messagesByType;
+	}
+
+	/** @return maximal number of messages waiting in an inbox of an agent */
+	public int getPeakInboxSize() {
+		return peakInboxSize;
+	}
+
+	/** @return bytes allocated by the run, -1 if not supported by the JVM */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/** @return allocation rate of the run (in MB per second), -1 if not supported by the JVM */
+	public double getAllocationRate() {
+		return (allocatedBytes < 0 || wallNanos == 0) ? -1 : (allocatedBytes / 1e6) / (wallNanos / 1e9);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DriverResult [size=%d, seed=%d, steps=%d, terminated=%s, solved=%s, wall=%.1fms, messages=%d %s, peakInbox=%d, allocation=%.1fMB/s]",
+				size, seed, steps, terminated, solved, getWallMillis(), messages, messagesByType, peakInboxSize, getAllocationRate());
+	}
+}
@@ -0,0 +1,403 @@
+package massim.agent.driver;
+
+import cz.agents.alite.communication.DefaultCommunicator;
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.channel.DirectCommunicationChannel;
+import cz.agents.alite.communication.channel.DirectCommunicationChannel.ReceiverTable;
+import cz.agents.alite.communication.content.Content;
+import massim.agent.Action;
+import massim.agent.AgentFactory;
+import massim.agent.CellPercept;
+import massim.agent.MASPerception;
+import massim.agent.MASQueenAgent;
+import massim.agent.StartAgents;
+import massim.agent.channel.ChannelFactory;
+import massim.agent.channel.EmulatedNetwork;
+import massim.agent.student.DomainConstraint;
+import massim.agent.student.MyQueenAgent;
+import massim.agent.student.puzzle.ChessBoard;
+import massim.agent.student.utils.MessageUtils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Drives the agents in memory, i.e. without the server connection and the
+ * XML protocol. The agents communicate by the direct communication channels
+ * as in {@link StartAgents}. Every step all the agents decide their action
+ * in a random order, then all the actions are performed at once as by the
+ * server. The run is deterministic for a given seed.
+ * <p/>
+ * The agents may perceive the chessboard mirrored, i.e. with the rows or
+ * columns in the reverse order. The agents then solve a symmetric instance
+ * of the puzzle with a different ordering of the queens or of the values.
+ * <p/>
+ * The puzzle may be changed between the steps by adding and removing
+ * {@link DomainConstraint}s, the run then continues until the agents repair
+ * the solution. The dynamic constraints are supported by {@link MyQueenAgent}
+ * only.
+ * <p/>
+ * The messages are delivered at once, or with the delays of an
+ * {@link EmulatedNetwork} measured in steps (see {@link #setNetwork}).
+ * <p/>
+ * The driver is not thread-safe, but the steps may be performed by
+ * different threads one after another, see {@link #run(int)}.
+ */
+public class InMemoryStepDriver {
+
+	/** Size of the chessboard, i.e. the number of agents. */
+	private final int size;
+	/** Seed of the assignment of the rows and of the step order. */
+	private final long seed;
+	/** Maximal number of steps. */
+	private final int maxSteps;
+	/** Prefix of the agent names. */
+	private final String namespace;
+
+	/** Factory of the agents. */
+	private AgentFactory agentFactory = StartAgents.DEFAULT_FACTORY;
+	/** Whether the agents perceive the rows or the columns in the reverse order. */
+	private boolean flipRows = false, flipColumns = false;
+	/** Network delivering the messages, null to deliver them at once. */
+	private EmulatedNetwork network;
+
+	private final MessageCounter counter = new MessageCounter();
+	private final List<CellPercept> cells = Collections.emptyList();
+	/** Active dynamic constraints by their identifiers, in the chessboard coordinates. */
+	private final Map<Integer, DomainConstraint> constraints = new LinkedHashMap<Integer, DomainConstraint>();
+
+	private List<MASQueenAgent> agents;
+	private ReceiverTable receiverTable;
+	/** Results reported by the agents, null until the agent finishes. */
+	private Boolean[] results;
+	/** Communicator of the environment sending the changes of the puzzle. */
+	private DefaultCommunicator environment;
+	private Random random;
+	private int[] rows, columns;
+	private Action[] actions;
+	private ChessBoard chessBoard;
+
+	private int step = 0, peakInboxSize = 0, nextConstraintId = 0;
+	private boolean done = false;
+	private long startNanos, wallNanos, allocatedBytes;
+
+	/**
+	 * Constructor of the InMemoryStepDriver class.
+	 *
+	 * @param size Size of the chessboard, i.e. the number of agents.
+	 * @param seed Seed of the assignment of the rows to the agents and of the order of the agents in the steps.
+	 * @param maxSteps Maximal number of steps.
+	 */
+	public InMemoryStepDriver(int size, long seed, int maxSteps) {
+		this(size, seed, maxSteps, "");
+	}
+
+	/**
+	 * Constructor of the InMemoryStepDriver class.
+	 *
+	 * @param size Size of the chessboard, i.e. the number of agents.
+	 * @param seed Seed of the assignment of the rows to the agents and of the order of the agents in the steps.
+	 * @param maxSteps Maximal number of steps.
+	 * @param namespace Prefix of the agent names.
+	 */
+	public InMemoryStepDriver(int size, long seed, int maxSteps, String namespace) {
+		if (size < 1) throw new IllegalArgumentException("size=" + size);
+		this.size = size;
+		this.seed = seed;
+		this.maxSteps = maxSteps;
+		this.namespace = namespace;
+	}
+
+	/** Sets the factory of the agents, must be called before the run. */
+	public void setAgentFactory(AgentFactory agentFactory) {
+		this.agentFactory = agentFactory;
+	}
+
+	/** Sets whether the agents perceive the rows in the reverse order, must be called before the run. */
+	public void setFlipRows(boolean flipRows) {
+		this.flipRows = flipRows;
+	}
+
+	/** Sets whether the agents perceive the columns in the reverse order, must be called before the run. */
+	public void setFlipColumns(boolean flipColumns) {
+		this.flipColumns = flipColumns;
+	}
+
+	/**
+	 * Sets the network delivering the messages of the agents, must be called
+	 * before the run. The network advances one tick every step, i.e. the
+	 * delays are given in steps.
+	 */
+	public void setNetwork(EmulatedNetwork network) {
+		this.network = network;
+	}
+
+	/** @return size of the chessboard */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Runs the agents until they all terminate and the queens reach their
+	 * final positions, or until the step limit.
+	 */
+	public DriverResult run() {
+		run(maxSteps);
+		return getResult();
+	}
+
+	/**
+	 * Performs at most given number of steps, the run is continued by the
+	 * next call.
+	 *
+	 * @return <tt>true</tt> IFF the run is finished
+	 */
+	public boolean run(int steps) {
+		if (agents == null) {
+			setUp();
+		}
+
+		final long allocated = getAllocatedBytes();
+		final long start = System.nanoTime();
+		if (startNanos == 0) startNanos = start;
+
+		for (int i = 0; i < steps && !isFinished(); i++) {
+			step();
+		}
+
+		allocatedBytes = (allocated < 0 || allocatedBytes < 0) ? -1 : allocatedBytes + getAllocatedBytes() - allocated;
+		wallNanos = System.nanoTime() - startNanos;
+		return isFinished();
+	}
+
+	/** @return <tt>true</tt> IFF the run is finished */
+	public boolean isFinished() {
+		return done || step >= maxSteps;
+	}
+
+	/** @return the result of the run, partial if not finished yet */
+	public DriverResult getResult() {
+		boolean solved = done;
+		for (int i = 0; solved && i < size; i++) {
+			solved = results[i];
+		}
+		return new DriverResult(size, seed, step, done, solved, wallNanos, counter.getTotal(), counter.getCounts(), peakInboxSize, allocatedBytes);
+	}
+
+	/**
+	 * Adds a dynamic constraint, the queen in given row may not be placed in
+	 * given column, or is pinned to the column. Starts the run if not started
+	 * yet, a finished run continues with the next call of {@link #run(int)}.
+	 *
+	 * @param row Row of the constrained queen, from 0.
+	 * @param column Column of the cell, from 0.
+	 * @param pinned Whether the queen is pinned to the cell, otherwise the cell is blocked.
+	 * @return identifier of the constraint
+	 */
+	public int addConstraint(int row, int column, boolean pinned) {
+		if (row < 0 || row >= size) throw new IllegalArgumentException("row=" + row);
+		if (column < 0 || column >= size) throw new IllegalArgumentException("column=" + column);
+		checkDynamic();
+
+		final DomainConstraint constraint = new DomainConstraint(nextConstraintId++, row, column, pinned);
+		constraints.put(constraint.getId(), constraint);
+		// the agents perceive the mirrored chessboard
+		final int queen = flipRows ? size - 1 - row : row;
+		final int position = flipColumns ? size - 1 - column : column;
+		sendChange(MessageUtils.create("addConstraint", new DomainConstraint(constraint.getId(), queen, position, pinned)));
+		return constraint.getId();
+	}
+
+	/**
+	 * Removes given dynamic constraint, a finished run continues with the
+	 * next call of {@link #run(int)}.
+	 */
+	public void removeConstraint(int id) {
+		if (constraints.remove(id) == null) throw new IllegalArgumentException("id=" + id);
+		sendChange(MessageUtils.create("removeConstraint", id));
+	}
+
+	/**
+	 * Replaces given agent by a new instance, as if the agent crashed and
+	 * was restarted. The received messages not processed yet are lost. The
+	 * new agent rejoins the search if it finds its checkpoint (see
+	 * {@link massim.agent.student.SolverConfig#checkpointDir}), otherwise
+	 * the run is not likely to finish.
+	 *
+	 * @param agent Index of the agent, from 0.
+	 */
+	public void restartAgent(int agent) {
+		if (agents == null) {
+			setUp();
+		}
+		final List<String> agentNames = new ArrayList<String>(size);
+		for (MASQueenAgent a : agents) {
+			agentNames.add(a.getUsername());
+		}
+		final MASQueenAgent restarted = StartAgents.createAgent(agentFactory, agentNames.get(agent), "localhost", 0, agentNames, counter, receiverTable,
+				getChannelFactory());
+		restarted.registerAgentFinishedCallback(new FinishedListener(agent));
+		agents.set(agent, restarted).shutdown();
+	}
+
+	/**
+	 * Shuts the agents down, e.g. unregisters their MBeans, the run may not
+	 * be continued any more.
+	 */
+	public void shutdown() {
+		if (agents == null) return;
+		for (MASQueenAgent agent : agents) {
+			agent.shutdown();
+		}
+	}
+
+	/** Starts the run if not started yet, checks the agents support the dynamic constraints. */
+	private void checkDynamic() {
+		if (agents == null) {
+			setUp();
+		}
+		for (MASQueenAgent agent : agents) {
+			if (!(agent instanceof MyQueenAgent)) {
+				throw new UnsupportedOperationException("dynamic constraints not supported by " + agent.getClass().getSimpleName());
+			}
+		}
+	}
+
+	/** Delivers given change of the puzzle to all the agents, the agents have to finish again. */
+	private void sendChange(Content content) {
+		final Message message = environment.createMessage(content);
+		for (MASQueenAgent agent : agents) {
+			agent.notify(message);
+		}
+		Arrays.fill(results, null);
+		done = false;
+	}
+
+	private ChannelFactory getChannelFactory() {
+		return (network == null) ? ChannelFactory.DIRECT : network;
+	}
+
+	/** Creates the agents and places them on the chessboard. */
+	private void setUp() {
+		receiverTable = new DirectCommunicationChannel.DefaultReceiverTable();
+		agents = new ArrayList<MASQueenAgent>(StartAgents.createAgents(agentFactory, namespace, "localhost", 0, size, counter, receiverTable,
+				getChannelFactory()));
+		results = new Boolean[size];
+		for (int i = 0; i < size; i++) {
+			agents.get(i).registerAgentFinishedCallback(new FinishedListener(i));
+		}
+		environment = new DefaultCommunicator(namespace + "environment");
+
+		// the agents are placed in the first column, the rows are assigned at random
+		random = new Random(seed);
+		rows = permutation(random);
+		columns = new int[size];
+		actions = new Action[size];
+		chessBoard = new ChessBoard(size);
+		for (int i = 0; i < size; i++) {
+			columns[i] = 1;
+		}
+	}
+
+	/** Performs one simulation step. */
+	private void step() {
+		for (int i : permutation(random)) {
+			final MASQueenAgent agent = agents.get(i);
+			peakInboxSize = Math.max(peakInboxSize, agent.getInboxSize());
+			final int x = flipColumns ? size + 1 - columns[i] : columns[i];
+			final int y = flipRows ? size - rows[i] : rows[i] + 1;
+			actions[i] = agent.step(new MASPerception(x, y, 0, step, cells));
+		}
+		for (int i = 0; i < size; i++) {
+			columns[i] = move(columns[i], flipColumns ? mirror(actions[i]) : actions[i]);
+		}
+		if (network != null) {
+			network.advance();
+		}
+		step++;
+
+		boolean finished = true, success = true;
+		for (int i = 0; finished && i < size; i++) {
+			finished = results[i] != null;
+			success = finished && success && results[i];
+		}
+		if (finished) {
+			// the queens have to reach the solution positions
+			for (int i = 0; i < size; i++) {
+				chessBoard.setPosition(rows[i], columns[i] - 1);
+			}
+			done = !success || (chessBoard.checkConstraints() && isSatisfied());
+		}
+	}
+
+	/** @return <tt>true</tt> IFF the queens satisfy all the dynamic constraints */
+	private boolean isSatisfied() {
+		for (DomainConstraint constraint : constraints.values()) {
+			if (!constraint.isSatisfied(chessBoard.getPosition(constraint.getQueen()))) return false;
+		}
+		return true;
+	}
+
+	/** @return column of the queen after performing given action */
+	private int move(int column, Action action) {
+		if (action == Action.EAST) return Math.min(column + 1, size);
+		if (action == Action.WEST) return Math.max(column - 1, 1);
+		return column;
+	}
+
+	/** @return the action in the mirrored chessboard */
+	private static Action mirror(Action action) {
+		if (action == Action.EAST) return Action.WEST;
+		if (action == Action.WEST) return Action.EAST;
+		return action;
+	}
+
+	/** @return random permutation of the agent indices */
+	private int[] permutation(Random random) {
+		final int[] permutation = new int[size];
+		for (int i = 0; i < size; i++) {
+			permutation[i] = i;
+		}
+		for (int i = size - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int tmp = permutation[i];
+			permutation[i] = permutation[j];
+			permutation[j] = tmp;
+		}
+		return permutation;
+	}
+
+	/** @return bytes allocated by the current thread, -1 if not supported by the JVM */
+	private static long getAllocatedBytes() {
+		final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+			if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+				return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/** Collects the result of an agent. */
+	private class FinishedListener implements MASQueenAgent.OnAgentFinishedCallback {
+
+		private final int agent;
+
+		FinishedListener(int agent) {
+			this.agent = agent;
+		}
+
+		@Override
+		public void agentFinished(boolean solutionFound) {
+			results[agent] = solutionFound;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package massim.agent.driver;
+
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.MessageHandler;
+import massim.agent.student.utils.MessageData;
+import massim.agent.student.utils.MessageUtils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Message handler counting the received messages by their type, a message
+ * delivered to several agents is counted once for every receiver.
+ */
+public class MessageCounter implements MessageHandler {
+
+	private final ConcurrentMap<String, AtomicLong> counts = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong total = new AtomicLong();
+
+	@Override
+	public void notify(Message message) {
+		final MessageData<?> data = MessageUtils.parse(message);
+		AtomicLong count = counts.get(data.getType());
+		if (count == null) {
+			final AtomicLong created = new AtomicLong();
+			count = counts.putIfAbsent(data.getType(), created);
+			if (count == null) count = created;
+		}
+		count.incrementAndGet();
+		total.incrementAndGet();
+	}
+
+	/** @return the total number of received messages */
+	public long getTotal() {
+		return total.get();
+	}
+
+	/** @return the numbers of received messages by type, sorted by type */
+	public Map<String, Long> getCounts() {
+		final Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().get());
+		}
+		return snapshot;
+	}
+}
@@ -0,0 +1,48 @@
+package massim.agent.driver;
+
+import java.util.List;
+
+/**
+ * Result of the portfolio solving.
+ */
+public class PortfolioResult {
+
+	/** Index of the winning member, -1 if no member terminated. */
+	private final int winner;
+	/** Results of all the members, partial for the cancelled ones. */
+	private final List<DriverResult> results;
+	/** Time to the first termination (in nanoseconds). */
+	private final long latencyNanos;
+
+	/** Constructor of the PortfolioResult class. */
+	public PortfolioResult(int winner, List<DriverResult> results, long latencyNanos) {
+		this.winner = winner;
+		this.results = results;
+		this.latencyNanos = latencyNanos;
+	}
+
+	/** @return index of the winning member, -1 if no member terminated */
+	public int getWinner() {
+		return winner;
+	}
+
+	/** @return result of the winning member, null if no member terminated */
+	public DriverResult getWinnerResult() {
+		return (winner < 0) ? null : results.get(winner);
+	}
+
+	/** @return results of all the members, partial for the cancelled ones */
+	public List<DriverResult> getResults() {
+		return results;
+	}
+
+	/** @return time to the first termination (in milliseconds) */
+	public double getLatencyMillis() {
+		return latencyNanos / 1e6;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PortfolioResult [winner=%d, latency=%.1fms, result=%s]", winner, getLatencyMillis(), getWinnerResult());
+	}
+}
@@ -0,0 +1,141 @@
+package massim.agent.driver;
+
+import massim.agent.StartAgents;
+import massim.agent.runtime.NamedThreadFactory;
+import massim.agent.student.SolverConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solves one puzzle by a portfolio of differently configured agent
+ * populations running in parallel, every member on its own thread. The
+ * first member which terminates, i.e. finds a solution or proves there is
+ * none, wins and the other members are cancelled. The run time of ABT
+ * varies heavily with the configuration, so the portfolio cuts the tail
+ * latency at the expense of CPU time.
+ */
+public class PortfolioSolver {
+
+	/** The number of steps a member performs between the checks of cancellation. */
+	private static final int SLICE_STEPS = 1;
+
+	private final List<InMemoryStepDriver> members;
+
+	/**
+	 * Constructor of the PortfolioSolver class.
+	 *
+	 * @param members Configured drivers of the members, all for the same chessboard size.
+	 */
+	public PortfolioSolver(List<InMemoryStepDriver> members) {
+		if (members.isEmpty()) throw new IllegalArgumentException("no members");
+		this.members = new ArrayList<InMemoryStepDriver>(members);
+	}
+
+	/**
+	 * Creates a portfolio of given size, the members differ in the seed and in
+	 * the perceived symmetry of the chessboard, i.e. in the ordering of the
+	 * queens and of the values. The first member runs the default solver, the
+	 * others try their values in random order and restart by the Luby schedule.
+	 *
+	 * @param size Size of the chessboard.
+	 * @param nMembers The number of members.
+	 * @param maxSteps Maximal number of steps.
+	 */
+	public static PortfolioSolver create(int size, int nMembers, int maxSteps) {
+		final List<InMemoryStepDriver> members = new ArrayList<InMemoryStepDriver>(nMembers);
+		for (int i = 0; i < nMembers; i++) {
+			final InMemoryStepDriver driver = new InMemoryStepDriver(size, i, maxSteps, "m" + i + ".");
+			driver.setFlipRows((i & 1) != 0);
+			driver.setFlipColumns((i & 2) != 0);
+			driver.setAgentFactory(StartAgents.factory(createSolverConfig(i)));
+			members.add(driver);
+		}
+		return new PortfolioSolver(members);
+	}
+
+	/** @return configuration of the solver of given portfolio member */
+	public static SolverConfig createSolverConfig(int member) {
+		final SolverConfig config = new SolverConfig();
+		if (member > 0) {
+			config.seed = member;
+			config.randomOrdering = true;
+			config.restarts = SolverConfig.Restarts.luby;
+		}
+		return config;
+	}
+
+	/**
+	 * Runs the portfolio until the first member terminates or all the members
+	 * reach the step limit.
+	 *
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public PortfolioResult solve() throws InterruptedException {
+		final int nMembers = members.size();
+		final ExecutorService executor = Executors.newFixedThreadPool(nMembers, new NamedThreadFactory("portfolio-"));
+		final AtomicInteger winner = new AtomicInteger(-1);
+		final CountDownLatch stopped = new CountDownLatch(nMembers);
+		final CountDownLatch decided = new CountDownLatch(1);
+		final long start = System.nanoTime();
+		final long[] latency = {0};
+
+		for (int i = 0; i < nMembers; i++) {
+			final int index = i;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						final InMemoryStepDriver driver = members.get(index);
+						while (winner.get() < 0 && !driver.run(SLICE_STEPS)) {
+							// continue until cancelled or finished
+						}
+						if (driver.getResult().isTerminated() && winner.compareAndSet(-1, index)) {
+							latency[0] = System.nanoTime() - start;
+							decided.countDown();
+						}
+					} finally {
+						stopped.countDown();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+
+		// wait for the winner, or for all the members if none terminates
+		while (!decided.await(10, TimeUnit.MILLISECONDS)) {
+			if (stopped.getCount() == 0) break;
+		}
+		stopped.await();
+
+		final List<DriverResult> results = new ArrayList<DriverResult>(nMembers);
+		for (InMemoryStepDriver member : members) {
+			results.add(member.getResult());
+			member.shutdown();
+		}
+		final long latencyNanos = (winner.get() < 0) ? System.nanoTime() - start : latency[0];
+		return new PortfolioResult(winner.get(), results, latencyNanos);
+	}
+
+	/**
+	 * Solves a puzzle by a portfolio.
+	 * <p/>
+	 * Usage: <code>PortfolioSolver [size] [members] [maxSteps]</code>
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final int size = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+		final int nMembers = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		final int maxSteps = (args.length > 2) ? Integer.parseInt(args[2]) : 100000;
+
+		final PortfolioResult result = create(size, nMembers, maxSteps).solve();
+		for (int i = 0; i < result.getResults().size(); i++) {
+			System.out.println(((i == result.getWinner()) ? "* " : "  ") + result.getResults().get(i) + " " + createSolverConfig(i));
+		}
+		System.out.println(result);
+	}
+}
@@ -0,0 +1,72 @@
+package massim.agent.driver;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A puzzle instance hosted by the {@link PuzzleRunner}.
+ */
+public class PuzzleInstance {
+
+	private final int id;
+	private final InMemoryStepDriver driver;
+	private final long submittedNanos;
+	private final CountDownLatch completed = new CountDownLatch(1);
+
+	private volatile long completedNanos;
+	private volatile DriverResult result;
+
+	/** Constructor of the PuzzleInstance class. */
+	PuzzleInstance(int id, InMemoryStepDriver driver) {
+		this.id = id;
+		this.driver = driver;
+		this.submittedNanos = System.nanoTime();
+	}
+
+	/** @return identifier of the instance, unique within the runner */
+	public int getId() {
+		return id;
+	}
+
+	/** @return the driver of the instance */
+	InMemoryStepDriver getDriver() {
+		return driver;
+	}
+
+	/** Marks the instance as completed. */
+	void complete(DriverResult result) {
+		this.result = result;
+		completedNanos = System.nanoTime();
+		completed.countDown();
+	}
+
+	/** @return <tt>true</tt> IFF the instance is completed */
+	public boolean isCompleted() {
+		return completed.getCount() == 0;
+	}
+
+	/**
+	 * Waits until the instance is completed.
+	 *
+	 * @return the result of the instance, null if the time elapsed
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public DriverResult awaitResult(long timeout, TimeUnit unit) throws InterruptedException {
+		return completed.await(timeout, unit) ? result : null;
+	}
+
+	/** @return the result of the instance, null if not completed */
+	public DriverResult getResult() {
+		return result;
+	}
+
+	/** @return time from the submission to the completion of the instance (in nanoseconds), -1 if not completed */
+	public long getLatencyNanos() {
+		return isCompleted() ? completedNanos - submittedNanos : -1;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PuzzleInstance [id=%d, latency=%.1fms, result=%s]", id, getLatencyNanos() / 1e6, result);
+	}
+}
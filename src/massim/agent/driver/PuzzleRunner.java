@@ -0,0 +1,162 @@
+package massim.agent.driver;
+
+import massim.agent.runtime.NamedThreadFactory;
+import massim.agent.runtime.PhaseStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many independent puzzle instances in one JVM. Every instance has
+ * its own agent population with namespaced agent names and communicators,
+ * see {@link InMemoryStepDriver}. The instances share a bounded pool of
+ * threads, an instance performs a slice of steps at a time and is then
+ * re-scheduled, so large instances do not hold back the small ones.
+ */
+public class PuzzleRunner {
+
+	private final ExecutorService executor;
+	private final int sliceSteps;
+
+	private final AtomicInteger nextId = new AtomicInteger();
+	private final List<PuzzleInstance> instances = new ArrayList<PuzzleInstance>();
+	private volatile long firstSubmittedNanos, lastCompletedNanos;
+
+	/**
+	 * Constructor of the PuzzleRunner class.
+	 *
+	 * @param parallelism The number of threads shared by the instances.
+	 * @param sliceSteps The number of steps an instance performs before it is re-scheduled.
+	 */
+	public PuzzleRunner(int parallelism, int sliceSteps) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism=" + parallelism);
+		if (sliceSteps < 1) throw new IllegalArgumentException("sliceSteps=" + sliceSteps);
+		this.executor = Executors.newFixedThreadPool(parallelism, new NamedThreadFactory("puzzle-"));
+		this.sliceSteps = sliceSteps;
+	}
+
+	/**
+	 * Submits a new puzzle instance.
+	 *
+	 * @param size Size of the chessboard.
+	 * @param seed Seed of the instance.
+	 * @param maxSteps Maximal number of steps.
+	 */
+	public PuzzleInstance submit(int size, long seed, int maxSteps) {
+		final int id = nextId.getAndIncrement();
+		final PuzzleInstance instance = new PuzzleInstance(id, new InMemoryStepDriver(size, seed, maxSteps, "p" + id + "."));
+		synchronized (instances) {
+			if (instances.isEmpty()) firstSubmittedNanos = System.nanoTime();
+			instances.add(instance);
+		}
+		schedule(instance);
+		return instance;
+	}
+
+	/** Schedules the next slice of given instance. */
+	private void schedule(final PuzzleInstance instance) {
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					final InMemoryStepDriver driver = instance.getDriver();
+					if (driver.run(sliceSteps)) {
+						lastCompletedNanos = System.nanoTime();
+						driver.shutdown();
+						instance.complete(driver.getResult());
+					} else {
+						schedule(instance);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// the runner is shut down, report the partial result
+			instance.getDriver().shutdown();
+			instance.complete(instance.getDriver().getResult());
+		}
+	}
+
+	/**
+	 * Waits until all the submitted instances are completed.
+	 *
+	 * @return true if all the instances are completed, false if the time elapsed.
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public boolean awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (PuzzleInstance instance : getInstances()) {
+			if (instance.awaitResult(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return the submitted instances */
+	public List<PuzzleInstance> getInstances() {
+		synchronized (instances) {
+			return new ArrayList<PuzzleInstance>(instances);
+		}
+	}
+
+	/** @return statistics of the latencies of the completed instances */
+	public PhaseStatistics getLatencyStatistics() {
+		final List<PuzzleInstance> all = getInstances();
+		final long[] latencies = new long[all.size()];
+		int count = 0;
+		for (PuzzleInstance instance : all) {
+			if (instance.isCompleted()) latencies[count++] = instance.getLatencyNanos();
+		}
+		final long[] completed = new long[count];
+		System.arraycopy(latencies, 0, completed, 0, count);
+		return new PhaseStatistics("latency", completed);
+	}
+
+	/** @return the number of completed instances per second, from the first submission to the last completion */
+	public double getThroughput() {
+		int count = 0;
+		for (PuzzleInstance instance : getInstances()) {
+			if (instance.isCompleted()) count++;
+		}
+		final long elapsed = lastCompletedNanos - firstSubmittedNanos;
+		return (count == 0 || elapsed <= 0) ? 0 : count / (elapsed / 1e9);
+	}
+
+	/** Stops the runner, the instances not completed yet are completed with their partial results. */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Solves a batch of puzzles and reports the latency and throughput.
+	 * <p/>
+	 * Usage: <code>PuzzleRunner [instances] [size] [parallelism] [sliceSteps] [maxSteps]</code>
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		final int nInstances = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+		final int size = (args.length > 1) ? Integer.parseInt(args[1]) : 8;
+		final int parallelism = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		final int sliceSteps = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+		final int maxSteps = (args.length > 4) ? Integer.parseInt(args[4]) : 10000;
+
+		final PuzzleRunner runner = new PuzzleRunner(parallelism, sliceSteps);
+		for (int i = 0; i < nInstances; i++) {
+			runner.submit(size, i, maxSteps);
+		}
+		runner.awaitAll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		runner.shutdown();
+
+		int solved = 0;
+		for (PuzzleInstance instance : runner.getInstances()) {
+			if (instance.getResult().isSolved()) solved++;
+		}
+		System.out.println("instances=" + nInstances + " size=" + size + " parallelism=" + parallelism + " solved=" + solved);
+		System.out.println(runner.getLatencyStatistics());
+		System.out.println(String.format("throughput   %.1f puzzles/s", runner.getThroughput()));
+	}
+}
@@ -0,0 +1,87 @@
+package massim.agent.driver;
+
+/**
+ * Result of a replay of a recorded trace.
+ */
+public class ReplayResult {
+
+	/** The number of replayed steps of all the agents. */
+	private final long steps;
+	/** The number of delivered messages. */
+	private final long messages;
+	/** The number of messages sent by the agents. */
+	private final long sends;
+	/** The number of sent messages differing from the trace. */
+	private final long divergences;
+	/** Description of the first divergence, null if none. */
+	private final String firstDivergence;
+	/** Whether all the agents reported a solution. */
+	private final boolean solved;
+	/** Duration of the recorded run and of the replay (in nanoseconds). */
+	private final long recordedNanos, replayNanos;
+
+	/** Constructor of the ReplayResult class. */
+	public ReplayResult(long steps, long messages, long sends, long divergences, String firstDivergence, boolean solved,
+						long recordedNanos, long replayNanos) {
+		this.steps = steps;
+		this.messages = messages;
+		this.sends = sends;
+		this.divergences = divergences;
+		this.firstDivergence = firstDivergence;
+		this.solved = solved;
+		this.recordedNanos = recordedNanos;
+		this.replayNanos = replayNanos;
+	}
+
+	/** @return the number of replayed steps of all the agents */
+	public long getSteps() {
+		return steps;
+	}
+
+	/** @return the number of delivered messages */
+	public long getMessages() {
+		return messages;
+	}
+
+	/** @return the number of messages sent by the agents */
+	public long getSends() {
+		return sends;
+	}
+
+	/** @return the number of sent messages differing from the trace, 0 if the replay is faithful */
+	public long getDivergences() {
+		return divergences;
+	}
+
+	/** @return description of the first divergence, null if none */
+	public String getFirstDivergence() {
+		return firstDivergence;
+	}
+
+	/** @return <tt>true</tt> IFF all the agents reported a solution */
+	public boolean isSolved() {
+		return solved;
+	}
+
+	/** @return duration of the recorded run (in milliseconds), from the first to the last step */
+	public double getRecordedMillis() {
+		return recordedNanos / 1e6;
+	}
+
+	/** @return wall time of the replay (in milliseconds) */
+	public double getReplayMillis() {
+		return replayNanos / 1e6;
+	}
+
+	/** @return how many times the replay is faster than the recorded run */
+	public double getSpeedup() {
+		return (replayNanos == 0) ? 0 : (double) recordedNanos / replayNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ReplayResult [steps=%d, messages=%d, sends=%d, divergences=%d%s, solved=%s, recorded=%.1fms, replay=%.1fms, speedup=%.1fx]",
+				steps, messages, sends, divergences, (firstDivergence == null) ? "" : " (" + firstDivergence + ")", solved,
+				getRecordedMillis(), getReplayMillis(), getSpeedup());
+	}
+}
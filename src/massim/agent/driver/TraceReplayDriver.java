@@ -0,0 +1,303 @@
+package massim.agent.driver;
+
+import cz.agents.alite.communication.Communicator;
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.MessageHandler;
+import cz.agents.alite.communication.content.Content;
+import massim.agent.AgentFactory;
+import massim.agent.CellPercept;
+import massim.agent.MASPerception;
+import massim.agent.MASQueenAgent;
+import massim.agent.StartAgents;
+import massim.agent.metrics.TypedMessage;
+import massim.agent.trace.TraceReader;
+import massim.agent.trace.TraceRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a trace recorded by {@link TraceRecorder}. New agents are fed
+ * with the recorded perceptions and with the recorded batches of received
+ * messages in the recorded order, in a single thread and without waiting
+ * for the steps of the server, so the replay is deterministic and runs
+ * much faster than the recorded run. The messages sent by the replayed
+ * agents are not delivered, but compared to the recorded ones by their
+ * types, receivers and the hashes of their contents, a difference means
+ * the replay diverged from the recorded run.
+ * <p/>
+ * The agents have to be configured as in the recorded run (see
+ * {@link massim.agent.student.SolverConfig}). The replayed perceptions
+ * have no deadlines, so a run whose agents postponed messages due to the
+ * time budget of the steps is not replayed faithfully.
+ */
+public class TraceReplayDriver {
+
+	private final byte[] trace;
+	/** Factory of the agents. */
+	private AgentFactory agentFactory = StartAgents.DEFAULT_FACTORY;
+
+	private final List<CellPercept> cells = Collections.emptyList();
+	/** The expected sent messages of the agents, see {@link #getSendKey}. */
+	private final Map<String, ArrayDeque<String>> expectedSends = new HashMap<String, ArrayDeque<String>>();
+	/** The current step of the agents. */
+	private final Map<String, Integer> steps = new HashMap<String, Integer>();
+	private Boolean[] results;
+	private long sends, divergences;
+	private String firstDivergence;
+
+	/** Constructor of the TraceReplayDriver class. */
+	public TraceReplayDriver(byte[] trace) {
+		this.trace = trace;
+	}
+
+	/** @return the driver replaying the trace stored in given file, the trace is loaded into memory */
+	public static TraceReplayDriver load(File file) throws IOException {
+		return new TraceReplayDriver(Files.readAllBytes(file.toPath()));
+	}
+
+	/** Sets the factory of the agents, must be called before the replay. */
+	public void setAgentFactory(AgentFactory agentFactory) {
+		this.agentFactory = agentFactory;
+	}
+
+	/**
+	 * Replays the trace, the driver may replay the trace repeatedly.
+	 *
+	 * @throws IOException if the trace is corrupted
+	 */
+	public ReplayResult run() throws IOException {
+		expectedSends.clear();
+		steps.clear();
+		sends = divergences = 0;
+		firstDivergence = null;
+		results = null;
+
+		final List<Object> events = parse();
+		final Map<String, MASQueenAgent> agents = new HashMap<String, MASQueenAgent>();
+		long nSteps = 0, messages = 0;
+		int minMillis = Integer.MAX_VALUE, maxMillis = 0;
+
+		final long start = System.nanoTime();
+		for (Object event : events) {
+			if (event instanceof Join) {
+				final Join join = (Join) event;
+				final MASQueenAgent agent = agentFactory.createAgent("localhost", 0, join.agent, "1", join.agents.size());
+				agent.setTraceRecorder(null);
+				agent.setCommunicator(new ReplayCommunicator(join.agent), join.agents);
+				if (results == null) {
+					results = new Boolean[join.agents.size()];
+				}
+				final int index = join.agents.indexOf(join.agent);
+				agent.registerAgentFinishedCallback(new MASQueenAgent.OnAgentFinishedCallback() {
+					@Override
+					public void agentFinished(boolean solutionFound) {
+						results[index] = solutionFound;
+					}
+				});
+				agents.put(join.agent, agent);
+			} else {
+				final Step step = (Step) event;
+				final MASQueenAgent agent = agents.get(step.agent);
+				if (agent == null) throw new IOException("step of an unknown agent " + step.agent);
+				for (Message message : step.batch) {
+					agent.notify(message);
+				}
+				messages += step.batch.size();
+				steps.put(step.agent, step.step);
+				agent.step(new MASPerception(step.posX, step.posY, 0, step.step, cells));
+				nSteps++;
+				minMillis = Math.min(minMillis, step.millis);
+				maxMillis = Math.max(maxMillis, step.millis);
+			}
+		}
+		final long replayNanos = System.nanoTime() - start;
+
+		// the recorded messages not sent by the replay
+		for (Map.Entry<String, ArrayDeque<String>> expected : expectedSends.entrySet()) {
+			if (!expected.getValue().isEmpty()) {
+				diverged(expected.getKey() + " did not send " + expected.getValue().peek());
+				divergences += expected.getValue().size() - 1;
+			}
+		}
+
+		boolean solved = results != null;
+		for (int i = 0; solved && i < results.length; i++) {
+			solved = Boolean.TRUE.equals(results[i]);
+		}
+		final long recordedNanos = (nSteps == 0) ? 0 : (maxMillis - minMillis) * 1000000L;
+		return new ReplayResult(nSteps, messages, sends, divergences, firstDivergence, solved, recordedNanos, replayNanos);
+	}
+
+	/**
+	 * Reads the trace into the joins of the agents and the steps with the
+	 * batches of the messages the agents took from their inboxes.
+	 */
+	private List<Object> parse() throws IOException {
+		final List<Object> events = new ArrayList<Object>();
+		final Map<String, ArrayDeque<Message>> inboxes = new HashMap<String, ArrayDeque<Message>>();
+		final Map<String, Step> lastSteps = new HashMap<String, Step>();
+		final TraceReader reader = new TraceReader(trace);
+		int record;
+		while ((record = reader.next()) != -1) {
+			final String agent = reader.getAgent();
+			switch (record) {
+				case TraceRecorder.AGENT:
+					// a restarted agent starts with an empty inbox
+					events.add(new Join(agent, reader.getAgents()));
+					inboxes.put(agent, new ArrayDeque<Message>());
+					lastSteps.remove(agent);
+					break;
+				case TraceRecorder.STEP:
+					final Step step = new Step(agent, reader.getPosX(), reader.getPosY(), reader.getStep(), reader.getMillis());
+					events.add(step);
+					lastSteps.put(agent, step);
+					break;
+				case TraceRecorder.RECEIVE:
+					ArrayDeque<Message> inbox = inboxes.get(agent);
+					if (inbox == null) {
+						inbox = new ArrayDeque<Message>();
+						inboxes.put(agent, inbox);
+					}
+					inbox.add(reader.getMessage());
+					break;
+				case TraceRecorder.POLL:
+					final Step current = lastSteps.get(agent);
+					final ArrayDeque<Message> messages = inboxes.get(agent);
+					for (int i = 0; i < reader.getCount() && messages != null && !messages.isEmpty(); i++) {
+						final Message message = messages.poll();
+						if (current != null) {
+							current.batch.add(message);
+						}
+					}
+					break;
+				case TraceRecorder.SEND:
+					ArrayDeque<String> expected = expectedSends.get(agent);
+					if (expected == null) {
+						expected = new ArrayDeque<String>();
+						expectedSends.put(agent, expected);
+					}
+					expected.add(getSendKey(reader.getType(), reader.getCount(), reader.getHash()));
+					break;
+			}
+		}
+		return events;
+	}
+
+	/** @return the key of a sent message compared with the trace, the content is compared by its hash */
+	private static String getSendKey(String type, int receivers, int hash) {
+		return type + "x" + receivers + "#" + Integer.toHexString(hash);
+	}
+
+	/** Compares a message sent by given agent with the trace. */
+	private void sent(String agent, Message message) {
+		sends++;
+		final Object data = message.getContent().getData();
+		final String type = (data instanceof TypedMessage) ? ((TypedMessage) data).getType() : null;
+		final ArrayDeque<String> expected = expectedSends.get(agent);
+		final String recorded = (expected == null) ? null : expected.poll();
+		final String key;
+		try {
+			key = getSendKey(type, message.getReceivers().size(), TraceRecorder.hash(message.getContent()));
+		} catch (IOException e) {
+			diverged(agent + " at step " + steps.get(agent) + " sent " + type + " not encoded, " + e.getMessage());
+			return;
+		}
+		if (!key.equals(recorded)) {
+			diverged(agent + " at step " + steps.get(agent) + " sent " + key + " instead of " + recorded);
+		}
+	}
+
+	private void diverged(String description) {
+		divergences++;
+		if (firstDivergence == null) {
+			firstDivergence = description;
+		}
+	}
+
+	/** A recorded agent joining the system. */
+	private static class Join {
+
+		private final String agent;
+		private final List<String> agents;
+
+		private Join(String agent, List<String> agents) {
+			this.agent = agent;
+			this.agents = agents;
+		}
+	}
+
+	/** A recorded step of an agent with the messages taken from the inbox. */
+	private static class Step {
+
+		private final String agent;
+		private final int posX, posY, step, millis;
+		private final List<Message> batch = new ArrayList<Message>();
+
+		private Step(String agent, int posX, int posY, int step, int millis) {
+			this.agent = agent;
+			this.posX = posX;
+			this.posY = posY;
+			this.step = step;
+			this.millis = millis;
+		}
+	}
+
+	/** Communicator of a replayed agent, compares the sent messages with the trace. */
+	private class ReplayCommunicator implements Communicator {
+
+		private final String address;
+		private long nextId = 0;
+
+		private ReplayCommunicator(String address) {
+			this.address = address;
+		}
+
+		@Override
+		public String getAddress() {
+			return address;
+		}
+
+		@Override
+		public Message createMessage(Content content) {
+			return new Message(address, content, nextId++);
+		}
+
+		@Override
+		public void sendMessage(Message message) {
+			sent(address, message);
+		}
+
+		@Override
+		public void addMessageHandler(MessageHandler handler) {
+		}
+
+		@Override
+		public void removeMessageHandler(MessageHandler handler) {
+		}
+	}
+
+	/**
+	 * Replays given trace and prints the result.
+	 *
+	 * @param args the trace file and optionally the number of replays
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("usage: TraceReplayDriver <trace> [<replays>]");
+			System.exit(2);
+		}
+		final TraceReplayDriver driver = load(new File(args[0]));
+		final int replays = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+		for (int i = 0; i < replays; i++) {
+			System.out.println(driver.run());
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package massim.agent.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Base of the JFR events of the agents, carrying the agent, its queen and
+ * the size of the chessboard. The events are created and committed only if
+ * enabled in the recording, so a disabled event costs a check.
+ */
+@Category({"MASSim", "Agents"})
+public abstract class AgentEvent extends Event {
+
+	@Label("Agent")
+	@Description("Name of the agent")
+	String agent;
+
+	@Label("Queen")
+	@Description("Number of the queen of the agent, -1 if not known yet")
+	int queen;
+
+	@Label("N")
+	@Description("Size of the chessboard")
+	int size;
+
+	/** Sets the fields common to all the agent events. */
+	void set(String agent, int queen, int size) {
+		this.agent = agent;
+		this.queen = queen;
+		this.size = size;
+	}
+}
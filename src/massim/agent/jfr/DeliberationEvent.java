@@ -0,0 +1,32 @@
+package massim.agent.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Deliberation of an agent in one step, from the perception to the action. */
+@Name("massim.Deliberation")
+@Label("Deliberation")
+@Description("Deliberation of an agent in one simulation step")
+public class DeliberationEvent extends AgentEvent {
+
+	@Label("Step")
+	int step;
+
+	@Label("State")
+	@Description("State of the solver after the deliberation")
+	String state;
+
+	@Label("Action")
+	String action;
+
+	/** Completes the event started by <code>begin()</code>, if enabled. */
+	public void complete(String agent, int queen, int size, int step, String state, String action) {
+		if (!shouldCommit()) return;
+		set(agent, queen, size);
+		this.step = step;
+		this.state = state;
+		this.action = action;
+		commit();
+	}
+}
@@ -0,0 +1,27 @@
+package massim.agent.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A message sent by an agent to the other agents. */
+@Name("massim.MessageSend")
+@Label("Agent Message Send")
+@Description("A message sent by an agent to other agents")
+public class MessageSendEvent extends AgentEvent {
+
+	@Label("Type")
+	String type;
+
+	@Label("Receivers")
+	int receivers;
+
+	/** Completes the event started by <code>begin()</code>, if enabled. */
+	public void complete(String agent, int queen, int size, String type, int receivers) {
+		if (!shouldCommit()) return;
+		set(agent, queen, size);
+		this.type = type;
+		this.receivers = receivers;
+		commit();
+	}
+}
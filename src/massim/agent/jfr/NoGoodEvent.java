@@ -0,0 +1,39 @@
+package massim.agent.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A no-good generated or received by an agent. */
+@Name("massim.NoGood")
+@Label("ABT No-Good")
+@Description("A no-good generated and sent, or received by an agent")
+public class NoGoodEvent extends AgentEvent {
+
+	@Label("Received")
+	@Description("Whether the no-good was received, otherwise generated")
+	boolean received;
+
+	@Label("Accepted")
+	@Description("Whether a received no-good was consistent with the agent view")
+	boolean accepted;
+
+	@Label("Length")
+	@Description("The number of the queens in the no-good")
+	int length;
+
+	@Label("No-Good")
+	String noGood;
+
+	/** Emits the event if enabled, the no-good is converted to a string only then. */
+	public static void emit(String agent, int queen, int size, boolean received, boolean accepted, int length, Object noGood) {
+		final NoGoodEvent event = new NoGoodEvent();
+		if (!event.isEnabled()) return;
+		event.set(agent, queen, size);
+		event.received = received;
+		event.accepted = accepted;
+		event.length = length;
+		event.noGood = String.valueOf(noGood);
+		event.commit();
+	}
+}
@@ -0,0 +1,30 @@
+package massim.agent.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A hop of the termination token, i.e. the token created, forwarded or returned. */
+@Name("massim.TerminationToken")
+@Label("Termination Token Hop")
+@Description("The termination detection token passed by an agent")
+public class TokenEvent extends AgentEvent {
+
+	@Label("Hop")
+	@Description("created, forwarded or returned")
+	String hop;
+
+	@Label("Message Counter")
+	@Description("The sum of the message counters carried by the token")
+	int messageCounter;
+
+	/** Emits the event if enabled. */
+	public static void emit(String agent, int queen, int size, String hop, int messageCounter) {
+		final TokenEvent event = new TokenEvent();
+		if (!event.isEnabled()) return;
+		event.set(agent, queen, size);
+		event.hop = hop;
+		event.messageCounter = messageCounter;
+		event.commit();
+	}
+}
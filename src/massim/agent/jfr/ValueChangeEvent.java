@@ -0,0 +1,30 @@
+package massim.agent.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Change of the value of a queen, i.e. its position, by the ABT. */
+@Name("massim.ValueChange")
+@Label("ABT Value Change")
+@Description("The queen of an agent moved to another position")
+public class ValueChangeEvent extends AgentEvent {
+
+	@Label("From")
+	@Description("The previous position, -1 if none")
+	int from;
+
+	@Label("To")
+	@Description("The new position, -1 if none")
+	int to;
+
+	/** Emits the event if enabled, the event may be reused as <code>begin()</code> resets its timing. */
+	public void emit(String agent, int queen, int size, int from, int to) {
+		begin();
+		if (!shouldCommit()) return;
+		set(agent, queen, size);
+		this.from = from;
+		this.to = to;
+		commit();
+	}
+}
@@ -0,0 +1,30 @@
+package massim.agent.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Parsing or serialization of an XML document exchanged with the server. */
+@Name("massim.Xml")
+@Label("Server XML")
+@Description("An XML document parsed from or serialized to the server")
+public class XmlEvent extends AgentEvent {
+
+	@Label("Operation")
+	@Description("parse or send")
+	String operation;
+
+	@Label("Size")
+	@DataAmount
+	long bytes;
+
+	/** Completes the event started by <code>begin()</code>, if enabled. */
+	public void complete(String agent, int queen, int size, String operation, long bytes) {
+		if (!shouldCommit()) return;
+		set(agent, queen, size);
+		this.operation = operation;
+		this.bytes = bytes;
+		commit();
+	}
+}
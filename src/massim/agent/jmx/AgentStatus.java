@@ -0,0 +1,146 @@
+package massim.agent.jmx;
+
+import massim.agent.MASQueenAgent;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live state of a queen agent published for the JMX. The agent publishes
+ * its state at the end of every step to the volatile fields, the reads do
+ * not lock and do not interfere with the deliberation.
+ */
+public class AgentStatus implements QueenAgentMXBean {
+
+	/** The next instance number, the agents of several populations may have the same names. */
+	private static final AtomicInteger nextInstance = new AtomicInteger();
+
+	private final MASQueenAgent agent;
+	private final int instance;
+	private ObjectName objectName;
+
+	private volatile String state = "";
+	private volatile int queen = -1, position = -1;
+	private volatile int noGoodStoreSize, messageCounter, idleCounter;
+	private volatile long steps, lastDeliberationNanos, maxDeliberationNanos;
+
+	/** Constructor of the AgentStatus class. */
+	public AgentStatus(MASQueenAgent agent) {
+		this.agent = agent;
+		this.instance = nextInstance.getAndIncrement();
+	}
+
+	/**
+	 * Registers the MBean of the agent with the platform MBean server, as
+	 * well as the aggregate MBean of the population (see {@link Population}).
+	 */
+	public synchronized void register() {
+		if (objectName != null) return;
+		try {
+			final ObjectName name = getObjectName(instance, agent.getUsername());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			objectName = name;
+		} catch (JMException e) {
+			System.out.println("cannot register the MBean of " + agent.getUsername() + ": " + e.getMessage());
+			return;
+		}
+		Population.getInstance().add(this);
+	}
+
+	/**
+	 * Unregisters the MBean of the agent and removes the agent from the
+	 * population, called when the agent shuts down.
+	 */
+	public synchronized void unregister() {
+		if (objectName == null) return;
+		Population.getInstance().remove(this);
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		} catch (JMException e) {
+			System.out.println("cannot unregister the MBean of " + agent.getUsername() + ": " + e.getMessage());
+		}
+		objectName = null;
+	}
+
+	/** @return name of the MBean of given agent, the instance tells apart the agents of the same names */
+	public static ObjectName getObjectName(int instance, String agentName) throws JMException {
+		return new ObjectName("massim.agent:type=QueenAgent,instance=" + instance + ",name=" + ObjectName.quote(agentName));
+	}
+
+	/** Publishes the state of the agent after a step, called by the agent only. */
+	public void update(String state, int queen, int position, int noGoodStoreSize, int messageCounter, int idleCounter, long deliberationNanos) {
+		this.state = state;
+		this.queen = queen;
+		this.position = position;
+		this.noGoodStoreSize = noGoodStoreSize;
+		this.messageCounter = messageCounter;
+		this.idleCounter = idleCounter;
+		lastDeliberationNanos = deliberationNanos;
+		if (deliberationNanos > maxDeliberationNanos) {
+			maxDeliberationNanos = deliberationNanos;
+		}
+		steps++;
+	}
+
+	@Override
+	public String getName() {
+		return agent.getUsername();
+	}
+
+	@Override
+	public String getState() {
+		return state;
+	}
+
+	@Override
+	public int getQueen() {
+		return queen;
+	}
+
+	@Override
+	public int getPosition() {
+		return position;
+	}
+
+	@Override
+	public int getNoGoodStoreSize() {
+		return noGoodStoreSize;
+	}
+
+	@Override
+	public int getMessageCounter() {
+		return messageCounter;
+	}
+
+	@Override
+	public int getIdleCounter() {
+		return idleCounter;
+	}
+
+	@Override
+	public int getInboxSize() {
+		return agent.getInboxSize();
+	}
+
+	@Override
+	public long getSteps() {
+		return steps;
+	}
+
+	@Override
+	public long getLastDeliberationMicros() {
+		return lastDeliberationNanos / 1000;
+	}
+
+	@Override
+	public long getMaxDeliberationMicros() {
+		return maxDeliberationNanos / 1000;
+	}
+
+	@Override
+	public String toString() {
+		return getName() + " (Q" + queen + "): " + state + ", last=" + getLastDeliberationMicros() + "us, max=" + getMaxDeliberationMicros() + "us";
+	}
+}
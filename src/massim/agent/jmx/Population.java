@@ -0,0 +1,133 @@
+package massim.agent.jmx;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Aggregate MBean of all the queen agents of the JVM registered for the
+ * JMX, see {@link AgentStatus#register()}.
+ */
+public class Population implements PopulationMXBean {
+
+	/** The number of the slowest agents reported. */
+	private static final int SLOWEST = 5;
+
+	private static Population instance;
+
+	private final Queue<AgentStatus> agents = new ConcurrentLinkedQueue<AgentStatus>();
+
+	private Population() {}
+
+	/** @return the population of the JVM, registered with the platform MBean server */
+	public static synchronized Population getInstance() {
+		if (instance == null) {
+			instance = new Population();
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName("massim.agent:type=Population"));
+			} catch (JMException e) {
+				System.out.println("cannot register the population MBean: " + e.getMessage());
+			}
+		}
+		return instance;
+	}
+
+	/** Adds given agent to the population. */
+	void add(AgentStatus agent) {
+		agents.add(agent);
+	}
+
+	/** Removes given agent from the population. */
+	void remove(AgentStatus agent) {
+		agents.remove(agent);
+	}
+
+	@Override
+	public int getAgents() {
+		return agents.size();
+	}
+
+	@Override
+	public int getWorking() {
+		return count("working");
+	}
+
+	@Override
+	public int getIdle() {
+		return count("idle");
+	}
+
+	@Override
+	public int getFinished() {
+		return count("finished");
+	}
+
+	/** @return the number of the agents in given state */
+	private int count(String state) {
+		int count = 0;
+		for (AgentStatus agent : agents) {
+			if (state.equals(agent.getState())) count++;
+		}
+		return count;
+	}
+
+	@Override
+	public long getNoGoodStoreSize() {
+		long total = 0;
+		for (AgentStatus agent : agents) {
+			total += agent.getNoGoodStoreSize();
+		}
+		return total;
+	}
+
+	@Override
+	public long getInboxSize() {
+		long total = 0;
+		for (AgentStatus agent : agents) {
+			total += agent.getInboxSize();
+		}
+		return total;
+	}
+
+	@Override
+	public long getMessageCounter() {
+		long total = 0;
+		for (AgentStatus agent : agents) {
+			total += agent.getMessageCounter();
+		}
+		return total;
+	}
+
+	@Override
+	public long getSteps() {
+		long steps = 0;
+		for (AgentStatus agent : agents) {
+			steps = Math.max(steps, agent.getSteps());
+		}
+		return steps;
+	}
+
+	@Override
+	public String[] getSlowestAgents() {
+		final List<AgentStatus> sorted = new ArrayList<AgentStatus>(agents);
+		Collections.sort(sorted, new Comparator<AgentStatus>() {
+			@Override
+			public int compare(AgentStatus a, AgentStatus b) {
+				final long x = a.getLastDeliberationMicros(), y = b.getLastDeliberationMicros();
+				return (x < y) ? 1 : ((x == y) ? 0 : -1);
+			}
+		});
+		final int n = Math.min(SLOWEST, sorted.size());
+		final String[] slowest = new String[n];
+		for (int i = 0; i < n; i++) {
+			slowest[i] = sorted.get(i).toString();
+		}
+		return slowest;
+	}
+}
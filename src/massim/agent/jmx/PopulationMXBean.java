@@ -0,0 +1,34 @@
+package massim.agent.jmx;
+
+/**
+ * Aggregate state of all the queen agents of the JVM, see {@link Population}.
+ */
+public interface PopulationMXBean {
+
+	/** @return the number of the agents */
+	int getAgents();
+
+	/** @return the number of the agents working on the ABT */
+	int getWorking();
+
+	/** @return the number of the idle agents */
+	int getIdle();
+
+	/** @return the number of the finished agents */
+	int getFinished();
+
+	/** @return the total number of the no-goods in the no-good stores */
+	long getNoGoodStoreSize();
+
+	/** @return the total number of the messages waiting in the inboxes */
+	long getInboxSize();
+
+	/** @return the sum of the message counters, 0 in a quiet network */
+	long getMessageCounter();
+
+	/** @return the maximal number of the steps of an agent */
+	long getSteps();
+
+	/** @return the agents with the longest last deliberation, the slowest first */
+	String[] getSlowestAgents();
+}
@@ -0,0 +1,40 @@
+package massim.agent.jmx;
+
+/**
+ * Live state of a queen agent, see {@link AgentStatus}.
+ */
+public interface QueenAgentMXBean {
+
+	/** @return name of the agent */
+	String getName();
+
+	/** @return state of the solver */
+	String getState();
+
+	/** @return number of the queen, -1 if not known yet */
+	int getQueen();
+
+	/** @return position of the queen, -1 if not placed */
+	int getPosition();
+
+	/** @return the number of the no-goods in the no-good store */
+	int getNoGoodStoreSize();
+
+	/** @return the counter of the sent minus the received ABT messages */
+	int getMessageCounter();
+
+	/** @return the number of the idle steps */
+	int getIdleCounter();
+
+	/** @return the number of the messages waiting in the inbox */
+	int getInboxSize();
+
+	/** @return the number of the steps */
+	long getSteps();
+
+	/** @return duration of the last deliberation in microseconds */
+	long getLastDeliberationMicros();
+
+	/** @return duration of the longest deliberation in microseconds */
+	long getMaxDeliberationMicros();
+}
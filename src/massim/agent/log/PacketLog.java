@@ -0,0 +1,216 @@
+package massim.agent.log;
+
+import massim.agent.metrics.StripedCounter;
+import massim.agent.runtime.NamedThreadFactory;
+
+import java.nio.charset.Charset;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous log of the packets exchanged with the server. The agents
+ * only copy the raw bytes of a packet into a preallocated slot of a ring
+ * buffer, the packets are formatted and passed to the {@link Logger} by a
+ * background thread. A packet not fitting into the ring is dropped and
+ * counted, so the I/O of the agents never waits for the log.
+ * <p/>
+ * The ring is a bounded multi-producer queue, every slot has a sequence
+ * number telling whether it is free for the given round of the producers
+ * or ready for the consumer. Packets longer than a slot are truncated.
+ */
+public class PacketLog {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The log shared by all the agents of the JVM, created on the first use. */
+	private static volatile PacketLog instance;
+
+	private final Logger logger;
+	private final int mask;
+	private final Slot[] slots;
+	/** Sequence numbers of the slots, see the class description. */
+	private final AtomicLongArray sequences;
+	/** The next position to be claimed by a producer. */
+	private final AtomicLong tail = new AtomicLong();
+	/** The next position to be flushed, owned by the flusher. */
+	private volatile long head = 0;
+
+	private final StripedCounter recorded = new StripedCounter();
+	private final StripedCounter dropped = new StripedCounter();
+	private long reportedDrops = 0;
+
+	/**
+	 * Constructor of the PacketLog class.
+	 *
+	 * @param logger the logger receiving the packets
+	 * @param capacity number of the slots, rounded up to a power of two
+	 * @param slotBytes maximal length of a logged packet (in bytes)
+	 */
+	public PacketLog(Logger logger, int capacity, int slotBytes) {
+		if (capacity < 2 || slotBytes < 1) throw new IllegalArgumentException("capacity=" + capacity + ", slotBytes=" + slotBytes);
+		this.logger = logger;
+		final int size = Integer.highestOneBit(capacity - 1) << 1;
+		mask = size - 1;
+		slots = new Slot[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot(slotBytes);
+			sequences.set(i, i);
+		}
+
+		final Thread flusher = new NamedThreadFactory("packet-log-").newThread(new Runnable() {
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		});
+		flusher.start();
+	}
+
+	/**
+	 * Returns the log shared by all the agents, configured by the system
+	 * properties <tt>massim.log.slots</tt> (1024 by default) and
+	 * <tt>massim.log.slotBytes</tt> (4096 by default).
+	 */
+	public static PacketLog getDefault() {
+		PacketLog log = instance;
+		if (log == null) {
+			synchronized (PacketLog.class) {
+				log = instance;
+				if (log == null) {
+					log = new PacketLog(Logger.getLogger("agentLog.log"),
+							Integer.getInteger("massim.log.slots", 1024),
+							Integer.getInteger("massim.log.slotBytes", 4096));
+					instance = log;
+				}
+			}
+		}
+		return log;
+	}
+
+	/** @return true if the packets are passed to the logger at all */
+	public boolean isEnabled() {
+		return logger.isLoggable(Level.ALL);
+	}
+
+	/**
+	 * Records a packet, copies the bytes and returns immediately. Does
+	 * nothing if the logger does not log the packets.
+	 *
+	 * @param agent name of the agent
+	 * @param outgoing true for a packet sent to the server
+	 * @param data buffer holding the packet
+	 * @param offset offset of the packet in the buffer
+	 * @param length length of the packet
+	 */
+	public void record(String agent, boolean outgoing, byte[] data, int offset, int length) {
+		if (!isEnabled()) return;
+		long position = tail.get();
+		while (true) {
+			final long sequence = sequences.get((int) position & mask);
+			if (sequence == position) {
+				if (tail.compareAndSet(position, position + 1)) break;
+				position = tail.get();
+			} else if (sequence < position) {
+				// the slot is not flushed since the previous round, full
+				dropped.increment();
+				return;
+			} else {
+				position = tail.get();
+			}
+		}
+
+		final Slot slot = slots[(int) position & mask];
+		slot.agent = agent;
+		slot.outgoing = outgoing;
+		slot.timestamp = System.currentTimeMillis();
+		slot.length = length;
+		System.arraycopy(data, offset, slot.data, 0, Math.min(length, slot.data.length));
+		sequences.lazySet((int) position & mask, position + 1);
+		recorded.increment();
+	}
+
+	/** @return the number of the packets recorded */
+	public long getRecorded() {
+		return recorded.get();
+	}
+
+	/** @return the number of the packets dropped due to a full ring */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/** @return the number of the packets waiting for the flusher */
+	public long getPending() {
+		return tail.get() - head;
+	}
+
+	/** Formats the recorded packets in the background thread. */
+	private void flushLoop() {
+		final StringBuilder sb = new StringBuilder();
+		while (true) {
+			final int index = (int) head & mask;
+			if (sequences.get(index) != head + 1) {
+				reportDrops();
+				LockSupport.parkNanos(1000000L);
+				continue;
+			}
+
+			// the drops are reported with the flushed packets, the ring may never be empty
+			reportDrops();
+			final Slot slot = slots[index];
+			sb.setLength(0);
+			sb.append(slot.outgoing ? "Agent -> Server: AgentName " : "Server -> Agent: AgentName ").append(slot.agent).append('\n');
+			final int length = Math.min(slot.length, slot.data.length);
+			sb.append(new String(slot.data, 0, length, UTF_8));
+			if (length < slot.length) {
+				sb.append("... (").append(slot.length).append(" bytes)");
+			}
+			final LogRecord record = new LogRecord(Level.ALL, sb.toString());
+			record.setLoggerName(logger.getName());
+			record.setInstant(Instant.ofEpochMilli(slot.timestamp));
+			record.setSourceClassName(slot.agent);
+			record.setSourceMethodName(slot.outgoing ? "send" : "receive");
+			slot.agent = null;
+			sequences.lazySet(index, head + mask + 1);
+			head++;
+
+			logger.log(record);
+		}
+	}
+
+	/** Logs the number of the packets dropped since the last report. */
+	private void reportDrops() {
+		final long drops = dropped.get();
+		if (drops > reportedDrops) {
+			logger.log(Level.WARNING, "packet log overloaded, " + (drops - reportedDrops) + " packets dropped");
+			reportedDrops = drops;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "packet log: " + getRecorded() + " recorded, " + getDropped() + " dropped";
+	}
+
+	/** A preallocated slot of the ring. */
+	private static class Slot {
+
+		private final byte[] data;
+		private String agent;
+		private boolean outgoing;
+		/** Time of the recording, the time of the log record. */
+		private long timestamp;
+		/** The length of the packet, may exceed the slot. */
+		private int length;
+
+		private Slot(int slotBytes) {
+			data = new byte[slotBytes];
+		}
+	}
+}
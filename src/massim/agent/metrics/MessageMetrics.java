@@ -0,0 +1,114 @@
+package massim.agent.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics of the messaging of the agents, i.e. the numbers of the sent
+ * and received messages by type, the histograms of the queue time of the
+ * messages, i.e. between sending and processing, by type and the
+ * histogram of the deliberation time. Recording allocates only for a
+ * message type seen for the first time.
+ */
+public class MessageMetrics {
+
+	/** The metrics shared by the agents of the JVM by default. */
+	private static final MessageMetrics DEFAULT = new MessageMetrics();
+
+	private final ConcurrentMap<String, TypeMetrics> types = new ConcurrentHashMap<String, TypeMetrics>();
+	private final StripedHistogram deliberation = new StripedHistogram();
+
+	/** @return the metrics shared by the agents of the JVM by default */
+	public static MessageMetrics getDefault() {
+		return DEFAULT;
+	}
+
+	/** Records a message of given type sent to given number of receivers. */
+	public void sent(String type, int receivers) {
+		getType(type).sent.add(receivers);
+	}
+
+	/**
+	 * Records a processed message of given type.
+	 *
+	 * @param queueNanos The time since the sending of the message (see {@link SentMessage}), negative if unknown.
+	 */
+	public void received(String type, long queueNanos) {
+		final TypeMetrics metrics = getType(type);
+		metrics.received.increment();
+		metrics.queueTime.record(queueNanos);
+	}
+
+	/** Records a deliberation of given duration. */
+	public void deliberated(long nanos) {
+		deliberation.record(nanos);
+	}
+
+	/** @return the numbers of the sent messages by type, sorted by type */
+	public Map<String, Long> getSent() {
+		final Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for (Map.Entry<String, TypeMetrics> entry : types.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().sent.get());
+		}
+		return snapshot;
+	}
+
+	/** @return the numbers of the received messages by type, sorted by type */
+	public Map<String, Long> getReceived() {
+		final Map<String, Long> snapshot = new TreeMap<String, Long>();
+		for (Map.Entry<String, TypeMetrics> entry : types.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().received.get());
+		}
+		return snapshot;
+	}
+
+	/** @return the histogram of the queue time of given message type, null if not seen */
+	public StripedHistogram.Snapshot getQueueTime(String type) {
+		final TypeMetrics metrics = types.get(type);
+		return (metrics == null) ? null : metrics.queueTime.getSnapshot();
+	}
+
+	/** @return the histogram of the deliberation time */
+	public StripedHistogram.Snapshot getDeliberationTime() {
+		return deliberation.getSnapshot();
+	}
+
+	/** Resets all the metrics. */
+	public void reset() {
+		types.clear();
+		deliberation.reset();
+	}
+
+	/** @return the metrics of given message type */
+	private TypeMetrics getType(String type) {
+		TypeMetrics metrics = types.get(type);
+		if (metrics == null) {
+			final TypeMetrics created = new TypeMetrics();
+			metrics = types.putIfAbsent(type, created);
+			if (metrics == null) metrics = created;
+		}
+		return metrics;
+	}
+
+	/** @return table of all the metrics */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("Message metrics:\n");
+		for (Map.Entry<String, TypeMetrics> entry : new TreeMap<String, TypeMetrics>(types).entrySet()) {
+			final TypeMetrics metrics = entry.getValue();
+			sb.append(String.format("  %-14s sent=%-9d received=%-9d queue: %s%n", entry.getKey(), metrics.sent.get(), metrics.received.get(),
+					metrics.queueTime.getSnapshot()));
+		}
+		sb.append("  deliberation: ").append(deliberation.getSnapshot());
+		return sb.toString();
+	}
+
+	/** Metrics of one message type. */
+	private static class TypeMetrics {
+		final StripedCounter sent = new StripedCounter();
+		final StripedCounter received = new StripedCounter();
+		final StripedHistogram queueTime = new StripedHistogram();
+	}
+}
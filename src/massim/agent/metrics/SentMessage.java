@@ -0,0 +1,53 @@
+package massim.agent.metrics;
+
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.content.Content;
+
+/**
+ * A message stamped with the time of sending, the queue time of the
+ * message is measured from it, so it includes the transit through the
+ * network (see {@link MessageMetrics}). The channels keep the stamp on the
+ * copies of the message, the stamp passed to another JVM is converted to
+ * the wall clock time, see {@link #getSentWallNanos()}.
+ */
+public class SentMessage extends Message {
+
+	/** Time of sending, see System.nanoTime. */
+	private final long sentNanos;
+
+	/** Constructor of the SentMessage class. */
+	public SentMessage(String sender, Content content, long id, long sentNanos) {
+		super(sender, content, id);
+		this.sentNanos = sentNanos;
+	}
+
+	/** @return time of sending, see System.nanoTime */
+	public long getSentNanos() {
+		return sentNanos;
+	}
+
+	/** @return time of sending as the wall clock time (in nanoseconds since the epoch) */
+	public long getSentWallNanos() {
+		return System.currentTimeMillis() * 1000000L - (System.nanoTime() - sentNanos);
+	}
+
+	/**
+	 * Converts the time of sending in another JVM to this JVM, the clocks of
+	 * the hosts are assumed to be synchronized, the wall clock has the
+	 * resolution of milliseconds.
+	 *
+	 * @param wallNanos time of sending as the wall clock time, see {@link #getSentWallNanos()}
+	 * @return time of sending, see System.nanoTime, not later than now
+	 */
+	public static long fromWallNanos(long wallNanos) {
+		return System.nanoTime() - Math.max(0, System.currentTimeMillis() * 1000000L - wallNanos);
+	}
+
+	/** @return copy of given message without the receivers, stamped as the message */
+	public static Message copyOf(Message message) {
+		if (message instanceof SentMessage) {
+			return new SentMessage(message.getSender(), message.getContent(), message.getId(), ((SentMessage) message).sentNanos);
+		}
+		return new Message(message.getSender(), message.getContent(), message.getId());
+	}
+}
@@ -0,0 +1,41 @@
+package massim.agent.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter recorded by many threads, every stripe of the counter occupies
+ * its own cache line. Recording does not allocate.
+ */
+public class StripedCounter {
+
+	/** Distance of the stripes in the array, a cache line of longs. */
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells = new AtomicLongArray(Stripes.COUNT * PADDING);
+
+	/** Adds given value to the counter. */
+	public void add(long value) {
+		cells.getAndAdd(Stripes.current() * PADDING, value);
+	}
+
+	/** Increments the counter. */
+	public void increment() {
+		add(1);
+	}
+
+	/** @return the current value of the counter, not an atomic snapshot */
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < Stripes.COUNT; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	/** Resets the counter, the concurrent updates may be lost. */
+	public void reset() {
+		for (int i = 0; i < Stripes.COUNT; i++) {
+			cells.set(i * PADDING, 0);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package massim.agent.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds recorded by many threads. The
+ * buckets are logarithmic with 8 linear sub-buckets, i.e. the relative
+ * error is below 12.5 %. Every thread records to its own stripe of the
+ * buckets, recording does not allocate.
+ */
+public class StripedHistogram {
+
+	/** The number of bits of the linear sub-buckets. */
+	private static final int SUB_BITS = 3;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	/** The number of buckets covering all the positive longs. */
+	static final int BUCKETS = (64 - SUB_BITS) << SUB_BITS;
+
+	/** Offsets of the sum and of the maximum in a stripe, the stripes are padded by a cache line. */
+	private static final int SUM = BUCKETS, MAX = BUCKETS + 1, STRIDE = BUCKETS + 16;
+
+	private final AtomicLongArray cells = new AtomicLongArray(Stripes.COUNT * STRIDE);
+
+	/** Records given duration, the negative durations are ignored. */
+	public void record(long nanos) {
+		if (nanos < 0) return;
+		final int base = Stripes.current() * STRIDE;
+		cells.getAndIncrement(base + bucket(nanos));
+		cells.getAndAdd(base + SUM, nanos);
+		long max = cells.get(base + MAX);
+		while (nanos > max && !cells.compareAndSet(base + MAX, max, nanos)) {
+			max = cells.get(base + MAX);
+		}
+	}
+
+	/** @return a snapshot of the histogram, not atomic with the concurrent recording */
+	public Snapshot getSnapshot() {
+		final long[] counts = new long[BUCKETS];
+		long sum = 0, max = 0;
+		for (int s = 0; s < Stripes.COUNT; s++) {
+			final int base = s * STRIDE;
+			for (int b = 0; b < BUCKETS; b++) {
+				counts[b] += cells.get(base + b);
+			}
+			sum += cells.get(base + SUM);
+			max = Math.max(max, cells.get(base + MAX));
+		}
+		return new Snapshot(counts, sum, max);
+	}
+
+	/** Resets the histogram, the concurrent records may be lost. */
+	public void reset() {
+		for (int i = 0; i < cells.length(); i++) {
+			cells.set(i, 0);
+		}
+	}
+
+	/** @return bucket of given value */
+	static int bucket(long value) {
+		if (value < SUB_COUNT) return (int) value;
+		final int exp = 63 - Long.numberOfLeadingZeros(value);
+		return ((exp - SUB_BITS + 1) << SUB_BITS) + (int) ((value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1));
+	}
+
+	/** @return the smallest value of given bucket */
+	static long lowerBound(int bucket) {
+		if (bucket < SUB_COUNT) return bucket;
+		final int exp = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+		return (long) (SUB_COUNT + (bucket & (SUB_COUNT - 1))) << (exp - SUB_BITS);
+	}
+
+	/** Snapshot of the histogram. */
+	public static class Snapshot {
+
+		private final long[] counts;
+		private final long count, sum, max;
+
+		Snapshot(long[] counts, long sum, long max) {
+			this.counts = counts;
+			long count = 0;
+			for (long c : counts) {
+				count += c;
+			}
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/** @return the number of the recorded values */
+		public long getCount() {
+			return count;
+		}
+
+		/** @return the mean of the recorded values in nanoseconds */
+		public double getMean() {
+			return (count == 0) ? 0 : (double) sum / count;
+		}
+
+		/** @return the maximal recorded value in nanoseconds */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @param quantile The quantile, from 0 to 1.
+		 * @return the upper bound of the bucket of given quantile in nanoseconds
+		 */
+		public long getQuantile(double quantile) {
+			if (count == 0) return 0;
+			final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for (int b = 0; b < counts.length; b++) {
+				seen += counts[b];
+				if (seen >= rank) {
+					return Math.min(max, (b + 1 < BUCKETS) ? lowerBound(b + 1) - 1 : Long.MAX_VALUE);
+				}
+			}
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus", count, getMean() / 1000.0,
+					getQuantile(0.5) / 1000.0, getQuantile(0.9) / 1000.0, getQuantile(0.99) / 1000.0, max / 1000.0);
+		}
+	}
+}
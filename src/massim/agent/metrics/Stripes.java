@@ -0,0 +1,19 @@
+package massim.agent.metrics;
+
+/**
+ * Striping of the recorders, the threads record to different stripes to
+ * avoid contention on shared counters.
+ */
+final class Stripes {
+
+	/** The number of stripes, a power of two. */
+	static final int COUNT = Integer.highestOneBit(Math.min(16, 2 * Runtime.getRuntime().availableProcessors()));
+
+	private Stripes() {}
+
+	/** @return stripe of the current thread */
+	static int current() {
+		final long id = Thread.currentThread().getId();
+		return (int) (id ^ (id >>> 16)) & (COUNT - 1);
+	}
+}
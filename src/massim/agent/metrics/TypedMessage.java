@@ -0,0 +1,11 @@
+package massim.agent.metrics;
+
+/**
+ * Message data carrying its type, the messages are counted and their
+ * queue time is measured by type, see {@link MessageMetrics}.
+ */
+public interface TypedMessage {
+
+	/** @return type of the message */
+	String getType();
+}
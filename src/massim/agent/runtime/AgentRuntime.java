@@ -0,0 +1,32 @@
+package massim.agent.runtime;
+
+import massim.agent.AbstractAgent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Strategy of hosting agents connected to the MASSim server.
+ */
+public interface AgentRuntime {
+
+	/**
+	 * Connects all given agents to the server and starts processing of
+	 * the server messages. The method returns as soon as the agents are
+	 * started, it does not wait for the simulation to end.
+	 *
+	 * @param agents Agents to start.
+	 * @throws IOException When the runtime cannot be initialized.
+	 */
+	void start(List<? extends AbstractAgent> agents) throws IOException;
+
+	/**
+	 * Waits until all the agents end, i.e. their connections are closed.
+	 *
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	void awaitTermination() throws InterruptedException;
+
+	/** Stops the runtime, disconnects all the agents and releases all its resources. */
+	void shutdown();
+}
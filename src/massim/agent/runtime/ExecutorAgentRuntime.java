@@ -0,0 +1,183 @@
+package massim.agent.runtime;
+
+import massim.agent.AbstractAgent;
+
+import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runtime running the main thread of every agent as a task of an executor,
+ * either on virtual threads or on a bounded pool of platform threads.
+ * <p/>
+ * Each agent task blocks for the whole simulation, so the platform pool
+ * must be at least as large as the agent population. Its threads can be
+ * created with a reduced stack size, which is the main memory cost of
+ * large populations. Virtual threads need JDK 21, on older runtimes the
+ * platform pool is used instead.
+ * <p/>
+ * The runtime owns all the agent threads: <code>shutdown</code> disconnects
+ * all the agents and waits for their threads to end.
+ *
+ * @see AbstractAgent#agentThread()
+ */
+public class ExecutorAgentRuntime implements AgentRuntime {
+
+	/** Timeout for all the agent threads to begin running (in milliseconds). */
+	private static final long RUNNING_TIMEOUT = 10000;
+
+	private final ExecutorService executor;
+	private final String description;
+	private final int poolSize;
+	private final long shutdownTimeout;
+
+	private final List<AbstractAgent> agents = new LinkedList<AbstractAgent>();
+	private StartupReport startupReport;
+
+	private ExecutorAgentRuntime(ExecutorService executor, String description, int poolSize, long shutdownTimeout) {
+		this.executor = executor;
+		this.description = description;
+		this.poolSize = poolSize;
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+	/**
+	 * Creates a runtime running the agents on virtual threads. Falls back
+	 * to a pool of platform threads when virtual threads are not supported.
+	 *
+	 * @param poolSize Size of the fallback pool.
+	 * @param stackSize Stack size of the fallback threads, 0 for the JVM default.
+	 * @param shutdownTimeout Time to wait for the agents on shutdown (in milliseconds).
+	 */
+	public static ExecutorAgentRuntime virtualThreads(int poolSize, long stackSize, long shutdownTimeout) {
+		final ExecutorService executor = newVirtualThreadExecutor();
+		if (executor == null) {
+			System.out.println("Virtual threads not supported, using platform threads");
+			return platformThreads(poolSize, stackSize, shutdownTimeout);
+		}
+		return new ExecutorAgentRuntime(executor, "virtual", Integer.MAX_VALUE, shutdownTimeout);
+	}
+
+	/**
+	 * Creates a runtime running the agents on a bounded pool of platform threads.
+	 *
+	 * @param poolSize Maximal number of the agents.
+	 * @param stackSize Stack size of the threads, 0 for the JVM default.
+	 * @param shutdownTimeout Time to wait for the agents on shutdown (in milliseconds).
+	 */
+	public static ExecutorAgentRuntime platformThreads(int poolSize, long stackSize, long shutdownTimeout) {
+		if (poolSize < 1) throw new IllegalArgumentException("poolSize=" + poolSize);
+		final ExecutorService executor = Executors.newFixedThreadPool(poolSize, new StackSizeThreadFactory("agent-", stackSize));
+		final String description = (stackSize > 0) ? "platform(" + poolSize + ", stack=" + (stackSize / 1024) + "k)" : "platform(" + poolSize + ")";
+		return new ExecutorAgentRuntime(executor, description, poolSize, shutdownTimeout);
+	}
+
+	@Override
+	public void start(List<? extends AbstractAgent> agents) {
+		if (agents.size() > poolSize) {
+			throw new IllegalArgumentException("pool of " + poolSize + " threads cannot host " + agents.size() + " agents");
+		}
+
+		final long t = System.nanoTime();
+		final CountDownLatch running = new CountDownLatch(agents.size());
+		synchronized (this.agents) {
+			for (final AbstractAgent agent : agents) {
+				this.agents.add(agent);
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						running.countDown();
+						agent.agentThread();
+					}
+				});
+			}
+		}
+		final long launched = System.nanoTime();
+
+		long runningMillis = -1;
+		try {
+			if (running.await(RUNNING_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				runningMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		startupReport = new StartupReport(description, agents.size(), TimeUnit.NANOSECONDS.toMillis(launched - t), runningMillis);
+		System.out.println(startupReport);
+	}
+
+	/** @return report of the last startup, <code>null</code> if not started yet */
+	public StartupReport getStartupReport() {
+		return startupReport;
+	}
+
+	@Override
+	public void awaitTermination() throws InterruptedException {
+		executor.shutdown();
+		while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			// agents still running
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdown();
+		synchronized (agents) {
+			for (AbstractAgent agent : agents) {
+				agent.disconnect();
+			}
+		}
+
+		try {
+			if (!executor.awaitTermination(shutdownTimeout, TimeUnit.MILLISECONDS)) {
+				System.out.println("Agent threads did not end in " + shutdownTimeout + "ms, interrupting");
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** @return an executor starting a new virtual thread for each task, <code>null</code> if not supported */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			// Thread.ofVirtual().name("agent-", 0).factory() of JDK 21
+			final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "agent-", 0L);
+			final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+			final Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (Exception e) {
+			// no virtual threads or not enabled (preview)
+			return null;
+		}
+	}
+
+	/** Thread factory creating threads of given stack size. */
+	private static class StackSizeThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final long stackSize;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		StackSizeThreadFactory(String prefix, long stackSize) {
+			this.prefix = prefix;
+			this.stackSize = stackSize;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			return new Thread(null, runnable, prefix + counter.getAndIncrement(), stackSize);
+		}
+	}
+}
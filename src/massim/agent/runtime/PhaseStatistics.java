@@ -0,0 +1,66 @@
+package massim.agent.runtime;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of the duration of one phase over a population, e.g. of one
+ * startup phase over the agents.
+ */
+public class PhaseStatistics {
+
+	private final String name;
+	private final int count;
+	private final double minMillis, medianMillis, p99Millis, maxMillis;
+
+	/**
+	 * Constructor of the PhaseStatistics class.
+	 *
+	 * @param name Name of the phase.
+	 * @param durations Durations of the phase of the individual members (in nanoseconds).
+	 */
+	public PhaseStatistics(String name, long[] durations) {
+		this.name = name;
+		this.count = durations.length;
+		final long[] sorted = durations.clone();
+		Arrays.sort(sorted);
+		minMillis = (count == 0) ? 0 : sorted[0] / 1e6;
+		medianMillis = (count == 0) ? 0 : sorted[count / 2] / 1e6;
+		p99Millis = (count == 0) ? 0 : sorted[(int) Math.ceil(count * 0.99) - 1] / 1e6;
+		maxMillis = (count == 0) ? 0 : sorted[count - 1] / 1e6;
+	}
+
+	/** @return name of the phase */
+	public String getName() {
+		return name;
+	}
+
+	/** @return the number of members of the population which completed the phase */
+	public int getCount() {
+		return count;
+	}
+
+	/** @return the shortest duration of the phase (in milliseconds) */
+	public double getMinMillis() {
+		return minMillis;
+	}
+
+	/** @return the median duration of the phase (in milliseconds) */
+	public double getMedianMillis() {
+		return medianMillis;
+	}
+
+	/** @return the 99th percentile of the duration of the phase (in milliseconds) */
+	public double getP99Millis() {
+		return p99Millis;
+	}
+
+	/** @return the longest duration of the phase (in milliseconds) */
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-12s n=%d min=%.1fms median=%.1fms p99=%.1fms max=%.1fms", name, count, minMillis, medianMillis, p99Millis, maxMillis);
+	}
+}
@@ -0,0 +1,101 @@
+package massim.agent.runtime;
+
+/**
+ * Configuration of the agent runtime.
+ */
+public class RuntimeConfig {
+
+	/** Available agent runtimes. */
+	public enum Mode {
+		/** A new platform thread per agent. */
+		thread,
+		/** A virtual thread per agent, bounded platform pool as a fallback. */
+		virtual,
+		/** A bounded pool of platform threads. */
+		pool,
+		/** All the agents on a few selector threads. */
+		selector
+	}
+
+	/** Selected runtime. */
+	public Mode mode = Mode.thread;
+
+	/** Size of the platform thread pool, 0 to fit the agent population. */
+	public int poolSize = 0;
+	/** Stack size of the pooled platform threads (in bytes), 0 for the JVM default. */
+	public long stackSize = 256 * 1024;
+
+	/** The number of selector threads. */
+	public int selectors = 1;
+	/** The number of worker threads of the selector runtime. */
+	public int workers = Runtime.getRuntime().availableProcessors();
+
+	/** Time to wait for the agents on shutdown (in milliseconds). */
+	public long shutdownTimeout = 5000;
+
+	/** Maximal number of agents connecting and authenticating at the same time. */
+	public int connectParallelism = 32;
+	/** Timeout of connecting to the server (in milliseconds). */
+	public int connectTimeout = 2000;
+	/** Maximal time to wait for the other agents on <tt>sim-start</tt> (in milliseconds). */
+	public long readyTimeout = 10000;
+
+	/**
+	 * Reads the configuration from system properties, i.e. <tt>massim.runtime</tt>
+	 * (<tt>thread</tt>, <tt>virtual</tt>, <tt>pool</tt> or <tt>selector</tt>),
+	 * <tt>massim.poolSize</tt>, <tt>massim.stackSize</tt>, <tt>massim.selectors</tt>,
+	 * <tt>massim.workers</tt>, <tt>massim.shutdownTimeout</tt>, <tt>massim.connectParallelism</tt>,
+	 * <tt>massim.connectTimeout</tt> and <tt>massim.readyTimeout</tt>.
+	 */
+	public static RuntimeConfig fromSystemProperties() {
+		final RuntimeConfig config = new RuntimeConfig();
+		config.mode = Mode.valueOf(System.getProperty("massim.runtime", config.mode.name()));
+		config.poolSize = Integer.getInteger("massim.poolSize", config.poolSize);
+		config.stackSize = Long.getLong("massim.stackSize", config.stackSize);
+		config.selectors = Integer.getInteger("massim.selectors", config.selectors);
+		config.workers = Integer.getInteger("massim.workers", config.workers);
+		config.shutdownTimeout = Long.getLong("massim.shutdownTimeout", config.shutdownTimeout);
+		config.connectParallelism = Integer.getInteger("massim.connectParallelism", config.connectParallelism);
+		config.connectTimeout = Integer.getInteger("massim.connectTimeout", config.connectTimeout);
+		config.readyTimeout = Long.getLong("massim.readyTimeout", config.readyTimeout);
+		return config;
+	}
+
+	/**
+	 * Creates the configured runtime.
+	 *
+	 * @param nAgents The number of agents to host.
+	 */
+	public AgentRuntime createRuntime(int nAgents) {
+		final int pool = (poolSize > 0) ? poolSize : nAgents;
+		switch (mode) {
+			case virtual:
+				return ExecutorAgentRuntime.virtualThreads(pool, stackSize, shutdownTimeout);
+			case pool:
+				return ExecutorAgentRuntime.platformThreads(pool, stackSize, shutdownTimeout);
+			case selector:
+				return new SelectorAgentRuntime(selectors, workers);
+			case thread:
+			default:
+				return new ThreadAgentRuntime();
+		}
+	}
+
+	/**
+	 * Creates a coordinator of the agent population startup. The agents of
+	 * the selector runtime do not wait at the readiness barrier, waiting
+	 * agents would block all the worker threads.
+	 *
+	 * @param nAgents The number of agents to start.
+	 */
+	public StartupCoordinator createStartupCoordinator(int nAgents) {
+		return new StartupCoordinator(nAgents, connectParallelism, (mode == Mode.selector) ? 0 : readyTimeout);
+	}
+
+	@Override
+	public String toString() {
+		return "RuntimeConfig [mode=" + mode + ", poolSize=" + poolSize + ", stackSize=" + stackSize
+				+ ", selectors=" + selectors + ", workers=" + workers + ", shutdownTimeout=" + shutdownTimeout
+				+ ", connectParallelism=" + connectParallelism + ", connectTimeout=" + connectTimeout + ", readyTimeout=" + readyTimeout + "]";
+	}
+}
@@ -0,0 +1,410 @@
+package massim.agent.runtime;
+
+import massim.agent.AbstractAgent;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runtime hosting all the agent connections on a few selector threads.
+ * <p/>
+ * The connections are non-blocking, the selector threads only read and
+ * frame the zero-terminated packets. The received documents are handed
+ * to a small pool of worker threads which call the usual callbacks of
+ * the {@link AbstractAgent}, i.e. <code>processLogIn</code> and
+ * <code>processMessage</code>. Packets of one agent are always processed
+ * sequentially and in the order of arrival, so the agents need no extra
+ * synchronization compared to the thread-per-agent runtime.
+ * <p/>
+ * Callbacks blocking for a long time (e.g. sleeping) occupy a worker thread,
+ * the size of the worker pool should take that into account.
+ */
+public class SelectorAgentRuntime implements AgentRuntime {
+
+	/** Size of the read buffer of a selector thread. */
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+	private final int nSelectors;
+	private final int nWorkers;
+
+	private final List<AgentConnection> connections = new LinkedList<AgentConnection>();
+	private final AtomicInteger openConnections = new AtomicInteger();
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	private SelectorLoop[] loops;
+	private ExecutorService workers;
+
+	/** Constructor of the SelectorAgentRuntime class. */
+	public SelectorAgentRuntime(int nSelectors, int nWorkers) {
+		if (nSelectors < 1) throw new IllegalArgumentException("nSelectors=" + nSelectors);
+		if (nWorkers < 1) throw new IllegalArgumentException("nWorkers=" + nWorkers);
+		this.nSelectors = nSelectors;
+		this.nWorkers = nWorkers;
+	}
+
+	@Override
+	public synchronized void start(List<? extends AbstractAgent> agents) throws IOException {
+		if (loops != null) throw new IllegalStateException("already started");
+
+		final long t = System.nanoTime();
+		workers = Executors.newFixedThreadPool(nWorkers, new NamedThreadFactory("agent-worker-"));
+		loops = new SelectorLoop[nSelectors];
+		for (int i = 0; i < nSelectors; i++) {
+			loops[i] = new SelectorLoop(i);
+			loops[i].start();
+		}
+
+		openConnections.set(agents.size());
+		int i = 0;
+		for (AbstractAgent agent : agents) {
+			System.out.println("Connecting to " + agent.getHost() + " port " + agent.getPort());
+
+			InetSocketAddress address = new InetSocketAddress(agent.getHost(), agent.getPort());
+			if (address.isUnresolved()) {
+				throw new RuntimeException("The internet address " + agent.getHost() + " at port " + agent.getPort() + " is unresolvable");
+			}
+
+			try {
+				agent.getLifecycleListener().connecting(agent);
+			} catch (InterruptedException e) {
+				System.out.println("Interrupted before connecting");
+				agent.getLifecycleListener().authenticated(agent, false);
+				openConnections.decrementAndGet();
+				continue;
+			}
+
+			SocketChannel channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			boolean connected = channel.connect(address);
+
+			AgentConnection connection = new AgentConnection(agent, channel, loops[i++ % nSelectors]);
+			connections.add(connection);
+			connection.loop.register(connection, connected);
+		}
+
+		final long launchMillis = (System.nanoTime() - t) / 1000000;
+		System.out.println(new StartupReport("selector(" + nSelectors + ", workers=" + nWorkers + ")", agents.size(), launchMillis, -1));
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		final SelectorLoop[] running = loops;
+		if (running == null) return;
+		loops = null;
+
+		for (SelectorLoop loop : running) {
+			loop.terminate();
+		}
+		workers.shutdownNow();
+		for (AgentConnection connection : connections) {
+			connection.close();
+		}
+		connections.clear();
+		terminated.countDown();
+	}
+
+	@Override
+	public void awaitTermination() throws InterruptedException {
+		terminated.await();
+	}
+
+	/** Runs given task in a worker thread unless the runtime is shut down. */
+	private void dispatch(Runnable task) {
+		try {
+			workers.execute(task);
+		} catch (RejectedExecutionException e) {
+			// the runtime is shut down
+		}
+	}
+
+	/** Selector thread serving a subset of the agent connections. */
+	private class SelectorLoop extends Thread {
+
+		private final Selector selector;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+		private volatile boolean running = true;
+
+		SelectorLoop(int id) throws IOException {
+			super("agent-selector-" + id);
+			selector = Selector.open();
+		}
+
+		/** Runs given task in the selector thread. */
+		void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		/** Registers given connection with the selector. */
+		void register(final AgentConnection connection, final boolean connected) {
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						connection.key = connection.channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, connection);
+						if (connected) connection.connected();
+					} catch (IOException e) {
+						System.out.println("IOException");
+						e.printStackTrace();
+						connection.close();
+					}
+				}
+			});
+		}
+
+		/** Requests writing of the pending packets of given connection. */
+		void requestWrite(final AgentConnection connection) {
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					if (connection.key != null && connection.key.isValid()) {
+						connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					}
+				}
+			});
+		}
+
+		void terminate() {
+			running = false;
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					selector.select();
+
+					Runnable task;
+					while ((task = tasks.poll()) != null) {
+						task.run();
+					}
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						AgentConnection connection = (AgentConnection) key.attachment();
+						try {
+							if (key.isValid() && key.isConnectable()) {
+								connection.channel.finishConnect();
+								key.interestOps(SelectionKey.OP_READ);
+								connection.connected();
+							}
+							if (key.isValid() && key.isReadable()) {
+								connection.read(readBuffer);
+							}
+							if (key.isValid() && key.isWritable()) {
+								connection.flush();
+							}
+						} catch (IOException e) {
+							System.out.println("IOException");
+							e.printStackTrace();
+							connection.close();
+						}
+					}
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			} catch (ClosedSelectorException e) {
+				// terminated
+			} finally {
+				try {
+					selector.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/** Connection of one agent, frames the packets and runs the agent callbacks. */
+	private class AgentConnection implements AbstractAgent.PacketWriter, Runnable {
+
+		private final AbstractAgent agent;
+		private final SocketChannel channel;
+		private final SelectorLoop loop;
+		private SelectionKey key;
+
+		/** Data of the packet being received. */
+		private byte[] frame = new byte[1024];
+		private int frameLength = 0;
+
+		private final Queue<byte[]> received = new ConcurrentLinkedQueue<byte[]>();
+		private final Queue<ByteBuffer> pendingWrites = new LinkedList<ByteBuffer>();
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		private final AtomicBoolean closed = new AtomicBoolean(false);
+		private final AtomicBoolean authenticationReported = new AtomicBoolean(false);
+		private volatile boolean authenticated = false;
+
+		AgentConnection(AbstractAgent agent, SocketChannel channel, SelectorLoop loop) {
+			this.agent = agent;
+			this.channel = channel;
+			this.loop = loop;
+		}
+
+		/** Called in the selector thread when the connection is established. */
+		void connected() {
+			System.out.println("Successfully connected");
+			agent.getLifecycleListener().connected(agent);
+			agent.setPacketWriter(this);
+			dispatch(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						agent.sendAuthentication(agent.getUsername(), agent.getPassword());
+					} catch (IOException e) {
+						System.out.println("IOException");
+						e.printStackTrace();
+						close();
+					}
+				}
+			});
+		}
+
+		/** Called in the selector thread when there are data to read. */
+		void read(ByteBuffer buffer) throws IOException {
+			buffer.clear();
+			int read = channel.read(buffer);
+			if (read == -1) {
+				System.out.println("Socket was closed");
+				close();
+				return;
+			}
+
+			buffer.flip();
+			boolean complete = false;
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (b == 0) {
+					received.add(Arrays.copyOf(frame, frameLength));
+					frameLength = 0;
+					complete = true;
+				} else {
+					if (frameLength == frame.length) {
+						frame = Arrays.copyOf(frame, 2 * frame.length);
+					}
+					frame[frameLength++] = b;
+				}
+			}
+
+			if (complete && scheduled.compareAndSet(false, true)) {
+				dispatch(this);
+			}
+		}
+
+		/** Processes the received packets in a worker thread. */
+		@Override
+		public void run() {
+			do {
+				byte[] raw;
+				while (!closed.get() && (raw = received.poll()) != null) {
+					process(raw);
+				}
+				scheduled.set(false);
+			} while (!closed.get() && !received.isEmpty() && scheduled.compareAndSet(false, true));
+		}
+
+		private void process(byte[] raw) {
+			agent.logPacket(false, raw);
+			Document doc;
+			try {
+				doc = agent.parseDocument(raw);
+			} catch (SAXException e) {
+				e.printStackTrace();
+				return;
+			} catch (ParserConfigurationException e) {
+				e.printStackTrace();
+				return;
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+
+			if (!authenticated) {
+				if (!agent.checkAuthenticationResult(doc)) {
+					System.out.println("Authentication failed");
+					close();
+					return;
+				}
+				reportAuthentication(true);
+				authenticated = true;
+				agent.processLogIn();
+			} else if (!agent.processDocument(doc)) {
+				close();
+			}
+		}
+
+		/** Notifies the lifecycle listener about the authentication, only once. */
+		private void reportAuthentication(boolean success) {
+			if (authenticationReported.compareAndSet(false, true)) {
+				agent.getLifecycleListener().authenticated(agent, success);
+			}
+		}
+
+		@Override
+		public void writePacket(byte[] packet) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(packet.length + 1);
+			buffer.put(packet).put((byte) 0).flip();
+			synchronized (pendingWrites) {
+				if (pendingWrites.isEmpty()) {
+					channel.write(buffer);
+					if (!buffer.hasRemaining()) return;
+				}
+				pendingWrites.add(buffer);
+			}
+			loop.requestWrite(this);
+		}
+
+		/** Called in the selector thread when the channel is writable. */
+		void flush() throws IOException {
+			synchronized (pendingWrites) {
+				ByteBuffer buffer;
+				while ((buffer = pendingWrites.peek()) != null) {
+					channel.write(buffer);
+					if (buffer.hasRemaining()) return;
+					pendingWrites.poll();
+				}
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		/** Closes the connection, the runtime shuts down with the last one. */
+		void close() {
+			if (!closed.compareAndSet(false, true)) return;
+			reportAuthentication(false);
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (openConnections.decrementAndGet() == 0) {
+				shutdown();
+			}
+		}
+	}
+}
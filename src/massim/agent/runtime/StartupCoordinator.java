@@ -0,0 +1,169 @@
+package massim.agent.runtime;
+
+import massim.agent.AbstractAgent;
+import massim.agent.AgentLifecycleListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates the startup of an agent population.
+ * <p/>
+ * At most <tt>parallelism</tt> agents connect and authenticate at the same
+ * time. On <code>sim-start</code> every agent waits at a readiness barrier
+ * until all the agents of the population have started the simulation (or
+ * failed to connect), so no agent starts sending messages to agents which
+ * are not ready yet. The time spent in every startup phase is recorded and
+ * reported when all the agents sent their first action.
+ */
+public class StartupCoordinator implements AgentLifecycleListener {
+
+	/** Indices of the startup timestamps. */
+	private static final int QUEUED = 0, CONNECTING = 1, CONNECTED = 2, AUTHENTICATED = 3, SIM_START = 4, READY = 5, FIRST_ACTION = 6;
+
+	/** Names of the reported phases, a phase ends at the timestamp of the same index. */
+	private static final String[] PHASES = {null, "queue", "connect", "auth", "sim-start", "barrier", "first action"};
+
+	private final int nAgents;
+	private final Semaphore connectPermits;
+	private final long readyTimeout;
+
+	private final CountDownLatch ready;
+	private final CountDownLatch firstActions;
+	private final ConcurrentMap<AbstractAgent, long[]> timestamps = new ConcurrentHashMap<AbstractAgent, long[]>();
+	private final long createdNanos = System.nanoTime();
+
+	/**
+	 * Constructor of the StartupCoordinator class.
+	 *
+	 * @param nAgents Size of the agent population.
+	 * @param parallelism Maximal number of agents connecting at the same time.
+	 * @param readyTimeout Maximal time to wait at the readiness barrier (in milliseconds),
+	 *                     the agents do not wait at all if not positive.
+	 */
+	public StartupCoordinator(int nAgents, int parallelism, long readyTimeout) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism=" + parallelism);
+		this.nAgents = nAgents;
+		this.connectPermits = new Semaphore(parallelism);
+		this.readyTimeout = readyTimeout;
+		ready = new CountDownLatch(nAgents);
+		firstActions = new CountDownLatch(nAgents);
+	}
+
+	@Override
+	public void connecting(AbstractAgent agent) throws InterruptedException {
+		final long[] t = getTimestamps(agent);
+		t[QUEUED] = System.nanoTime();
+		connectPermits.acquire();
+		t[CONNECTING] = System.nanoTime();
+	}
+
+	@Override
+	public void connected(AbstractAgent agent) {
+		getTimestamps(agent)[CONNECTED] = System.nanoTime();
+	}
+
+	@Override
+	public void authenticated(AbstractAgent agent, boolean success) {
+		final long[] t = getTimestamps(agent);
+		if (t[CONNECTING] != 0) {
+			connectPermits.release();
+		}
+		if (success) {
+			t[AUTHENTICATED] = System.nanoTime();
+		} else {
+			// the agent will not take part in the simulation
+			ready.countDown();
+			firstActions.countDown();
+		}
+	}
+
+	@Override
+	public void simulationStarted(AbstractAgent agent) {
+		final long[] t = getTimestamps(agent);
+		if (t[SIM_START] != 0) return;
+
+		t[SIM_START] = System.nanoTime();
+		ready.countDown();
+		try {
+			if (readyTimeout > 0 && !ready.await(readyTimeout, TimeUnit.MILLISECONDS)) {
+				System.out.println(agent.getUsername() + ": " + ready.getCount() + " agents not ready in " + readyTimeout + "ms, starting anyway");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		t[READY] = System.nanoTime();
+	}
+
+	@Override
+	public void actionSent(AbstractAgent agent) {
+		final long[] t = getTimestamps(agent);
+		if (t[FIRST_ACTION] != 0) return;
+
+		t[FIRST_ACTION] = System.nanoTime();
+		firstActions.countDown();
+		if (firstActions.getCount() == 0) {
+			printReport();
+		}
+	}
+
+	/**
+	 * Waits until all the agents sent their first action.
+	 *
+	 * @return true if the agents are started, false if the time elapsed.
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public boolean awaitStarted(long timeout, TimeUnit unit) throws InterruptedException {
+		return firstActions.await(timeout, unit);
+	}
+
+	/** @return statistics of the startup phases of the agents, complete once the agents are started */
+	public List<PhaseStatistics> getPhaseStatistics() {
+		final List<long[]> agents = new ArrayList<long[]>(timestamps.values());
+		final List<PhaseStatistics> statistics = new ArrayList<PhaseStatistics>(PHASES.length);
+		for (int phase = CONNECTING; phase <= FIRST_ACTION; phase++) {
+			statistics.add(getStatistics(PHASES[phase], agents, phase - 1, phase));
+		}
+		statistics.add(getStatistics("total", agents, -1, FIRST_ACTION));
+		return statistics;
+	}
+
+	/** Prints the startup statistics to STD-OUT. */
+	public void printReport() {
+		final StringBuilder sb = new StringBuilder("startup phases [agents=").append(nAgents).append(']');
+		for (PhaseStatistics statistics : getPhaseStatistics()) {
+			sb.append("\n  ").append(statistics);
+		}
+		System.out.println(sb);
+	}
+
+	/** @return timestamps of given agent */
+	private long[] getTimestamps(AbstractAgent agent) {
+		long[] t = timestamps.get(agent);
+		if (t == null) {
+			final long[] created = new long[FIRST_ACTION + 1];
+			t = timestamps.putIfAbsent(agent, created);
+			if (t == null) t = created;
+		}
+		return t;
+	}
+
+	/** @return statistics of the durations between given timestamps, negative <tt>from</tt> means the coordinator creation */
+	private PhaseStatistics getStatistics(String name, List<long[]> agents, int from, int to) {
+		final long[] durations = new long[agents.size()];
+		int count = 0;
+		for (long[] t : agents) {
+			final long start = (from < 0) ? createdNanos : t[from];
+			if (start != 0 && t[to] != 0) {
+				durations[count++] = t[to] - start;
+			}
+		}
+		return new PhaseStatistics(name, Arrays.copyOf(durations, count));
+	}
+}
@@ -0,0 +1,50 @@
+package massim.agent.runtime;
+
+/**
+ * Summary of an agent population startup.
+ */
+public class StartupReport {
+
+	/** Description of the runtime which started the agents. */
+	private final String runtime;
+	/** The number of started agents. */
+	private final int agents;
+	/** Time spent launching the agents (in milliseconds). */
+	private final long launchMillis;
+	/** Time until the last agent began running (in milliseconds), -1 if unknown. */
+	private final long runningMillis;
+
+	/** Constructor of the StartupReport class. */
+	public StartupReport(String runtime, int agents, long launchMillis, long runningMillis) {
+		this.runtime = runtime;
+		this.agents = agents;
+		this.launchMillis = launchMillis;
+		this.runningMillis = runningMillis;
+	}
+
+	/** @return description of the runtime */
+	public String getRuntime() {
+		return runtime;
+	}
+
+	/** @return the number of started agents */
+	public int getAgents() {
+		return agents;
+	}
+
+	/** @return time spent launching the agents (in milliseconds) */
+	public long getLaunchMillis() {
+		return launchMillis;
+	}
+
+	/** @return time until the last agent began running (in milliseconds), -1 if unknown */
+	public long getRunningMillis() {
+		return runningMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("startup [runtime=%s, agents=%d, launch=%dms, running=%s]",
+				runtime, agents, launchMillis, (runningMillis < 0) ? "?" : runningMillis + "ms");
+	}
+}
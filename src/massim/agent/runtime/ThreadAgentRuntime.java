@@ -0,0 +1,53 @@
+package massim.agent.runtime;
+
+import massim.agent.AbstractAgent;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The default runtime, every agent runs in its own thread.
+ *
+ * @see AbstractAgent#start()
+ */
+public class ThreadAgentRuntime implements AgentRuntime {
+
+	private final List<AbstractAgent> agents = new LinkedList<AbstractAgent>();
+	private final List<Thread> threads = new LinkedList<Thread>();
+
+	@Override
+	public synchronized void start(List<? extends AbstractAgent> agents) {
+		final long t = System.nanoTime();
+		for (final AbstractAgent agent : agents) {
+			final Thread thread = new Thread(agent.getUsername()) {
+				public void run() {
+					agent.agentThread();
+				}
+			};
+			thread.start();
+			this.agents.add(agent);
+			threads.add(thread);
+			Thread.yield();
+		}
+		final long launchMillis = (System.nanoTime() - t) / 1000000;
+		System.out.println(new StartupReport("thread", agents.size(), launchMillis, launchMillis));
+	}
+
+	@Override
+	public void awaitTermination() throws InterruptedException {
+		final List<Thread> running;
+		synchronized (this) {
+			running = new LinkedList<Thread>(threads);
+		}
+		for (Thread thread : running) {
+			thread.join();
+		}
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		for (AbstractAgent agent : agents) {
+			agent.disconnect();
+		}
+	}
+}
@@ -0,0 +1,550 @@
+package massim.agent.server;
+
+import massim.agent.StartAgents;
+import massim.agent.metrics.MessageMetrics;
+import massim.agent.runtime.AgentRuntime;
+import massim.agent.runtime.RuntimeConfig;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stand-in for the MASSim server, simulating the N-queen puzzle environment
+ * for headless runs on a developer machine or in CI.
+ * <p/>
+ * The server listens on the loopback interface and speaks the zero-terminated
+ * XML protocol of the {@link massim.agent.AbstractAgent}: it authenticates any
+ * agent, starts the simulation with <tt>sim-start</tt> once the configured
+ * number of agents is connected, requests an action from every agent in each
+ * step and ends with <tt>sim-end</tt>. The agents are placed at the 1st column
+ * of the n&times;n chessboard, which is surrounded by trees, i.e. the grid is
+ * (n+2)&times;(n+2).
+ * <p/>
+ * All the network I/O runs in one selector thread and the simulation itself
+ * in another single thread, so the server can host thousands of agents.
+ */
+public class LocalMassimServer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The simulation identifier sent to the agents. */
+	private static final String SIMULATION_ID = "queens";
+
+	private final ServerConfig config;
+
+	private ServerSocketChannel serverChannel;
+	private Selector selector;
+	private Thread ioThread;
+	private final Queue<Client> pendingWrites = new ConcurrentLinkedQueue<Client>();
+	private final ScheduledExecutorService simulation;
+
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private volatile SimulationResult result;
+
+	// simulation state, accessed in the simulation thread only
+	private final DocumentBuilder documentBuilder;
+	private final List<Client> clients = new ArrayList<Client>();
+	private final Client[] board;
+	private int step = -1;
+	private boolean stepCompleted = true;
+	private int responses = 0;
+	private long startMillis, stepStartMillis;
+	private int stableSteps = 0, missedActions = 0;
+	private boolean running = false;
+
+	/** Constructor of the LocalMassimServer class. */
+	public LocalMassimServer(ServerConfig config) {
+		if (config.size < 1) throw new IllegalArgumentException("size=" + config.size);
+		this.config = config;
+		this.board = new Client[config.size];
+		simulation = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "massim-simulation");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Starts listening for the agents.
+	 *
+	 * @throws IOException When the server socket cannot be opened.
+	 */
+	public synchronized void start() throws IOException {
+		if (ioThread != null) throw new IllegalStateException("already started");
+
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.configureBlocking(false);
+		serverChannel.socket().setReuseAddress(true);
+		serverChannel.bind(new InetSocketAddress("127.0.0.1", config.port), 1024);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+		ioThread = new Thread("massim-server") {
+			public void run() {
+				runSelector();
+			}
+		};
+		ioThread.setDaemon(true);
+		ioThread.start();
+	}
+
+	/** @return the port the server listens on */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Waits until the simulation ends.
+	 *
+	 * @return the simulation result.
+	 * @throws InterruptedException When interrupted while waiting.
+	 */
+	public SimulationResult awaitResult() throws InterruptedException {
+		finished.await();
+		return result;
+	}
+
+	/** Stops the server and closes all the connections. */
+	public synchronized void shutdown() {
+		simulation.shutdownNow();
+		if (selector != null) {
+			try {
+				selector.close();
+				serverChannel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/** The network I/O loop. */
+	private void runSelector() {
+		final ByteBuffer readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+		try {
+			while (selector.isOpen()) {
+				selector.select();
+
+				Client client;
+				while ((client = pendingWrites.poll()) != null) {
+					if (client.key.isValid()) {
+						client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					}
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) continue;
+
+					if (key.isAcceptable()) {
+						SocketChannel channel = serverChannel.accept();
+						if (channel != null) {
+							channel.configureBlocking(false);
+							channel.socket().setTcpNoDelay(true);
+							Client accepted = new Client(channel);
+							accepted.key = channel.register(selector, SelectionKey.OP_READ, accepted);
+						}
+						continue;
+					}
+
+					client = (Client) key.attachment();
+					try {
+						if (key.isReadable()) {
+							client.read(readBuffer);
+						}
+						if (key.isValid() && key.isWritable()) {
+							client.flush();
+						}
+					} catch (IOException e) {
+						client.close();
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (ClosedSelectorException e) {
+			// shut down
+		}
+	}
+
+	/** Processes a packet received from given client (simulation thread). */
+	private void processPacket(Client client, byte[] packet) {
+		final Element root;
+		try {
+			final Document doc = documentBuilder.parse(new ByteArrayInputStream(packet));
+			root = doc.getDocumentElement();
+		} catch (SAXException e) {
+			System.out.println("Server: malformed packet from " + client.name);
+			return;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		final String type = root.getAttribute("type");
+		if ("auth-request".equals(type)) {
+			final Element authentication = getChild(root, "authentication");
+			authenticate(client, (authentication == null) ? null : authentication.getAttribute("username"));
+		} else if ("action".equals(type)) {
+			final Element action = getChild(root, "action");
+			if (action != null && client.row >= 0) {
+				processAction(client, action.getAttribute("id"), action.getAttribute("type"));
+			}
+		}
+	}
+
+	/** Authenticates given client, every agent is accepted. */
+	private void authenticate(Client client, String username) {
+		final boolean ok = username != null && !running && clients.size() < config.size && client.row < 0;
+		client.send(message("auth-response", "<authentication result=\"" + (ok ? "ok" : "fail") + "\"/>"), config.latency);
+		if (!ok) return;
+
+		client.name = username;
+		client.row = clients.size();
+		client.x = 1;
+		client.y = client.row + 1;
+		board[client.row] = client;
+		clients.add(client);
+
+		if (clients.size() == config.size) {
+			startSimulation();
+		}
+	}
+
+	/** Sends <tt>sim-start</tt> to all the agents and schedules the first step. */
+	private void startSimulation() {
+		running = true;
+		startMillis = System.currentTimeMillis();
+		final String simulationStart = message("sim-start", String.format(
+				"<simulation id=\"%s\" gsizex=\"%d\" gsizey=\"%d\" lineOfSight=\"1\" steps=\"%d\"/>",
+				SIMULATION_ID, config.size + 2, config.size + 2, config.steps));
+		for (Client client : clients) {
+			client.send(simulationStart, config.latency);
+		}
+		scheduleStep(0, config.stepInterval);
+	}
+
+	private void scheduleStep(final int nextStep, long delay) {
+		simulation.schedule(new Runnable() {
+			@Override
+			public void run() {
+				requestActions(nextStep);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/** Sends <tt>request-action</tt> to all the agents. */
+	private void requestActions(final int nextStep) {
+		step = nextStep;
+		stepCompleted = false;
+		responses = 0;
+		stepStartMillis = System.currentTimeMillis();
+		final long deadline = stepStartMillis + config.stepTimeout;
+
+		for (Client client : clients) {
+			client.action = null;
+			client.send(message("request-action", String.format(
+					"<perception id=\"%d\" step=\"%d\" posx=\"%d\" posy=\"%d\" cowsInCorral=\"0\" deadline=\"%d\"/>",
+					step, step, client.x, client.y, deadline)), config.latency);
+		}
+
+		simulation.schedule(new Runnable() {
+			@Override
+			public void run() {
+				completeStep(nextStep);
+			}
+		}, config.stepTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	/** Records an action of given client. */
+	private void processAction(Client client, String id, String action) {
+		if (stepCompleted || client.action != null || !String.valueOf(step).equals(id)) {
+			// late or duplicate action
+			return;
+		}
+		client.action = action;
+		if (++responses == clients.size()) {
+			completeStep(step);
+		}
+	}
+
+	/** Executes the actions of the agents and continues with the next step. */
+	private void completeStep(int completed) {
+		if (completed != step || stepCompleted) return;
+		stepCompleted = true;
+
+		boolean moved = false;
+		for (Client client : clients) {
+			if (client.action == null) {
+				missedActions++;
+			} else {
+				moved |= move(client, client.action);
+			}
+		}
+
+		stableSteps = (!moved && isSolution()) ? stableSteps + 1 : 0;
+		final boolean solved = config.endOnSolution && stableSteps >= config.stableSteps;
+		if (solved || step + 1 >= config.steps) {
+			endSimulation();
+		} else {
+			final long elapsed = System.currentTimeMillis() - stepStartMillis;
+			scheduleStep(step + 1, Math.max(0, config.stepInterval - elapsed));
+		}
+	}
+
+	/** Moves the client according to given action, the queens cannot leave the chessboard. */
+	private boolean move(Client client, String action) {
+		int dx = 0, dy = 0;
+		if (action.contains("east")) dx = 1;
+		if (action.contains("west")) dx = -1;
+		if (action.startsWith("north")) dy = -1;
+		if (action.startsWith("south")) dy = 1;
+
+		final int x = client.x + dx, y = client.y + dy;
+		if ((dx == 0 && dy == 0) || x < 1 || x > config.size || y < 1 || y > config.size) {
+			return false;
+		}
+		if (dy != 0) {
+			// the queens stay in their rows
+			if (board[y - 1] != null && board[y - 1] != client && board[y - 1].x == x) return false;
+			board[client.y - 1] = null;
+			board[y - 1] = client;
+		}
+		client.x = x;
+		client.y = y;
+		return true;
+	}
+
+	/** @return <tt>true</tt> IFF the queens are in a valid N-queen solution */
+	private boolean isSolution() {
+		final int n = config.size;
+		final boolean[] columns = new boolean[n];
+		final boolean[] diagonals = new boolean[2 * n];
+		final boolean[] antiDiagonals = new boolean[2 * n];
+		for (int row = 0; row < n; row++) {
+			if (board[row] == null) return false;
+			final int column = board[row].x - 1;
+			if (columns[column] || diagonals[column - row + n] || antiDiagonals[column + row]) return false;
+			columns[column] = diagonals[column - row + n] = antiDiagonals[column + row] = true;
+		}
+		return true;
+	}
+
+	/** Sends <tt>sim-end</tt> to all the agents and closes the connections. */
+	private void endSimulation() {
+		final boolean solved = isSolution() && stableSteps > 0;
+		final int steps = step + 1;
+		final String simulationEnd = message("sim-end", String.format(
+				"<sim-result id=\"%s\" result=\"%s\" steps=\"%d\"/>", SIMULATION_ID, solved ? "win" : "loss", steps));
+		for (Client client : clients) {
+			client.send(simulationEnd, config.latency);
+			client.closeAfter(config.latency);
+		}
+
+		final int[] columns = new int[config.size];
+		for (int row = 0; row < config.size; row++) {
+			columns[row] = (board[row] == null) ? -1 : board[row].x - 1;
+		}
+		result = new SimulationResult(steps, solved ? steps - stableSteps : -1, missedActions,
+				System.currentTimeMillis() - startMillis, columns);
+		System.out.println("Server: " + result);
+		finished.countDown();
+	}
+
+	/** @return a message of given type with given content */
+	private static String message(String type, String content) {
+		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><message type=\"" + type + "\" timestamp=\""
+				+ System.currentTimeMillis() + "\">" + content + "</message>";
+	}
+
+	/** @return the first child element of given name */
+	private static Element getChild(Element element, String name) {
+		final NodeList nl = element.getChildNodes();
+		for (int i = 0; i < nl.getLength(); i++) {
+			final Node n = nl.item(i);
+			if (n.getNodeType() == Node.ELEMENT_NODE && n.getNodeName().equalsIgnoreCase(name)) {
+				return (Element) n;
+			}
+		}
+		return null;
+	}
+
+	/** Connection of one agent. */
+	private class Client {
+
+		private final SocketChannel channel;
+		private SelectionKey key;
+
+		/** Data of the packet being received (selector thread). */
+		private byte[] frame = new byte[256];
+		private int frameLength = 0;
+
+		private final Queue<ByteBuffer> writes = new LinkedList<ByteBuffer>();
+		private boolean closeWhenFlushed = false;
+
+		// simulation state
+		private String name = "?";
+		private int row = -1, x, y;
+		private String action;
+
+		Client(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		void read(ByteBuffer buffer) throws IOException {
+			buffer.clear();
+			if (channel.read(buffer) == -1) {
+				close();
+				return;
+			}
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (b == 0) {
+					final byte[] packet = Arrays.copyOf(frame, frameLength);
+					frameLength = 0;
+					simulation.execute(new Runnable() {
+						@Override
+						public void run() {
+							processPacket(Client.this, packet);
+						}
+					});
+				} else {
+					if (frameLength == frame.length) {
+						frame = Arrays.copyOf(frame, 2 * frame.length);
+					}
+					frame[frameLength++] = b;
+				}
+			}
+		}
+
+		/** Sends given message after given delay. */
+		void send(String message, long delay) {
+			final byte[] data = message.getBytes(UTF8);
+			final ByteBuffer buffer = ByteBuffer.allocate(data.length + 1);
+			buffer.put(data).put((byte) 0).flip();
+			if (delay <= 0) {
+				enqueue(buffer);
+			} else {
+				simulation.schedule(new Runnable() {
+					@Override
+					public void run() {
+						enqueue(buffer);
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		/** Closes the connection after given delay, once all the messages are sent. */
+		void closeAfter(long delay) {
+			simulation.schedule(new Runnable() {
+				@Override
+				public void run() {
+					synchronized (writes) {
+						closeWhenFlushed = true;
+					}
+					pendingWrites.add(Client.this);
+					selector.wakeup();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+
+		private void enqueue(ByteBuffer buffer) {
+			synchronized (writes) {
+				writes.add(buffer);
+			}
+			pendingWrites.add(this);
+			selector.wakeup();
+		}
+
+		void flush() throws IOException {
+			synchronized (writes) {
+				ByteBuffer buffer;
+				while ((buffer = writes.peek()) != null) {
+					channel.write(buffer);
+					if (buffer.hasRemaining()) return;
+					writes.poll();
+				}
+				if (closeWhenFlushed) {
+					close();
+				} else {
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			}
+		}
+
+		void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Runs the server together with the agents in one JVM, the arguments are
+	 * the chessboard size, maximal number of steps, step timeout and latency
+	 * (in milliseconds). The other options are read from system properties.
+	 * The process exits with 0 if the agents find a solution.
+	 *
+	 * @see ServerConfig#fromSystemProperties()
+	 * @see RuntimeConfig#fromSystemProperties()
+	 */
+	public static void main(String[] args) throws Exception {
+		final ServerConfig config = ServerConfig.fromSystemProperties();
+		if (args.length > 0) config.size = Integer.parseInt(args[0]);
+		if (args.length > 1) config.steps = Integer.parseInt(args[1]);
+		if (args.length > 2) config.stepTimeout = Long.parseLong(args[2]);
+		if (args.length > 3) config.latency = Long.parseLong(args[3]);
+
+		final LocalMassimServer server = new LocalMassimServer(config);
+		server.start();
+		System.out.println("Server: listening on port " + server.getPort() + ", " + config);
+
+		final AgentRuntime runtime = StartAgents.startAgents("localhost", server.getPort(), config.size, RuntimeConfig.fromSystemProperties());
+		final SimulationResult result = server.awaitResult();
+		runtime.awaitTermination();
+		server.shutdown();
+		System.out.println(MessageMetrics.getDefault());
+
+		System.exit(result.isSolved() ? 0 : 1);
+	}
+}
@@ -0,0 +1,53 @@
+package massim.agent.server;
+
+/**
+ * Configuration of the local MASSim server.
+ */
+public class ServerConfig {
+
+	/** Port to listen on, 0 for any free port. */
+	public int port = 12300;
+
+	/** Size of the chessboard, i.e. the number of queens (agents). */
+	public int size = 8;
+	/** Maximal number of simulation steps. */
+	public int steps = 1000;
+
+	/** Time the agents have to respond to <tt>request-action</tt> (in milliseconds). */
+	public long stepTimeout = 1000;
+	/** Minimal period of the simulation steps (in milliseconds), 0 to step as soon as all agents respond. */
+	public long stepInterval = 0;
+	/** Latency added to every message sent to the agents (in milliseconds). */
+	public long latency = 0;
+
+	/** Whether to end the simulation once the queens hold a valid solution. */
+	public boolean endOnSolution = true;
+	/** The number of steps the solution must be held by not moving queens before ending the simulation. */
+	public int stableSteps = 15;
+
+	/**
+	 * Reads the configuration from system properties, i.e. <tt>massim.server.port</tt>,
+	 * <tt>massim.server.size</tt>, <tt>massim.server.steps</tt>, <tt>massim.server.stepTimeout</tt>,
+	 * <tt>massim.server.stepInterval</tt>, <tt>massim.server.latency</tt>,
+	 * <tt>massim.server.endOnSolution</tt> and <tt>massim.server.stableSteps</tt>.
+	 */
+	public static ServerConfig fromSystemProperties() {
+		final ServerConfig config = new ServerConfig();
+		config.port = Integer.getInteger("massim.server.port", config.port);
+		config.size = Integer.getInteger("massim.server.size", config.size);
+		config.steps = Integer.getInteger("massim.server.steps", config.steps);
+		config.stepTimeout = Long.getLong("massim.server.stepTimeout", config.stepTimeout);
+		config.stepInterval = Long.getLong("massim.server.stepInterval", config.stepInterval);
+		config.latency = Long.getLong("massim.server.latency", config.latency);
+		config.endOnSolution = Boolean.parseBoolean(System.getProperty("massim.server.endOnSolution", String.valueOf(config.endOnSolution)));
+		config.stableSteps = Integer.getInteger("massim.server.stableSteps", config.stableSteps);
+		return config;
+	}
+
+	@Override
+	public String toString() {
+		return "ServerConfig [port=" + port + ", size=" + size + ", steps=" + steps + ", stepTimeout=" + stepTimeout
+				+ ", stepInterval=" + stepInterval + ", latency=" + latency + ", endOnSolution=" + endOnSolution
+				+ ", stableSteps=" + stableSteps + "]";
+	}
+}
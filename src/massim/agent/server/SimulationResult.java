@@ -0,0 +1,63 @@
+package massim.agent.server;
+
+/**
+ * Result of a simulation run by the local MASSim server.
+ */
+public class SimulationResult {
+
+	/** The number of simulated steps. */
+	private final int steps;
+	/** The first step of the final solution, -1 if not solved. */
+	private final int solvedStep;
+	/** The number of actions which missed their deadline. */
+	private final int missedActions;
+	/** Duration of the simulation (in milliseconds). */
+	private final long durationMillis;
+	/** Final positions of the queens on the chessboard, indexed by row. */
+	private final int[] columns;
+
+	/** Constructor of the SimulationResult class. */
+	public SimulationResult(int steps, int solvedStep, int missedActions, long durationMillis, int[] columns) {
+		this.steps = steps;
+		this.solvedStep = solvedStep;
+		this.missedActions = missedActions;
+		this.durationMillis = durationMillis;
+		this.columns = columns;
+	}
+
+	/** @return the number of simulated steps */
+	public int getSteps() {
+		return steps;
+	}
+
+	/** @return <tt>true</tt> IFF the queens ended in a valid solution */
+	public boolean isSolved() {
+		return solvedStep >= 0;
+	}
+
+	/** @return the first step of the final solution, -1 if not solved */
+	public int getSolvedStep() {
+		return solvedStep;
+	}
+
+	/** @return the number of actions which missed their deadline */
+	public int getMissedActions() {
+		return missedActions;
+	}
+
+	/** @return duration of the simulation (in milliseconds) */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/** @return final columns of the queens (chessboard coordinates), indexed by row */
+	public int[] getColumns() {
+		return columns.clone();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SimulationResult [steps=%d, solved=%s, solvedStep=%d, missedActions=%d, duration=%dms]",
+				steps, isSolved(), solvedStep, missedActions, durationMillis);
+	}
+}
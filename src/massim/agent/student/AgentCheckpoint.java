@@ -0,0 +1,155 @@
+package massim.agent.student;
+
+import massim.agent.student.puzzle.Queen;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the solver state of the {@link MyQueenAgent}, i.e. the
+ * agent view, the queen, the no-good store, the dynamic constraints, the
+ * friends and the counters. A restarted agent restores the snapshot and
+ * rejoins the running search.
+ * <p/>
+ * The snapshot is encoded in a compact versioned binary form, see
+ * {@link CheckpointWriter} writing it to a file.
+ */
+public class AgentCheckpoint {
+
+	/** Version of the binary form, snapshots of other versions are ignored. */
+	public static final int VERSION = 1;
+
+	/** Magic number of the binary form, <tt>DCCP</tt>. */
+	private static final int MAGIC = 0x44434350;
+
+	/** The total number of agents in the system. */
+	public int size;
+	/** The queen of the agent. */
+	public Queen queen;
+	/** The positions of the queens in the agent view. */
+	public int[] view;
+	/** The no-good store of the agent. */
+	public Map<Integer, NoGood> noGoodStore = new LinkedHashMap<Integer, NoGood>();
+	/** Active dynamic constraints. */
+	public List<DomainConstraint> constraints = new ArrayList<DomainConstraint>();
+	/** Meta-data about agents' friends. */
+	public List<AgentMetadata> friends = new ArrayList<AgentMetadata>();
+	/** The number of the current restart and the counter used for termination detection. */
+	public int restart, messageCounter;
+
+	/** @return the file of the checkpoint of given agent */
+	public static File getFile(String directory, String username) {
+		return new File(directory, username + ".ckpt");
+	}
+
+	/** @return the snapshot in the binary form */
+	public byte[] encode() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + 8 * size);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(size);
+		queen.writeTo(out);
+		for (int position : view) {
+			out.writeInt(position);
+		}
+
+		out.writeInt(noGoodStore.size());
+		for (Map.Entry<Integer, NoGood> entry : noGoodStore.entrySet()) {
+			out.writeInt(entry.getKey());
+			final NoGood noGood = entry.getValue();
+			out.writeInt(noGood.size());
+			for (Map.Entry<Integer, Integer> position : noGood.getPositions().entrySet()) {
+				out.writeInt(position.getKey());
+				out.writeInt(position.getValue());
+			}
+			out.writeInt(noGood.getDependencies().size());
+			for (Integer dependency : noGood.getDependencies()) {
+				out.writeInt(dependency);
+			}
+		}
+
+		out.writeInt(constraints.size());
+		for (DomainConstraint constraint : constraints) {
+			out.writeInt(constraint.getId());
+			out.writeInt(constraint.getQueen());
+			out.writeInt(constraint.getPosition());
+			out.writeBoolean(constraint.isPinned());
+		}
+
+		out.writeInt(friends.size());
+		for (AgentMetadata friend : friends) {
+			out.writeUTF(friend.getName());
+			out.writeInt(friend.queen);
+			out.writeInt(friend.sent);
+			out.writeInt(friend.received);
+		}
+
+		out.writeInt(restart);
+		out.writeInt(messageCounter);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return the snapshot decoded from its binary form
+	 * @throws IOException if the data are corrupted or of another version
+	 */
+	public static AgentCheckpoint decode(byte[] data) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		if (in.readInt() != MAGIC) throw new IOException("not a checkpoint");
+		final int version = in.readInt();
+		if (version != VERSION) throw new IOException("unsupported checkpoint version " + version);
+
+		final AgentCheckpoint checkpoint = new AgentCheckpoint();
+		checkpoint.size = in.readInt();
+		checkpoint.queen = Queen.readFrom(in);
+		checkpoint.view = new int[checkpoint.size];
+		for (int i = 0; i < checkpoint.size; i++) {
+			checkpoint.view[i] = in.readInt();
+		}
+
+		final int nNoGoods = in.readInt();
+		for (int i = 0; i < nNoGoods; i++) {
+			final int value = in.readInt();
+			final NoGood noGood = new NoGood();
+			final int length = in.readInt();
+			for (int j = 0; j < length; j++) {
+				noGood.setPosition(in.readInt(), in.readInt());
+			}
+			final List<Integer> dependencies = new ArrayList<Integer>();
+			final int nDependencies = in.readInt();
+			for (int j = 0; j < nDependencies; j++) {
+				dependencies.add(in.readInt());
+			}
+			noGood.addDependencies(dependencies);
+			checkpoint.noGoodStore.put(value, noGood);
+		}
+
+		final int nConstraints = in.readInt();
+		for (int i = 0; i < nConstraints; i++) {
+			checkpoint.constraints.add(new DomainConstraint(in.readInt(), in.readInt(), in.readInt(), in.readBoolean()));
+		}
+
+		final int nFriends = in.readInt();
+		for (int i = 0; i < nFriends; i++) {
+			final AgentMetadata friend = new AgentMetadata(in.readUTF());
+			friend.queen = in.readInt();
+			friend.sent = in.readInt();
+			friend.received = in.readInt();
+			checkpoint.friends.add(friend);
+		}
+
+		checkpoint.restart = in.readInt();
+		checkpoint.messageCounter = in.readInt();
+		return checkpoint;
+	}
+}
@@ -22,6 +22,12 @@ public class AgentMetadata implements PuzzleConstants {
 	/** Position of the agent. */
 	public Position position;
 
+	/**
+	 * The numbers of the ABT messages sent to and received from the agent,
+	 * used to recover the termination detection after a restart.
+	 */
+	public int sent, received;
+
 	/** Constructor of the AgentMetadata class. */
 	public AgentMetadata(String name) {
 		this.name = name;
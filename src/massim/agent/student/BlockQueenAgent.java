@@ -0,0 +1,567 @@
+package massim.agent.student;
+
+import cz.agents.alite.communication.Message;
+import massim.agent.Action;
+import massim.agent.MASPerception;
+import massim.agent.MASQueenAgent;
+import massim.agent.Position;
+import massim.agent.student.puzzle.ChessBoard;
+import massim.agent.student.puzzle.PuzzleConstants;
+import massim.agent.student.utils.MessageData;
+import massim.agent.student.utils.MessageUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * MAS queen agent implementation using ABT over blocks of queens.
+ * <p/>
+ * The queens are clustered into blocks of <tt>k</tt> consecutive rows and
+ * every block is one ABT agent. The agent of the first row of a block (the
+ * leader) assigns positions to all the queens of the block by a local
+ * backtracking search, so only the leaders exchange the <tt>Ok?</tt> and
+ * <tt>NoGood</tt> messages. The other agents of the block (the followers)
+ * move to the positions sent by their leader in the <tt>target</tt> messages.
+ * The no-goods hold the positions of the queens, the no-goods received by a
+ * leader forbid a combination of the positions of its block.
+ */
+public class BlockQueenAgent extends MASQueenAgent implements PuzzleConstants {
+
+	private static final boolean INFO = true, DEBUG = false;
+
+	/** Threshold used in termination detection. */
+	private static final int TERMINATION_IDLE_THRESHOLD = 10;
+
+	/** Configuration of the solver. */
+	private final SolverConfig config;
+
+	/** The total number of agents in the system. */
+	private final int size;
+	/** The number of queens in a block. */
+	private final int blockSize;
+	/** The agents' chessboard, positions of the higher blocks and of the own block. */
+	private final ChessBoard chessBoard;
+
+	/** Meta-data about agents' friends. */
+	private final Map<String, AgentMetadata> friendMetadata;
+	/** Names of the agents by queen. */
+	private final String[] names;
+	/** The no-good store of the block. */
+	private final List<NoGood> noGoodStore;
+	/** Positions of the block forbidden by the valid no-goods. */
+	private final Set<BlockPositions> forbidden;
+	/** Flag indicating a valid no-good forbids any positions of the block. */
+	private boolean forbiddenAll;
+	/** Positions of the block probed in the forbidden positions. */
+	private BlockPositions probe;
+
+	/** Current state of the agent. */
+	private AgentState state;
+	/** Current position of the agent. */
+	private Position myPosition;
+	/** The queen (row) of the agent. */
+	private int myQueen;
+	/** The first and the last (exclusive) queen of the block. */
+	private int firstQueen, lastQueen;
+	/** The order of the positions tried by the queens of the block, indexed from the first queen. */
+	private int[][] order;
+	/** The positions last sent to the followers, indexed from the first queen. */
+	private int[] sentTargets;
+	/** The position the queen of the agent moves to. */
+	private int target;
+
+	/** Counters used for termination detection. */
+	private int messageCounter, idleCounter;
+	/** The number of the tokens created by the initiator, and the number when the last quiet token returned. */
+	private int waves, quietWave;
+	/** The number of the received messages seen by the last quiet token, -1 if none. */
+	private int quietReceived;
+
+	/** ABT messages received before the agent started working, processed once it works. */
+	private final List<Message> early;
+
+	/** Constructor of the BlockQueenAgent class. */
+	public BlockQueenAgent(String host, int port, String username, String password, int nAgents, SolverConfig config) {
+		super(host, port, username, password);
+		if (config.blockSize < 1) throw new IllegalArgumentException("blockSize=" + config.blockSize);
+		this.config = config;
+		size = nAgents;
+		blockSize = Math.min(config.blockSize, size);
+		chessBoard = new ChessBoard(size);
+		friendMetadata = new LinkedHashMap<String, AgentMetadata>(size);
+		names = new String[size];
+		noGoodStore = new LinkedList<NoGood>();
+		forbidden = new HashSet<BlockPositions>();
+		state = AgentState.initI;
+		myPosition = null;
+		myQueen = INVALID_QUEEN_POSITION;
+		target = INVALID_QUEEN_POSITION;
+		messageCounter = 0;
+		idleCounter = 0;
+		waves = 0;
+		quietWave = 0;
+		quietReceived = -1;
+		early = new ArrayList<Message>();
+	}
+
+	@Override
+	protected Action deliberate(MASPerception percept) {
+		// refresh agents' position
+		myPosition = new Position(percept.getPosX(), percept.getPosY());
+
+		processMessages();
+
+		// decide the next action
+		final Action action;
+		switch (state) {
+			case initI:
+			case initII:
+				action = doInit();
+				break;
+			case working:
+				idleCounter = 0;
+				action = doAbtWork();
+				break;
+			case idle:
+				idleCounter++;
+				if (isLeader()) detectTermination();
+				action = getNextAction();
+				break;
+			case finished:
+			default:
+				action = getNextAction();
+		}
+
+		if (isLeader() && state != AgentState.initI && state != AgentState.initII) {
+			sendTargets();
+		}
+		return action;
+	}
+
+	/** @return <tt>true</tt> IFF the agent is the leader of its block */
+	private boolean isLeader() {
+		return myQueen != INVALID_QUEEN_POSITION && myQueen == firstQueen;
+	}
+
+	/** Processing of the messages in agents' inbox. */
+	protected void processMessages() {
+		for (Message message : getNewMessages()) {
+			processMessage(message);
+		}
+	}
+
+	/** Processing of one received message. */
+	private void processMessage(Message message) {
+		// parse received data
+		MessageData<?> data = MessageUtils.parse(message);
+
+		// retrieve meta-data about the sender (friend agent)
+		AgentMetadata metadata = friendMetadata.get(message.getSender());
+		if (metadata == null) {
+			metadata = new AgentMetadata(message.getSender());
+			friendMetadata.put(message.getSender(), metadata);
+		}
+
+		String type = data.getType();
+		if (DEBUG) printDebug("MSG from Q" + ((metadata.queen == null) ? "?" : metadata.queen) + " [" + type + ": " + data.getData() + "]");
+
+		// processing of general messages
+		if ("myState".equals(type)) {
+			metadata.state = MessageUtils.getData(data);
+		} else if ("myPosition".equals(type)) {
+			metadata.position = MessageUtils.getData(data);
+		} else if ("myQueen".equals(type)) {
+			metadata.queen = MessageUtils.<Integer>getData(data);
+		} else if ("target".equals(type)) {
+			target = MessageUtils.<Integer>getData(data);
+		} else if (state == AgentState.initI || state == AgentState.initII) {
+			// a delayed agent, the others may be working already
+			early.add(message);
+			return;
+		}
+
+		processAbtMessage(data, metadata);
+	}
+
+	/** Processing of ABT messages. */
+	private void processAbtMessage(MessageData<?> data, AgentMetadata metadata) {
+		if (state != AgentState.idle && state != AgentState.working) {
+			// process ABT messages only if idle or working
+			return;
+		}
+
+		final String type = data.getType();
+		if ("Ok?".equals(type)) {
+			// update agents' context by the positions of the sender block
+			final int[] positions = MessageUtils.getData(data);
+			for (int i = 0; i < positions.length; i++) {
+				chessBoard.setPosition(metadata.queen + i, positions[i]);
+			}
+			state = AgentState.working;
+			messageCounter--;
+			metadata.received++;
+		} else if ("NoGood".equals(type)) {
+			// store the no-good if valid
+			final NoGood noGood = MessageUtils.getData(data);
+			if (noGood.verifyContext(chessBoard)) {
+				noGoodStore.add(noGood);
+				state = AgentState.working;
+			}
+			messageCounter--;
+			metadata.received++;
+		} else if ("token".equals(type)) {
+			// process termination token
+			final TerminationToken token = MessageUtils.getData(data);
+			processTerminationToken(token);
+		} else if ("terminate".equals(type)) {
+			// terminate the algorithm
+			terminateABT(MessageUtils.<Boolean>getData(data));
+		}
+	}
+
+	/** Agent initialization, establish the blocks. */
+	private Action doInit() {
+		if (myQueen == INVALID_QUEEN_POSITION) {
+			// determine agents' queen and block
+			myQueen = myPosition.getY() - 1;
+			firstQueen = myQueen - myQueen % blockSize;
+			lastQueen = Math.min(firstQueen + blockSize, size);
+			names[myQueen] = username;
+			printInfo("my queen is Q" + myQueen + ((myQueen == firstQueen) ? ", leader of Q" + firstQueen + "-Q" + (lastQueen - 1) : ""));
+			broadcast(MessageUtils.create("myQueen", myQueen));
+			broadcast(MessageUtils.create("myPosition", myPosition));
+		} else if (friendMetadata.size() == size - 1) {
+			if (state == AgentState.initI) {
+				int count = 0;
+				for (AgentMetadata metadata : friendMetadata.values()) {
+					if (metadata.queen != null) {
+						names[metadata.queen] = metadata.getName();
+						count++;
+					}
+				}
+				if (count == size - 1) {
+					if (isLeader()) {
+						initBlock();
+					}
+					state = AgentState.initII;
+					broadcast(MessageUtils.create("myState", AgentState.working));
+				}
+			} else {
+				// start working when all other agents are also ready
+				int count = 0;
+				for (AgentMetadata metadata : friendMetadata.values()) {
+					if (metadata.state == AgentState.working) count++;
+				}
+				if (count == size - 1) {
+					state = isLeader() ? AgentState.working : AgentState.idle;
+					processEarlyMessages();
+				}
+			}
+		}
+
+		return Action.SKIP;
+	}
+
+	/** Processes the ABT messages received before the agent started working. */
+	private void processEarlyMessages() {
+		final List<Message> messages = new ArrayList<Message>(early);
+		early.clear();
+		for (Message message : messages) {
+			processMessage(message);
+		}
+	}
+
+	/** Initializes the local search of the block. */
+	private void initBlock() {
+		order = new int[lastQueen - firstQueen][size];
+		for (int i = 0; i < order.length; i++) {
+			for (int p = 0; p < size; p++) {
+				order[i][p] = p;
+			}
+			if (config.randomOrdering) {
+				shuffle(order[i], config.createRandom(firstQueen + i));
+			}
+		}
+		sentTargets = new int[lastQueen - firstQueen];
+		Arrays.fill(sentTargets, INVALID_QUEEN_POSITION);
+		probe = new BlockPositions(new int[lastQueen - firstQueen]);
+	}
+
+	/** Performs ABT of the block leader (check of the agent view). */
+	private Action doAbtWork() {
+		// remove the no-goods with the context no longer valid
+		forbidden.clear();
+		forbiddenAll = false;
+		for (Iterator<NoGood> it = noGoodStore.iterator(); it.hasNext(); ) {
+			final NoGood noGood = it.next();
+			if (verifyHigherContext(noGood)) {
+				forbid(noGood);
+			} else {
+				it.remove();
+			}
+		}
+
+		if (!isBlockConsistent()) {
+			// search the positions of the block from scratch
+			clearBlock();
+			if (searchBlock(firstQueen)) {
+				sendOk();
+			} else {
+				// send no-good if unfeasible
+				final NoGood noGood = getNoGoodForBlock();
+				if (!noGood.isEmpty()) {
+					if (DEBUG) printDebug("sending no-good " + noGood + "\n" + chessBoard);
+					sendNoGood(noGood);
+				} else {
+					// empty no-good, there is no solution
+					broadcast(MessageUtils.create("terminate", false));
+					terminateABT(false);
+				}
+			}
+		}
+
+		if (state == AgentState.working) {
+			// the agent may have terminated the algorithm
+			state = AgentState.idle;
+		}
+		return getNextAction();
+	}
+
+	/** @return <tt>true</tt> IFF all the queens of the block have a position satisfying the constraints */
+	private boolean isBlockConsistent() {
+		for (int q = firstQueen; q < lastQueen; q++) {
+			final int position = chessBoard.getPosition(q);
+			if (position == INVALID_QUEEN_POSITION || !chessBoard.isConsistent(q, position)) {
+				return false;
+			}
+		}
+		return !isForbidden();
+	}
+
+	/**
+	 * Local backtracking search of the positions of the queens of the block,
+	 * starting with given queen.
+	 *
+	 * @return <tt>true</tt> IFF the positions are found
+	 */
+	private boolean searchBlock(int queen) {
+		if (queen == lastQueen) {
+			return !isForbidden();
+		}
+		final int[] positions = order[queen - firstQueen];
+		for (int position : positions) {
+			if (chessBoard.isConsistent(queen, position)) {
+				chessBoard.setPosition(queen, position);
+				if (searchBlock(queen + 1)) return true;
+			}
+		}
+		chessBoard.setPosition(queen, INVALID_QUEEN_POSITION);
+		return false;
+	}
+
+	/** Forbids the positions of the block of given valid no-good. */
+	private void forbid(NoGood noGood) {
+		final int[] positions = new int[lastQueen - firstQueen];
+		for (int q = firstQueen; q < lastQueen; q++) {
+			if (!noGood.hasPosition(q)) {
+				// the context in the higher blocks is not feasible
+				forbiddenAll = true;
+				return;
+			}
+			positions[q - firstQueen] = noGood.getPosition(q);
+		}
+		forbidden.add(new BlockPositions(positions));
+	}
+
+	/** @return <tt>true</tt> IFF the positions of the block are forbidden by a no-good */
+	private boolean isForbidden() {
+		if (forbiddenAll) return true;
+		for (int q = firstQueen; q < lastQueen; q++) {
+			probe.positions[q - firstQueen] = chessBoard.getPosition(q);
+		}
+		return forbidden.contains(probe);
+	}
+
+	/** @return <tt>true</tt> IFF the context of given no-good in the higher blocks is valid */
+	private boolean verifyHigherContext(NoGood noGood) {
+		for (int q = 0; q < firstQueen; q++) {
+			if (noGood.hasPosition(q) && noGood.getPosition(q) != chessBoard.getPosition(q)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Invalidates the positions of the queens of the block. */
+	private void clearBlock() {
+		for (int q = firstQueen; q < lastQueen; q++) {
+			chessBoard.setPosition(q, INVALID_QUEEN_POSITION);
+		}
+	}
+
+	/** @return a no-good (the positions of the higher blocks) for the block */
+	private NoGood getNoGoodForBlock() {
+		final NoGood noGood = new NoGood();
+		for (int q = 0; q < firstQueen; q++) {
+			final int position = chessBoard.getPosition(q);
+			if (position != INVALID_QUEEN_POSITION) {
+				noGood.setPosition(q, position);
+			}
+		}
+		return noGood;
+	}
+
+	/** Sends an <tt>Ok?</tt> messages to the leaders of the lower blocks. */
+	private void sendOk() {
+		final int[] positions = new int[lastQueen - firstQueen];
+		for (int q = firstQueen; q < lastQueen; q++) {
+			positions[q - firstQueen] = chessBoard.getPosition(q);
+		}
+		for (int leader = lastQueen; leader < size; leader += blockSize) {
+			sendMessage(names[leader], MessageUtils.create("Ok?", positions));
+			messageCounter++;
+		}
+	}
+
+	/** Sends a <tt>NoGood</tt> message to the leader of the parent block. */
+	private void sendNoGood(NoGood noGood) {
+		sendMessage(names[firstQueen - blockSize], MessageUtils.create("NoGood", noGood));
+		messageCounter++;
+	}
+
+	/** Sends the changed positions of the block to the followers. */
+	private void sendTargets() {
+		target = chessBoard.getPosition(myQueen);
+		for (int q = firstQueen + 1; q < lastQueen; q++) {
+			final int position = chessBoard.getPosition(q);
+			if (position != INVALID_QUEEN_POSITION && position != sentTargets[q - firstQueen]) {
+				sendMessage(names[q], MessageUtils.create("target", position));
+				sentTargets[q - firstQueen] = position;
+			}
+		}
+	}
+
+	/** Performs ABT termination detection. */
+	private void detectTermination() {
+		final boolean isInitiatorAgent = lastQueen == size;
+		if (isInitiatorAgent && idleCounter > TERMINATION_IDLE_THRESHOLD) {
+			// possible silence in the network, send new token
+			final String[] agentSequence = new String[(size + blockSize - 1) / blockSize];
+			for (int block = 0; block < agentSequence.length; block++) {
+				agentSequence[block] = names[block * blockSize];
+			}
+			final TerminationToken token = new TerminationToken(this, agentSequence, ++waves);
+			token.incrementCounter(messageCounter);
+			token.incrementReceivedCounter(getReceivedCount());
+			sendMessage(token.getNextAgent(this), MessageUtils.create("token", token));
+		}
+	}
+
+	/** Processing of received termination tokens. */
+	private void processTerminationToken(TerminationToken token) {
+		if (idleCounter > TERMINATION_IDLE_THRESHOLD) {
+			// only process tokens if idle
+			if (token.isInitiator(this)) {
+				// the token has returned
+				if (isQuiet(token)) {
+					// termination detected
+					broadcast(MessageUtils.create("terminate", true));
+					terminateABT(true);
+				}
+			} else {
+				// send the token further
+				token.incrementCounter(messageCounter);
+				token.incrementReceivedCounter(getReceivedCount());
+				sendMessage(token.getNextAgent(this), MessageUtils.create("token", token));
+			}
+		}
+	}
+
+	/**
+	 * Checks a returned token. The termination is detected by two quiet
+	 * tokens, the second one created after the first one returned and no
+	 * messages received in between, see {@link MyQueenAgent}.
+	 */
+	private boolean isQuiet(TerminationToken token) {
+		if (token.getMessageCounter() != 0) return false;
+		if (quietReceived == token.getReceivedCounter()) {
+			// an older token confirms nothing
+			return token.getWave() > quietWave;
+		}
+		quietReceived = token.getReceivedCounter();
+		quietWave = waves;
+		return false;
+	}
+
+	/** @return the number of ABT messages received from the friends */
+	private int getReceivedCount() {
+		int received = 0;
+		for (AgentMetadata metadata : friendMetadata.values()) {
+			received += metadata.received;
+		}
+		return received;
+	}
+
+	/** Terminates the ABT algorithm. */
+	private void terminateABT(boolean success) {
+		notifyFinished(success);
+		printInfo(success ? "the problem solution found" : "the problem has no solution");
+		broadcast(MessageUtils.create("myState", AgentState.finished));
+		broadcast(MessageUtils.create("myPosition", myPosition));
+		state = AgentState.finished;
+	}
+
+	/** @return next action for the agent */
+	private Action getNextAction() {
+		if (target == INVALID_QUEEN_POSITION) return Action.SKIP;
+		return ChessBoard.getAction(myPosition.getX(), target + 1);
+	}
+
+	/** Positions of the queens of a block. */
+	private static final class BlockPositions {
+
+		private final int[] positions;
+
+		BlockPositions(int[] positions) {
+			this.positions = positions;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(positions);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof BlockPositions && Arrays.equals(positions, ((BlockPositions) obj).positions);
+		}
+	}
+
+	/** Shuffles given positions. */
+	private static void shuffle(int[] positions, Random random) {
+		for (int i = positions.length - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int tmp = positions[i];
+			positions[i] = positions[j];
+			positions[j] = tmp;
+		}
+	}
+
+	/** Prints given message to STD-OUT if in INFO mode. */
+	protected void printInfo(String message) {
+		if (INFO) System.out.println(username + ": " + message);
+	}
+
+	/** Prints given message to STD-OUT if in DEBUG mode. */
+	protected void printDebug(String message) {
+		if (DEBUG) System.out.println(username + "(Q" + myQueen + "): " + message);
+	}
+}
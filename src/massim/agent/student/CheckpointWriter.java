@@ -0,0 +1,89 @@
+package massim.agent.student;
+
+import massim.agent.runtime.NamedThreadFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes the checkpoints of the agents in a background thread, so the
+ * deliberation only encodes the snapshot. A checkpoint replaced before
+ * being written is skipped, i.e. the writer never falls behind by more
+ * than one checkpoint per agent. The files are replaced atomically, so a
+ * crash never leaves a partially written checkpoint.
+ */
+public class CheckpointWriter {
+
+	/** The writer shared by all the agents of the JVM. */
+	private static final CheckpointWriter INSTANCE = new CheckpointWriter();
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("checkpoint-writer-"));
+	/** The latest checkpoints not written yet, by their files. */
+	private final ConcurrentHashMap<File, byte[]> pending = new ConcurrentHashMap<File, byte[]>();
+
+	private CheckpointWriter() {}
+
+	/** @return the writer shared by all the agents of the JVM */
+	public static CheckpointWriter getInstance() {
+		return INSTANCE;
+	}
+
+	/** Schedules writing of given checkpoint to given file. */
+	public void write(final File file, byte[] data) {
+		if (pending.put(file, data) != null) {
+			// the previous checkpoint is not written yet, replaced
+			return;
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final byte[] latest = pending.remove(file);
+				if (latest == null) return;
+				try {
+					final File directory = file.getAbsoluteFile().getParentFile();
+					if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("cannot create " + directory);
+					final File tmp = new File(file.getPath() + ".tmp");
+					final FileOutputStream out = new FileOutputStream(tmp);
+					try {
+						out.write(latest);
+					} finally {
+						out.close();
+					}
+					Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) {
+					System.out.println("cannot write the checkpoint " + file + ": " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/** Schedules deleting of given file, after the checkpoints scheduled so far. */
+	public void delete(final File file) {
+		pending.remove(file);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (file.exists() && !file.delete()) {
+					System.out.println("cannot delete the checkpoint " + file);
+				}
+			}
+		});
+	}
+
+	/** @return the checkpoint stored in given file, null if none or not readable */
+	public static AgentCheckpoint read(File file) {
+		if (!file.isFile()) return null;
+		try {
+			return AgentCheckpoint.decode(Files.readAllBytes(file.toPath()));
+		} catch (IOException e) {
+			System.out.println("ignoring the checkpoint " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+}
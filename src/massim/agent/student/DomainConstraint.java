@@ -0,0 +1,87 @@
+package massim.agent.student;
+
+import massim.agent.student.puzzle.PuzzleConstants;
+
+import java.io.Serializable;
+
+/**
+ * A unary constraint on the position of a queen added or removed at
+ * runtime, i.e. a blocked cell or a queen pinned to a cell.
+ */
+public class DomainConstraint implements PuzzleConstants, Serializable {
+
+	private static final long serialVersionUID = 4581943125620915362L;
+
+	/**
+	 * Pseudo identifier of the symmetry breaking, the no-goods derived from
+	 * the middle column rule depend on it, see {@link SolverConfig#symmetryBreaking}.
+	 */
+	public static final int SYMMETRY = Integer.MAX_VALUE;
+
+	/** Identifier of the constraint. */
+	private final int id;
+	/** The constrained queen. */
+	private final int queen;
+	/** The position (column) of the cell. */
+	private final int position;
+	/** Whether the queen is pinned to the cell, otherwise the cell is blocked. */
+	private final boolean pinned;
+
+	/** Constructor of the DomainConstraint class. */
+	public DomainConstraint(int id, int queen, int position, boolean pinned) {
+		this.id = id;
+		this.queen = queen;
+		this.position = position;
+		this.pinned = pinned;
+	}
+
+	/** @return a constraint blocking given cell */
+	public static DomainConstraint block(int id, int queen, int position) {
+		return new DomainConstraint(id, queen, position, false);
+	}
+
+	/** @return a constraint pinning given queen to given cell */
+	public static DomainConstraint pin(int id, int queen, int position) {
+		return new DomainConstraint(id, queen, position, true);
+	}
+
+	/** @return identifier of the constraint */
+	public int getId() {
+		return id;
+	}
+
+	/** @return the constrained queen */
+	public int getQueen() {
+		return queen;
+	}
+
+	/** @return the position (column) of the cell */
+	public int getPosition() {
+		return position;
+	}
+
+	/** @return <tt>true</tt> IFF the queen is pinned to the cell, otherwise the cell is blocked */
+	public boolean isPinned() {
+		return pinned;
+	}
+
+	/** @return the positions excluded from the domain of the queen */
+	public int[] getExcludedPositions(int size) {
+		if (!pinned) return new int[] {position};
+		final int[] positions = new int[size - 1];
+		for (int p = 0, i = 0; p < size; p++) {
+			if (p != position) positions[i++] = p;
+		}
+		return positions;
+	}
+
+	/** @return <tt>true</tt> IFF given position of the queen satisfies the constraint */
+	public boolean isSatisfied(int position) {
+		return pinned ? position == this.position : position != this.position;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("C%d:%s(Q%d=%d)", id, pinned ? "pin" : "block", queen, position);
+	}
+}
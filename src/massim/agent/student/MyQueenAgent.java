@@ -1,23 +1,46 @@
 package massim.agent.student;
 
 import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.content.Content;
 import massim.agent.Action;
 import massim.agent.MASPerception;
 import massim.agent.MASQueenAgent;
 import massim.agent.Position;
+import massim.agent.jfr.DeliberationEvent;
+import massim.agent.jfr.NoGoodEvent;
+import massim.agent.jfr.TokenEvent;
+import massim.agent.jfr.ValueChangeEvent;
+import massim.agent.jmx.AgentStatus;
+import massim.agent.student.csp.AbtSolver;
 import massim.agent.student.puzzle.ChessBoard;
+import massim.agent.student.puzzle.NQueensModel;
 import massim.agent.student.puzzle.PuzzleConstants;
 import massim.agent.student.puzzle.Queen;
 import massim.agent.student.utils.MessageData;
 import massim.agent.student.utils.MessageUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * MAS queen agent implementation using cooperative Asynchronous Backtracking (ABT).
+ * The agent drives the {@link AbtSolver} of its queen over the N-queen
+ * {@link NQueensModel}, i.e. establishes the order of the queens, exchanges
+ * the messages and detects the termination.
+ * <p/>
+ * The puzzle may change at runtime by the {@link DomainConstraint}s added and
+ * removed by the environment. The agents repair the current solution locally,
+ * only the no-goods derived from a removed constraint are discarded.
  */
 public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 
@@ -26,49 +49,158 @@ public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 	/** Threshold used in termination detection. */
 	private static final int TERMINATION_IDLE_THRESHOLD = 10;
 
+	/** Fraction of the step time budget reserved for the communication with the server. */
+	private static final double DEADLINE_RESERVE = 0.2;
+	/** Step deadline indicating unlimited time budget. */
+	private static final long NO_DEADLINE = AbtSolver.NO_DEADLINE;
+
+	/** Configuration of the solver. */
+	private final SolverConfig config;
+
 	/** The total number of agents in the system. */
 	private final int size;
+	/** The N-queen puzzle. */
+	private final NQueensModel model;
 	/** The agents' chessboard. */
 	private final ChessBoard chessBoard;
+	/** Whether the mirror symmetry is broken, until the first dynamic constraint, see {@link SolverConfig#symmetryBreaking}. */
+	private boolean symmetryBreaking;
 
 	/** Meta-data about agents' friends. */
 	private final Map<String, AgentMetadata> friendMetadata;
-	/** The no-good store of the agent. */
-	private final Map<Integer, NoGood> noGoodStore;
+	/** The friends of the children queens in the order of the friends, see {@link #collectChildren()}. */
+	private final List<AgentMetadata> children;
+	/** Active dynamic constraints by their identifiers. */
+	private final Map<Integer, DomainConstraint> constraints;
 
 	/** Current state of the agent. */
 	private AgentState state;
-	/** Current position of the agent. */
-	private Position myPosition;
+	/** Current position of the agent, kept as coordinates to refresh it without allocation. */
+	private int posX, posY;
 	/** A queen assigned to the agent. */
 	private Queen myQueen;
+	/** The ABT of the queen, null until the queen is known. */
+	private AbtSolver<NoGood> solver;
 
 	/** Counters used for termination detection. */
 	private int messageCounter, idleCounter;
+	/** The number of the tokens created by the initiator, and the number when the last quiet token returned. */
+	private int waves, quietWave;
+	/** The number of the received messages seen by the last quiet token, -1 if none. */
+	private int quietReceived;
+
+	/** Contents of the <tt>Ok?</tt> messages by the positions shifted by one, see {@link #getOkContent}. */
+	private final Content[] okContents;
+
+	/** Early ABT messages returned to processing, they precede the pending received messages. */
+	private final Deque<Message> backlog;
+	/** ABT messages received before the agent started working, processed once it works. */
+	private final List<Message> early;
+	/** Deadline of the current step deliberation (see System.nanoTime), NO_DEADLINE if unlimited. */
+	private long stepDeadline;
+
+	/** Random generator of the agent, derived from the solver seed. */
+	private Random random;
+	/** The number of the current restart (epoch), 0 before the first restart. */
+	private int restart;
+	/** Counters of the steps and of the received no-goods since the last restart. */
+	private int restartSteps, restartNoGoods;
+	/** Flag indicating the agent requested the next restart. */
+	private boolean restartRequested;
+
+	/** The solution cache, null if disabled. */
+	private SolutionCache cache;
+	/** The shortest no-goods received, cached for the next runs. */
+	private final List<NoGood> learned;
+
+	/** File of the checkpoints of the agent, null if disabled. */
+	private File checkpointFile;
+	/** The number of steps since the last checkpoint. */
+	private int checkpointSteps;
+	/** The numbers of the ABT messages sent to the friends before rejoining, null unless rejoining. */
+	private Map<String, Integer> rejoinSent;
+
+	/** Event of the moves of the queen, reused by the moves. */
+	private final ValueChangeEvent move = new ValueChangeEvent();
+	/** Emits the moves of the queen tried by the solver. */
+	private final AbtSolver.Listener moves = new AbtSolver.Listener() {
+		@Override
+		public void valueChanged(int from, int to) {
+			move.emit(username, myQueen.getNumber(), size, from, to);
+		}
+	};
+
+	/** Event of the deliberation, reused by the steps as <code>begin()</code> and <code>shouldCommit()</code> reset its timing. */
+	private final DeliberationEvent event = new DeliberationEvent();
+
+	/** State of the agent published for the JMX, null if disabled. */
+	private final AgentStatus status;
 
 	/** Constructor of the MyQueenAgent class. */
 	public MyQueenAgent(String host, int port, String username, String password, int nAgents) {
+		this(host, port, username, password, nAgents, new SolverConfig());
+	}
+
+	/** Constructor of the MyQueenAgent class. */
+	public MyQueenAgent(String host, int port, String username, String password, int nAgents, SolverConfig config) {
 		super(host, port, username, password);
+		this.config = config;
 		size = nAgents;
-		chessBoard = new ChessBoard(size);
+		model = new NQueensModel(size, config.symmetryBreaking);
+		chessBoard = model.createView();
+		symmetryBreaking = config.symmetryBreaking;
 		friendMetadata = new LinkedHashMap<String, AgentMetadata>(size);
-		noGoodStore = new LinkedHashMap<Integer, NoGood>(size);
+		children = new ArrayList<AgentMetadata>(size);
+		constraints = new LinkedHashMap<Integer, DomainConstraint>();
 		state = AgentState.initI;
-		myPosition = null;
+		posX = posY = 0;
 		myQueen = null;
+		solver = null;
 		messageCounter = 0;
 		idleCounter = 0;
+		waves = 0;
+		quietWave = 0;
+		quietReceived = -1;
+		okContents = new Content[size + 1];
+		backlog = new ArrayDeque<Message>();
+		early = new ArrayList<Message>();
+		stepDeadline = NO_DEADLINE;
+		random = null;
+		restart = 0;
+		restartSteps = 0;
+		restartNoGoods = 0;
+		restartRequested = false;
+		cache = null;
+		learned = new ArrayList<NoGood>();
+		checkpointFile = (config.checkpointDir == null) ? null : AgentCheckpoint.getFile(config.checkpointDir, username);
+		checkpointSteps = 0;
+		rejoinSent = null;
+		status = config.jmx ? new AgentStatus(this) : null;
+		if (status != null) {
+			status.register();
+		}
 	}
 
 	@Override
 	protected Action deliberate(MASPerception percept) {
-		final long t = System.currentTimeMillis();
+		final long t = System.nanoTime();
+		event.begin();
+
+		// determine the time budget of this step
+		final long budget = percept.getTimeBudget();
+		stepDeadline = (budget < 0) ? NO_DEADLINE : t + (long) (budget * (1 - DEADLINE_RESERVE) * 1000000L);
 
 		// refresh agents' position
-		myPosition = new Position(percept.getPosX(), percept.getPosY());
+		posX = percept.getPosX();
+		posY = percept.getPosY();
 
 		processMessages();
 
+		// request a restart from the root queen when out of budget
+		if (isRestartDue()) {
+			requestRestart();
+		}
+
 		// decide the next action
 		final Action action;
 		switch (state) {
@@ -81,7 +213,8 @@ public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 				action = doAbtWork();
 				break;
 			case idle:
-				idleCounter++;
+				// the agent is not idle while there are messages to process
+				idleCounter = (backlog.isEmpty() && getPendingSize() == 0) ? idleCounter + 1 : 0;
 				detectTermination();
 				action = getNextAction();
 				break;
@@ -90,84 +223,196 @@ public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 				action = getNextAction();
 		}
 
-		printVerbose("step=" + percept.getStep() +  " action=" + action + " t=" + (System.currentTimeMillis() - t));
+		// the snapshot is only encoded here, written in background
+		if (checkpointFile != null && (state == AgentState.idle || state == AgentState.working) && ++checkpointSteps >= config.checkpointSteps) {
+			checkpoint();
+		}
+
+		if (status != null) {
+			status.update(state.name(), getQueenNumber(), (myQueen == null) ? -1 : myQueen.getPosition(),
+					(solver == null) ? 0 : solver.getNoGoodStore().size(), messageCounter, idleCounter, System.nanoTime() - t);
+		}
+
+		event.complete(username, getQueenNumber(), size, percept.getStep(), state.name(), action.name());
+		if (VERBOSE) {
+			printVerbose("step=" + percept.getStep() +  " action=" + action + " t=" + (System.nanoTime() - t) / 1000000 + " backlog=" + (backlog.size() + getPendingSize()));
+		}
 		return action;
 	}
 
-	/** Processing of the messages in agents' inbox. */
+	/** @return <tt>true</tt> IFF there is time left in the current step */
+	private boolean hasTime() {
+		return stepDeadline == NO_DEADLINE || System.nanoTime() - stepDeadline < 0;
+	}
+
+	/**
+	 * Processing of the messages in agents' inbox. Processes as many messages
+	 * as fits into the time budget of the step (at least one), the rest is
+	 * carried over to the next step.
+	 */
 	protected void processMessages() {
-		final List<Message> messages = getNewMessages();
-		for (Message message : messages) {
-			// parse received data
-			MessageData data = MessageUtils.parse(message);
-
-			// retrieve meta-data about the sender (friend agent)
-			AgentMetadata metadata = friendMetadata.get(message.getSender());
-			if (metadata == null) {
-				metadata = new AgentMetadata(message.getSender());
-				friendMetadata.put(message.getSender(), metadata);
-			}
+		takeNewMessages();
+		Message message = nextMessage();
+		while (message != null) {
+			processMessage(message);
+			message = hasTime() ? nextMessage() : null;
+		}
+	}
 
-			String type = data.getType();
-			printDebug("MSG from Q" + ((metadata.queen == null) ? "?" : metadata.queen) + " [" + type + ": " + data.getData() + "]");
+	/** @return the next message to process, null if there is none */
+	private Message nextMessage() {
+		return backlog.isEmpty() ? pollMessage() : backlog.poll();
+	}
 
-			// processing of general messages
-			if ("myState".equals(type)) {
-				metadata.state = MessageUtils.getData(data);
-			} else if ("myPosition".equals(type)) {
-				metadata.position = MessageUtils.getData(data);
-			} else if ("myQueen".equals(type)) {
-				metadata.queen = MessageUtils.<Integer>getData(data);
-			}
+	/** Processing of one received message. */
+	private void processMessage(Message message) {
+		// parse received data
+		MessageData data = MessageUtils.parse(message);
+
+		// processing of the changes of the puzzle, sent by the environment
+		if ("addConstraint".equals(data.getType())) {
+			addConstraint(MessageUtils.<DomainConstraint>getData(data));
+			return;
+		} else if ("removeConstraint".equals(data.getType())) {
+			removeConstraint(MessageUtils.<Integer>getData(data));
+			return;
+		}
 
-			processAbtMessage(data, metadata);
+		// retrieve meta-data about the sender (friend agent)
+		AgentMetadata metadata = friendMetadata.get(message.getSender());
+		if (metadata == null) {
+			metadata = new AgentMetadata(message.getSender());
+			friendMetadata.put(message.getSender(), metadata);
 		}
+
+		String type = data.getType();
+		if (DEBUG) printDebug("MSG from Q" + ((metadata.queen == null) ? "?" : metadata.queen) + " [" + type + ": " + data.getData() + "]");
+
+		// processing of general messages
+		if ("myState".equals(type)) {
+			metadata.state = MessageUtils.getData(data);
+		} else if ("myPosition".equals(type)) {
+			metadata.position = MessageUtils.getData(data);
+		} else if ("myQueen".equals(type)) {
+			metadata.queen = MessageUtils.<Integer>getData(data);
+		} else if (state == AgentState.initI || (state == AgentState.initII && !"Ok?".equals(type))) {
+			// a delayed agent, the others may be working already
+			early.add(message);
+			return;
+		}
+
+		processAbtMessage(data, metadata);
 	}
 
 	/** Sends an <tt>Ok?</tt> messages. */
 	protected void sendOk() {
+		for (int i = 0; i < children.size(); i++) {
+			final AgentMetadata metadata = children.get(i);
+			sendMessage(metadata.getName(), getOkContent(myQueen.getPosition()));
+			messageCounter++;
+			metadata.sent++;
+		}
+	}
+
+	/** Collects the children from the friends once the hierarchy is established, iterated without allocation. */
+	private void collectChildren() {
+		children.clear();
 		for (AgentMetadata metadata : friendMetadata.values()) {
-			if (metadata.isChild) {
-				sendMessage(metadata.getName(), MessageUtils.create("Ok?", myQueen.getPosition()));
-				messageCounter++;
+			if (Boolean.TRUE.equals(metadata.isChild)) {
+				children.add(metadata);
 			}
 		}
 	}
 
+	/**
+	 * Returns the content of the <tt>Ok?</tt> message of given position, may
+	 * be {@link #INVALID_QUEEN_POSITION}. The contents are immutable, so
+	 * they are created once per position and shared by all the sent messages.
+	 */
+	private Content getOkContent(int position) {
+		Content content = okContents[position + 1];
+		if (content == null) {
+			content = MessageUtils.create("Ok?", position);
+			okContents[position + 1] = content;
+		}
+		return content;
+	}
+
 	/** Sends a <tt>NoGood</tt> messages. */
 	protected void sendNoGood(NoGood noGood) {
 		for (AgentMetadata metadata : friendMetadata.values()) {
 			if (metadata.isParent) {
 				sendMessage(metadata.getName(), MessageUtils.create("NoGood", noGood));
 				messageCounter++;
+				metadata.sent++;
 			}
 		}
 	}
 
 	/** Processing of ABT messages. */
 	private void processAbtMessage(MessageData data, AgentMetadata metadata) {
+		final String type = data.getType();
+		if (state == AgentState.initII && "Ok?".equals(type)) {
+			// a warm-started parent may start working sooner, keep its position
+			chessBoard.setPosition(metadata.queen, MessageUtils.<Integer>getData(data));
+			messageCounter--;
+			metadata.received++;
+			return;
+		}
 		if (state != AgentState.idle && state != AgentState.working) {
 			// process ABT messages only if idle or working
 			return;
 		}
 
-		final String type = data.getType();
+		if ("rejoin".equals(type)) {
+			// the agent restarted from a checkpoint, some messages were lost
+			if (metadata.isChild) {
+				sendMessage(metadata.getName(), getOkContent(myQueen.getPosition()));
+				messageCounter++;
+				metadata.sent++;
+			}
+			sendMessage(metadata.getName(), MessageUtils.create("rejoinAck", new int[] {metadata.sent, metadata.received}));
+			return;
+		} else if ("rejoinAck".equals(type)) {
+			completeRejoin(metadata, MessageUtils.<int[]>getData(data));
+			return;
+		}
+
 		if ("Ok?".equals(type)) {
 			// update agents' context
-			chessBoard.setPosition(metadata.queen, MessageUtils.<Integer>getData(data));
+			solver.receiveValue(metadata.queen, MessageUtils.<Integer>getData(data));
 			state = AgentState.working;
 			messageCounter--;
+			metadata.received++;
 		} else if ("NoGood".equals(type)) {
-			// verify received no-good
+			// apply received no-good if valid
 			final NoGood noGood = MessageUtils.getData(data);
-			if (noGood.verifyContext(chessBoard)) {
-				// apply the no-good
-				final int position = noGood.getPosition(myQueen.getNumber());
-				myQueen.markUnavailable(position);
-				noGoodStore.put(position, noGood.createNoGoodForQueen(myQueen));
+			final boolean accepted = solver.receiveNoGood(noGood);
+			NoGoodEvent.emit(username, myQueen.getNumber(), size, true, accepted, noGood.size(), noGood);
+			if (accepted) {
 				state = AgentState.working;
+				if (cache != null) {
+					learn(noGood);
+				}
+			}
+			restartNoGoods++;
+			messageCounter--;
+			metadata.received++;
+		} else if ("restartRequest".equals(type)) {
+			// a restart requested by some agent, ignore the outdated requests
+			if (MessageUtils.<Integer>getData(data) == restart) {
+				startRestart();
+			}
+			messageCounter--;
+			metadata.received++;
+		} else if ("restart".equals(type)) {
+			// restart the search of the coordinated restart
+			final int epoch = MessageUtils.<Integer>getData(data);
+			if (epoch > restart) {
+				restart(epoch);
 			}
 			messageCounter--;
+			metadata.received++;
 		} else if ("token".equals(type)) {
 			// process termination token
 			final TerminationToken token = MessageUtils.getData(data);
@@ -180,12 +425,33 @@ public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 
 	/** Agent initialization, establish agent hierarchy. */
 	private Action doInit() {
-		if (myQueen == null) {
+		if (myQueen == null && restoreCheckpoint()) {
+			// rejoined the running search
+			return getNextAction();
+		} else if (myQueen == null) {
 			// determine agents' queen
-			myQueen = new Queen(myPosition.getY() - 1, size);
+			myQueen = model.createVariable(posY - 1);
+			if (config.symmetryBreaking && !symmetryBreaking) {
+				// turned off by the constraints added before
+				myQueen.restoreSymmetry();
+			}
+			solver = new AbtSolver<NoGood>(myQueen, chessBoard, learned, moves);
+			random = config.createRandom(myQueen.getNumber());
+			if (config.randomOrdering) {
+				myQueen.shuffle(random);
+			}
+			for (DomainConstraint constraint : constraints.values()) {
+				if (constraint.getQueen() == myQueen.getNumber()) {
+					myQueen.exclude(constraint.getExcludedPositions(size));
+				}
+			}
+			cache = config.openCache();
+			if (cache != null) {
+				warmStart();
+			}
 			printInfo("my queen is Q" + myQueen.getNumber());
 			broadcast(MessageUtils.create("myQueen", myQueen.getNumber()));
-			broadcast(MessageUtils.create("myPosition", myPosition));
+			broadcast(MessageUtils.create("myPosition", new Position(posX, posY)));
 		} else if (friendMetadata.size() == size - 1) {
 			if (state == AgentState.initI) {
 				// establish agent hierarchy
@@ -198,15 +464,18 @@ public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 					}
 				}
 				if (count == size - 1) {
-					// print agent hierarchy
-					final StringBuilder parents = new StringBuilder("parents:");
-					final StringBuilder children = new StringBuilder("children:");
-					for (AgentMetadata metadata : friendMetadata.values()) {
-						if (metadata.isParent) parents.append(" Q").append(metadata.queen);
-						if (metadata.isChild) children.append(" Q").append(metadata.queen);
+					collectChildren();
+					if (DEBUG) {
+						// print agent hierarchy
+						final StringBuilder parents = new StringBuilder("parents:");
+						final StringBuilder children = new StringBuilder("children:");
+						for (AgentMetadata metadata : friendMetadata.values()) {
+							if (metadata.isParent) parents.append(" Q").append(metadata.queen);
+							if (metadata.isChild) children.append(" Q").append(metadata.queen);
+						}
+						printDebug(parents.toString());
+						printDebug(children.toString());
 					}
-					printDebug(parents.toString());
-					printDebug(children.toString());
 
 					state = AgentState.initII;
 					broadcast(MessageUtils.create("myState", AgentState.working));
@@ -219,6 +488,11 @@ public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 				}
 				if (count == size - 1) {
 					state = AgentState.working;
+					processEarlyMessages();
+					if (myQueen.hasPosition()) {
+						// warm-started, the children have to know the position
+						sendOk();
+					}
 				}
 			}
 		}
@@ -226,79 +500,401 @@ public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 		return Action.SKIP;
 	}
 
+	/** Returns the early ABT messages to the backlog, they precede the messages not processed yet. */
+	private void processEarlyMessages() {
+		for (int i = early.size() - 1; i >= 0; i--) {
+			backlog.addFirst(early.get(i));
+		}
+		early.clear();
+	}
+
 	/** Performs actual coordinated ABT (check of the agent view). */
 	private Action doAbtWork() {
-		// find & remove invalid no-goods
-		final List<Integer> nowAvailable = new LinkedList<Integer>();
-		for (Map.Entry<Integer, NoGood> entry : noGoodStore.entrySet()) {
-			if (!entry.getValue().verifyContext(chessBoard)) {
-				// context is no longer valid
-				nowAvailable.add(entry.getKey());
+		switch (solver.revise(stepDeadline)) {
+			case SUSPENDED:
+				// out of time, continue in the next step
+				return getNextAction();
+			case CHANGED:
+				sendOk();
+				break;
+			case INCONSISTENT:
+				// send no-good if unfeasible
+				final NoGood noGood = chessBoard.getNoGoodForQueen(myQueen);
+				noGood.addDependencies(getDependencies());
+				NoGoodEvent.emit(username, myQueen.getNumber(), size, false, true, noGood.size(), noGood);
+				if (!noGood.isEmpty()) {
+					if (DEBUG) printDebug("sending no-good " + noGood + "\n" + chessBoard);
+					sendNoGood(noGood);
+				} else {
+					// empty no-good, there is no solution
+					broadcast(MessageUtils.create("terminate", false));
+					terminateABT(false);
+				}
+				break;
+			default:
+				// still consistent, nothing to send
+		}
+
+		if (state == AgentState.working) {
+			// the agent may have terminated the algorithm
+			state = AgentState.idle;
+		}
+		return getNextAction();
+	}
+
+	/** @return key of the current puzzle in the solution cache */
+	private String getCacheKey() {
+		return SolutionCache.key(size, symmetryBreaking, constraints.values());
+	}
+
+	/** Starts from the cached solution of the puzzle, if any. */
+	private void warmStart() {
+		final SolutionCache.Entry entry = cache.get(getCacheKey());
+		if (entry == null) return;
+		learned.addAll(entry.getNoGoods(myQueen.getNumber()));
+		if (myQueen.moveTo(entry.getPosition(myQueen.getNumber()))) {
+			chessBoard.setPosition(myQueen);
+		}
+		if (DEBUG) printDebug("warm start with " + learned.size() + " no-goods");
+	}
+
+	/**
+	 * Remembers given received no-good for the solution cache, only the
+	 * shortest no-goods not derived from the dynamic constraints are kept.
+	 */
+	private void learn(NoGood noGood) {
+		if (!noGood.getDependencies().isEmpty() || learned.contains(noGood)) return;
+		learned.add(noGood);
+		if (learned.size() > config.cacheNoGoods) {
+			NoGood longest = noGood;
+			for (NoGood other : learned) {
+				if (other.size() > longest.size()) longest = other;
 			}
+			learned.remove(longest);
 		}
-		for (Integer value : nowAvailable) {
-			noGoodStore.remove(value);
-			myQueen.markAvailable(value);
+	}
+
+	/** @return identifiers of the dynamic constraints the current domain of the queen is derived from */
+	private Set<Integer> getDependencies() {
+		final Set<Integer> dependencies = new TreeSet<Integer>();
+		for (DomainConstraint constraint : constraints.values()) {
+			if (constraint.getQueen() == myQueen.getNumber()) {
+				dependencies.add(constraint.getId());
+			}
+		}
+		for (NoGood noGood : solver.getNoGoodStore().values()) {
+			dependencies.addAll(noGood.getDependencies());
 		}
+		if (symmetryBreaking && size % 2 == 1 && myQueen.getNumber() > 0 && chessBoard.getPosition(0) == size / 2) {
+			// the middle column rule may rule out the positions, see ChessBoard#setSymmetryBreaking
+			dependencies.add(DomainConstraint.SYMMETRY);
+		}
+		return dependencies;
+	}
 
-		// determine the queen position
-		boolean valid = myQueen.hasPosition() && chessBoard.checkConstraints();
-		if (!valid && myQueen.hasNextPosition()) {
-			for (int i = 0; i <= size; i++) {
-				myQueen.nextPosition();
-				chessBoard.setPosition(myQueen);
+	/**
+	 * Adds given dynamic constraint. The constrained queen leaves the excluded
+	 * positions, the rest of the search state stays valid, unless derived
+	 * from the symmetry breaking turned off by the first constraint.
+	 */
+	private void addConstraint(DomainConstraint constraint) {
+		if (constraints.put(constraint.getId(), constraint) != null) {
+			// a duplicate
+			return;
+		}
+		final boolean symmetric = symmetryBreaking;
+		disableSymmetryBreaking();
+		if (myQueen == null) {
+			// applied on the initialization
+			return;
+		}
+		if (DEBUG) printDebug("adding " + constraint);
+		if (constraint.getQueen() == myQueen.getNumber()) {
+			myQueen.exclude(constraint.getExcludedPositions(size));
+			chessBoard.setPosition(myQueen);
+			resume(true);
+		} else {
+			resume(symmetric);
+		}
+	}
 
-				// validate constraints
-				valid = myQueen.hasPosition() && chessBoard.checkConstraints();
-				if (valid) {
-					sendOk();
-					break;
-				}
+	/**
+	 * Turns the symmetry breaking off, the solutions of the constrained
+	 * puzzle may be all in the pruned half. The first queen gets its whole
+	 * domain back and the no-goods derived from the middle column rule are
+	 * discarded, see {@link DomainConstraint#SYMMETRY}.
+	 */
+	private void disableSymmetryBreaking() {
+		if (!symmetryBreaking) return;
+		symmetryBreaking = false;
+		chessBoard.setSymmetryBreaking(false);
+		if (myQueen == null) {
+			// the queen is created with the whole domain
+			return;
+		}
+		discardNoGoods(DomainConstraint.SYMMETRY);
+		if (myQueen.getNumber() == 0) {
+			myQueen.restoreSymmetry();
+			rebuildDomain();
+		}
+	}
+
+	/**
+	 * Removes given dynamic constraint. The no-goods derived from the
+	 * constraint are discarded, the freed positions become available again.
+	 */
+	private void removeConstraint(int id) {
+		final DomainConstraint constraint = constraints.remove(id);
+		if (constraint == null || myQueen == null) return;
+		if (DEBUG) printDebug("removing " + constraint);
+
+		boolean changed = discardNoGoods(id);
+		if (constraint.getQueen() == myQueen.getNumber()) {
+			myQueen.include(constraint.getExcludedPositions(size));
+			rebuildDomain();
+			changed = true;
+		}
+		resume(changed);
+	}
+
+	/**
+	 * Discards the no-goods derived from given dynamic constraint, the
+	 * positions ruled out by them become available again.
+	 *
+	 * @return <tt>true</tt> IFF some no-good was discarded
+	 */
+	private boolean discardNoGoods(int id) {
+		boolean discarded = false;
+		final Iterator<Map.Entry<Integer, NoGood>> entries = solver.getNoGoodStore().entrySet().iterator();
+		while (entries.hasNext()) {
+			final Map.Entry<Integer, NoGood> entry = entries.next();
+			if (entry.getValue().dependsOn(id)) {
+				entries.remove();
+				myQueen.markAvailable(entry.getKey());
+				discarded = true;
 			}
 		}
+		return discarded;
+	}
 
-		if (!valid) {
-			myQueen.invalidate();
+	/**
+	 * Rebuilds the domain of the queen, i.e. the positions not excluded by
+	 * the dynamic constraints and not ruled out by the no-good store.
+	 */
+	private void rebuildDomain() {
+		for (int p = 0; p < size; p++) {
+			myQueen.markAvailable(p);
+		}
+		for (Integer position : solver.getNoGoodStore().keySet()) {
+			myQueen.markUnavailable(position);
+		}
+		chessBoard.setPosition(myQueen);
+	}
 
-			// send no-good if unfeasible
-			final NoGood noGood = chessBoard.getNoGoodForQueen(myQueen);
-			if (!noGood.isEmpty()) {
-				printDebug("sending no-good " + noGood + "\n" + chessBoard);
-				sendNoGood(noGood);
-			} else {
-				// empty no-good, there is no solution
-				broadcast(MessageUtils.create("terminate", false));
-				terminateABT(false);
+	/**
+	 * Resumes the search after a change of the puzzle, even if already
+	 * terminated. An unassigned queen, e.g. the first one after no solution
+	 * was found, searches its rebuilt domain again.
+	 */
+	private void resume(boolean changed) {
+		if (state == AgentState.initI || state == AgentState.initII) {
+			// the search has not started yet
+			return;
+		}
+		if (!myQueen.hasPosition()) {
+			rebuildDomain();
+			changed = true;
+		}
+		if (changed) {
+			state = AgentState.working;
+			solver.contextChanged();
+		} else if (state == AgentState.finished) {
+			state = AgentState.idle;
+		}
+		idleCounter = 0;
+	}
+
+	/** Takes a snapshot of the solver state, see {@link AgentCheckpoint}. */
+	private void checkpoint() {
+		checkpointSteps = 0;
+		final AgentCheckpoint checkpoint = new AgentCheckpoint();
+		checkpoint.size = size;
+		checkpoint.queen = myQueen;
+		checkpoint.view = new int[size];
+		for (int i = 0; i < size; i++) {
+			checkpoint.view[i] = chessBoard.getPosition(i);
+		}
+		checkpoint.noGoodStore.putAll(solver.getNoGoodStore());
+		checkpoint.constraints.addAll(constraints.values());
+		checkpoint.friends.addAll(friendMetadata.values());
+		checkpoint.restart = restart;
+		checkpoint.messageCounter = messageCounter;
+		try {
+			CheckpointWriter.getInstance().write(checkpointFile, checkpoint.encode());
+		} catch (IOException e) {
+			printInfo("cannot encode the checkpoint: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Restores the solver state from the checkpoint of the agent if any, the
+	 * agent then rejoins the running search. The friends resend their
+	 * positions and report the numbers of the exchanged messages, so the
+	 * termination detection accounts for the messages lost in between.
+	 *
+	 * @return <tt>true</tt> IFF restored
+	 */
+	private boolean restoreCheckpoint() {
+		if (checkpointFile == null) return false;
+		final AgentCheckpoint checkpoint = CheckpointWriter.read(checkpointFile);
+		if (checkpoint == null || checkpoint.size != size || checkpoint.queen.getNumber() != posY - 1) return false;
+
+		myQueen = checkpoint.queen;
+		solver = new AbtSolver<NoGood>(myQueen, chessBoard, learned, moves);
+		random = config.createRandom(myQueen.getNumber());
+		for (int i = 0; i < size; i++) {
+			chessBoard.setPosition(i, checkpoint.view[i]);
+		}
+		solver.getNoGoodStore().putAll(checkpoint.noGoodStore);
+		for (DomainConstraint constraint : checkpoint.constraints) {
+			constraints.put(constraint.getId(), constraint);
+		}
+		if (!constraints.isEmpty()) {
+			// the queen of the checkpoint has the whole domain already
+			symmetryBreaking = false;
+			chessBoard.setSymmetryBreaking(false);
+		}
+		rejoinSent = new LinkedHashMap<String, Integer>();
+		for (AgentMetadata metadata : checkpoint.friends) {
+			metadata.isParent = myQueen.isParentQueen(metadata.queen);
+			metadata.isChild = myQueen.isChildQueen(metadata.queen);
+			metadata.state = AgentState.working;
+			friendMetadata.put(metadata.getName(), metadata);
+		}
+		collectChildren();
+		restart = checkpoint.restart;
+		messageCounter = checkpoint.messageCounter;
+		printInfo("my queen is Q" + myQueen.getNumber() + ", restored from the checkpoint");
+
+		// the children may have missed the position
+		state = AgentState.working;
+		processEarlyMessages();
+		solver.contextChanged();
+		sendOk();
+		for (AgentMetadata metadata : friendMetadata.values()) {
+			rejoinSent.put(metadata.getName(), metadata.sent);
+		}
+		broadcast(MessageUtils.create("rejoin"));
+		return true;
+	}
+
+	/**
+	 * Completes the rejoining with given friend, the messages lost since the
+	 * checkpoint and the messages sent after the checkpoint but forgotten by
+	 * the restart are accounted for. Given counters are the numbers of the
+	 * ABT messages the friend sent to and received from this agent.
+	 */
+	private void completeRejoin(AgentMetadata metadata, int[] counters) {
+		final Integer sent = (rejoinSent == null) ? null : rejoinSent.remove(metadata.getName());
+		if (sent == null) return;
+		final int lost = counters[0] - metadata.received;
+		final int forgotten = counters[1] - sent;
+		messageCounter += forgotten - lost;
+		metadata.received += lost;
+		metadata.sent += forgotten;
+		if (DEBUG) printDebug("rejoined " + metadata.getName() + ": lost=" + lost + " forgotten=" + forgotten);
+	}
+
+	/**
+	 * @return <tt>true</tt> IFF the budget of the current restart is
+	 * exhausted while the agent is still searching
+	 */
+	private boolean isRestartDue() {
+		if (!config.isRestarting() || restartRequested) return false;
+		if (state != AgentState.working && state != AgentState.idle) return false;
+
+		restartSteps++;
+		if (idleCounter > TERMINATION_IDLE_THRESHOLD) {
+			// the agent is quiet, a solution may be found already
+			return false;
+		}
+		final double scale = config.getRestartScale(restart);
+		return (config.restartSteps > 0 && restartSteps >= config.restartSteps * scale)
+				|| (config.restartNoGoods > 0 && restartNoGoods >= config.restartNoGoods * scale);
+	}
+
+	/** Requests the root queen to start the next restart. */
+	private void requestRestart() {
+		restartRequested = true;
+		if (myQueen.getNumber() == 0) {
+			startRestart();
+			return;
+		}
+		for (AgentMetadata metadata : friendMetadata.values()) {
+			if (metadata.queen == 0) {
+				sendMessage(metadata.getName(), MessageUtils.create("restartRequest", restart));
+				messageCounter++;
+				metadata.sent++;
 			}
 		}
+	}
 
-		state = AgentState.idle;
-		return getNextAction();
+	/** Starts the next restart, coordinated by the root queen. */
+	private void startRestart() {
+		broadcast(MessageUtils.create("restart", restart + 1));
+		messageCounter += size - 1;
+		for (AgentMetadata metadata : friendMetadata.values()) {
+			metadata.sent++;
+		}
+		restart(restart + 1);
+	}
+
+	/**
+	 * Restarts the search, the queen tries its positions in a new random
+	 * order from scratch. The restarts are coordinated by the root queen and
+	 * numbered, so concurrent requests result in a single restart. The agent
+	 * view and the no-goods are kept, the no-goods not valid any more are
+	 * removed by the following ABT work.
+	 */
+	private void restart(int epoch) {
+		if (DEBUG) printDebug("restart #" + epoch);
+		restart = epoch;
+		restartSteps = 0;
+		restartNoGoods = 0;
+		restartRequested = false;
+		myQueen.shuffle(random);
+		myQueen.invalidate();
+		chessBoard.setPosition(myQueen);
+		state = AgentState.working;
+		solver.contextChanged();
 	}
 
 	/** Performs ABT termination detection. */
 	private void detectTermination() {
 		final boolean isInitiatorAgent = myQueen.getNumber() == size - 1;
-		if (isInitiatorAgent && idleCounter > TERMINATION_IDLE_THRESHOLD) {
+		if (isInitiatorAgent && idleCounter > TERMINATION_IDLE_THRESHOLD && !resumeUnassigned()) {
 			// possible silence in the network, send new token
 			final String[] agentSequence = new String[size];
 			agentSequence[myQueen.getNumber()] = username;
 			for (AgentMetadata metadata : friendMetadata.values()) {
 				agentSequence[metadata.queen] = metadata.getName();
 			}
-			final TerminationToken token = new TerminationToken(this, agentSequence);
+			final TerminationToken token = new TerminationToken(this, agentSequence, ++waves);
 			token.incrementCounter(messageCounter);
+			token.incrementReceivedCounter(getReceivedCount());
+			TokenEvent.emit(username, myQueen.getNumber(), size, "created", token.getMessageCounter());
 			sendMessage(token.getNextAgent(this), MessageUtils.create("token", token));
 		}
 	}
 
 	/** Processing of received termination tokens. */
 	private void processTerminationToken(TerminationToken token) {
-		if (idleCounter > TERMINATION_IDLE_THRESHOLD) {
-			// only process tokens if idle
+		if (idleCounter > TERMINATION_IDLE_THRESHOLD && !resumeUnassigned()) {
+			// only process tokens if idle and assigned
 			if (token.isInitiator(this)) {
 				// the token has returned
-				if (token.getMessageCounter() == 0) {
+				TokenEvent.emit(username, myQueen.getNumber(), size, "returned", token.getMessageCounter());
+				if (isQuiet(token)) {
 					// termination detected
 					broadcast(MessageUtils.create("terminate", true));
 					terminateABT(true);
@@ -306,23 +902,90 @@ public class MyQueenAgent extends MASQueenAgent implements PuzzleConstants {
 			} else {
 				// send the token further
 				token.incrementCounter(messageCounter);
+				token.incrementReceivedCounter(getReceivedCount());
+				TokenEvent.emit(username, myQueen.getNumber(), size, "forwarded", token.getMessageCounter());
 				sendMessage(token.getNextAgent(this), MessageUtils.create("token", token));
 			}
 		}
 	}
 
+	/**
+	 * Resumes the search of an idle unassigned queen, e.g. its no-good was
+	 * obsolete at the receiver. A quiet network is no solution then, so the
+	 * queen sends no token and drops the received ones.
+	 *
+	 * @return <tt>true</tt> IFF the queen is unassigned
+	 */
+	private boolean resumeUnassigned() {
+		if (myQueen.hasPosition()) return false;
+		if (state == AgentState.idle) {
+			state = AgentState.working;
+			solver.contextChanged();
+			idleCounter = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks a returned token. A token visits the agents one after another,
+	 * so it may miss a message in flight, i.e. sent after the token visited
+	 * the receiver and received before the token visits the sender. The
+	 * termination is detected by two quiet tokens, i.e. with no messages in
+	 * flight, the second one created after the first one returned and no
+	 * messages received in between.
+	 */
+	private boolean isQuiet(TerminationToken token) {
+		if (token.getMessageCounter() != 0) return false;
+		if (quietReceived == token.getReceivedCounter()) {
+			// an older token confirms nothing
+			return token.getWave() > quietWave;
+		}
+		quietReceived = token.getReceivedCounter();
+		quietWave = waves;
+		return false;
+	}
+
+	/** @return the number of ABT messages received from the friends */
+	private int getReceivedCount() {
+		int received = 0;
+		for (AgentMetadata metadata : friendMetadata.values()) {
+			received += metadata.received;
+		}
+		return received;
+	}
+
 	/** Terminates the ABT algorithm. */
 	private void terminateABT(boolean success) {
+		if (success && cache != null) {
+			cache.record(getCacheKey(), size, myQueen.getNumber(), myQueen.getPosition(), learned);
+		}
 		notifyFinished(success);
 		printInfo(success ? "the problem solution found" : "the problem has no solution");
+		if (getMissedDeadlines() > 0) printInfo("missed deadlines: " + getMissedDeadlines());
+		if (restart > 0) printInfo("restarts: " + restart);
 		broadcast(MessageUtils.create("myState", AgentState.finished));
-		broadcast(MessageUtils.create("myPosition", myPosition));
+		broadcast(MessageUtils.create("myPosition", new Position(posX, posY)));
 		state = AgentState.finished;
+		if (checkpointFile != null) {
+			CheckpointWriter.getInstance().delete(checkpointFile);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		if (status != null) {
+			status.unregister();
+		}
+	}
+
+	/** @return number of the queen, -1 if not known yet */
+	private int getQueenNumber() {
+		return (myQueen == null) ? -1 : myQueen.getNumber();
 	}
 
 	/** @return next action for the agent */
 	private Action getNextAction() {
-		return ChessBoard.getAction(myPosition.getX(), myQueen.getPosition() + 1);
+		return ChessBoard.getAction(posX, myQueen.getPosition() + 1);
 	}
 
 	/** Prints given message to STD-OUT if in INFO mode. */
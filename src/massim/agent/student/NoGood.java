@@ -1,84 +1,98 @@
 package massim.agent.student;
 
-import massim.agent.student.puzzle.ChessBoard;
+import massim.agent.student.csp.Variable;
+import massim.agent.student.csp.VariableNoGood;
 import massim.agent.student.puzzle.PuzzleConstants;
-import massim.agent.student.puzzle.Queen;
 
-import java.io.Serializable;
-import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 /**
- * A class encapsulating a no-good.
+ * A class encapsulating a no-good, the positions assigned to the queens.
+ * The queens are the variables of the no-good, see {@link VariableNoGood}.
  */
-public class NoGood implements PuzzleConstants, Serializable {
+public class NoGood extends VariableNoGood implements PuzzleConstants {
 
 	private static final long serialVersionUID = 1219419392599087008L;
 
 	/**
-	 * The no-good, a map of positions assigned to queens. The map keys
-	 * correspond to a queen number and values to its position.
+	 * Identifiers of the dynamic constraints the no-good was derived from,
+	 * null if derived from the puzzle constraints only.
 	 */
-	private final Map<Integer, Integer> noGood;
+	private Set<Integer> dependencies;
 
-	/** Constructor of the NoGood class. */
-	public NoGood() {
-		noGood = new LinkedHashMap<Integer, Integer>();
-	}
-
-	/** @return <tt>true</tt> IFF this no-good is empty */
-	public boolean isEmpty() {
-		return noGood.isEmpty();
+	/** @return the positions assigned to the queens, by the queen numbers */
+	public Map<Integer, Integer> getPositions() {
+		return getValues();
 	}
 
 	/** @return <tt>true</tt> IFF given queen has assigned position */
 	public boolean hasPosition(int queen) {
-		return noGood.containsKey(queen);
+		return hasValue(queen);
 	}
 
 	/** @return a position assigned to given queen if any */
 	public int getPosition(int queen) {
-		return noGood.containsKey(queen) ? noGood.get(queen) : INVALID_QUEEN_POSITION;
+		return getValue(queen);
 	}
 
 	/** Assigns a position for given queen. */
 	public void setPosition(int queen, int position) {
-		noGood.put(queen, position);
+		setValue(queen, position);
 	}
 
-	/** @return <tt>true</tt> IFF verifies given context of this no-good */
-	public boolean verifyContext(ChessBoard chessBoard) {
-		for (Map.Entry<Integer, Integer> entry : noGood.entrySet()) {
-			if (chessBoard.getPosition(entry.getKey()) != entry.getValue()) {
-				return false;
-			}
+	/** Adds given dynamic constraints to the constraints this no-good was derived from. */
+	public void addDependencies(Collection<Integer> constraints) {
+		if (constraints.isEmpty()) return;
+		if (dependencies == null) {
+			dependencies = new TreeSet<Integer>();
 		}
-		return true;
+		dependencies.addAll(constraints);
+	}
+
+	/** @return identifiers of the dynamic constraints this no-good was derived from */
+	public Set<Integer> getDependencies() {
+		return (dependencies == null) ? Collections.<Integer>emptySet() : Collections.unmodifiableSet(dependencies);
 	}
 
-	/** @return new no-good using this no-good for given queen */
-	public NoGood createNoGoodForQueen(Queen queen) {
-		final int queenNumber = queen.getNumber();
+	/** @return <tt>true</tt> IFF this no-good was derived from given dynamic constraint */
+	public boolean dependsOn(int constraint) {
+		return dependencies != null && dependencies.contains(constraint);
+	}
+
+	/** @return new no-good using this no-good for given queen (variable) */
+	public NoGood createNoGoodForQueen(Variable queen) {
+		final int queenNumber = queen.getIndex();
 		final NoGood newNoGood = new NoGood();
-		for (Map.Entry<Integer, Integer> entry : noGood.entrySet()) {
+		for (Map.Entry<Integer, Integer> entry : getValues().entrySet()) {
 			if (entry.getKey() != queenNumber) {
 				newNoGood.setPosition(entry.getKey(), entry.getValue());
 			}
 		}
+		newNoGood.addDependencies(getDependencies());
 		return newNoGood;
 	}
 
+	@Override
+	protected String getName(int queen) {
+		return "Q" + queen;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return super.equals(o) && getDependencies().equals(((NoGood) o).getDependencies());
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode();
+	}
+
 	@Override
 	public String toString() {
-		final StringBuilder sb = new StringBuilder();
-		sb.append('[');
-		for (Map.Entry<Integer, Integer> entry : noGood.entrySet()) {
-			sb.append('Q').append(entry.getKey()).append('=').append(entry.getValue()).append(", ");
-		}
-		if (sb.length() > 1) {
-			sb.delete(sb.length() - 2, sb.length());
-		}
-		sb.append(']');
-		return sb.toString();
+		return (dependencies == null) ? super.toString() : super.toString() + " by " + dependencies;
 	}
 }
@@ -0,0 +1,265 @@
+package massim.agent.student;
+
+import massim.agent.student.puzzle.ChessBoard;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * On-disk cache of the solutions and of the learned no-goods, used to
+ * warm-start the agents solving the same puzzle again.
+ * <p/>
+ * The entries are keyed by the configuration of the puzzle, i.e. the size,
+ * the symmetry breaking and the dynamic constraints (see {@link #key}).
+ * An entry holds the final positions of all the queens and a bounded set
+ * of the no-goods received by every queen. The least recently used
+ * entries are evicted over the capacity.
+ * <p/>
+ * The file is memory-mapped when loaded and replaced atomically when
+ * saved, a file of a different version is ignored. The cache is shared by
+ * all the agents of the JVM using the same file (see {@link #open}), the
+ * agents report their positions one by one and the entry is stored once
+ * all the queens report a consistent solution.
+ */
+public class SolutionCache {
+
+	/** Version of the file format, files of other versions are ignored. */
+	public static final int VERSION = 1;
+
+	/** Magic number of the file, <tt>DCSC</tt>. */
+	private static final int MAGIC = 0x44435343;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** The caches opened in the JVM by their files. */
+	private static final Map<File, SolutionCache> OPEN = new HashMap<File, SolutionCache>();
+
+	private final File file;
+	/** The entries in the access order, i.e. the least recently used first. */
+	private final LinkedHashMap<String, Entry> entries;
+	/** The entries being reported by the agents. */
+	private final Map<String, Entry> pending = new HashMap<String, Entry>();
+
+	/** Returns the cache stored in given file, shared by all the agents of the JVM. */
+	public static synchronized SolutionCache open(String fileName, int capacity) {
+		final File file = new File(fileName).getAbsoluteFile();
+		SolutionCache cache = OPEN.get(file);
+		if (cache == null) {
+			cache = new SolutionCache(file, capacity);
+			cache.load();
+			OPEN.put(file, cache);
+		}
+		return cache;
+	}
+
+	/** Constructor of the SolutionCache class. */
+	private SolutionCache(File file, final int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("capacity=" + capacity);
+		this.file = file;
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SolutionCache.Entry> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/** @return the key of a puzzle configuration */
+	public static String key(int size, boolean symmetryBreaking, Collection<DomainConstraint> constraints) {
+		final TreeSet<String> cells = new TreeSet<String>();
+		for (DomainConstraint constraint : constraints) {
+			cells.add("Q" + constraint.getQueen() + (constraint.isPinned() ? "=" : "!=") + constraint.getPosition());
+		}
+		final StringBuilder sb = new StringBuilder("N=").append(size);
+		if (symmetryBreaking) sb.append(";sym");
+		for (String cell : cells) {
+			sb.append(';').append(cell);
+		}
+		return sb.toString();
+	}
+
+	/** @return the cached entry of given configuration if any, the entry becomes the most recently used */
+	public synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	/**
+	 * Records the final position and the learned no-goods of given queen.
+	 * The entry is stored once all the queens are recorded, if their
+	 * positions are a solution of the puzzle.
+	 */
+	public synchronized void record(String key, int size, int queen, int position, List<NoGood> noGoods) {
+		Entry entry = pending.get(key);
+		if (entry == null || entry.reported[queen]) {
+			// a new run, or an agent of another run of the same puzzle
+			entry = new Entry(size);
+			pending.put(key, entry);
+		}
+		entry.positions[queen] = position;
+		entry.noGoods.put(queen, new ArrayList<NoGood>(noGoods));
+		entry.reported[queen] = true;
+		if (++entry.count < size) return;
+
+		pending.remove(key);
+		final ChessBoard chessBoard = new ChessBoard(size);
+		for (int q = 0; q < size; q++) {
+			if (entry.positions[q] == ChessBoard.INVALID_QUEEN_POSITION) return;
+			chessBoard.setPosition(q, entry.positions[q]);
+		}
+		if (!chessBoard.checkConstraints()) return;
+
+		entries.put(key, entry);
+		try {
+			save();
+		} catch (IOException e) {
+			System.out.println("cannot save the solution cache " + file + ": " + e.getMessage());
+		}
+	}
+
+	/** Loads the cache from the file, if exists. */
+	private void load() {
+		if (!file.isFile()) return;
+		try {
+			final RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				final FileChannel channel = raf.getChannel();
+				final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+					System.out.println("ignoring the solution cache " + file + " of an unknown version");
+					return;
+				}
+				final int count = buffer.getInt();
+				for (int i = 0; i < count; i++) {
+					final String key = readString(buffer);
+					entries.put(key, readEntry(buffer));
+				}
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e) {
+			System.out.println("cannot load the solution cache " + file + ": " + e.getMessage());
+		} catch (RuntimeException e) {
+			// truncated or corrupted file
+			System.out.println("ignoring the corrupted solution cache " + file);
+			entries.clear();
+		}
+	}
+
+	/** Saves the cache to a temporary file which then replaces the file. */
+	private void save() throws IOException {
+		final File tmp = new File(file.getPath() + ".tmp");
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				final byte[] key = entry.getKey().getBytes(UTF_8);
+				out.writeInt(key.length);
+				out.write(key);
+				writeEntry(out, entry.getValue());
+			}
+		} finally {
+			out.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static Entry readEntry(ByteBuffer buffer) {
+		final Entry entry = new Entry(buffer.getInt());
+		for (int q = 0; q < entry.positions.length; q++) {
+			entry.positions[q] = buffer.getInt();
+		}
+		final int nQueens = buffer.getInt();
+		for (int i = 0; i < nQueens; i++) {
+			final int queen = buffer.getInt();
+			final List<NoGood> noGoods = new ArrayList<NoGood>();
+			final int nNoGoods = buffer.getInt();
+			for (int j = 0; j < nNoGoods; j++) {
+				final NoGood noGood = new NoGood();
+				final int length = buffer.getInt();
+				for (int k = 0; k < length; k++) {
+					noGood.setPosition(buffer.getInt(), buffer.getInt());
+				}
+				noGoods.add(noGood);
+			}
+			entry.noGoods.put(queen, noGoods);
+		}
+		return entry;
+	}
+
+	private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+		out.writeInt(entry.positions.length);
+		for (int position : entry.positions) {
+			out.writeInt(position);
+		}
+		out.writeInt(entry.noGoods.size());
+		for (Map.Entry<Integer, List<NoGood>> noGoods : entry.noGoods.entrySet()) {
+			out.writeInt(noGoods.getKey());
+			out.writeInt(noGoods.getValue().size());
+			for (NoGood noGood : noGoods.getValue()) {
+				out.writeInt(noGood.size());
+				for (Map.Entry<Integer, Integer> position : noGood.getPositions().entrySet()) {
+					out.writeInt(position.getKey());
+					out.writeInt(position.getValue());
+				}
+			}
+		}
+	}
+
+	/** A cached solution of a puzzle. */
+	public static class Entry {
+
+		/** The positions of the queens. */
+		private final int[] positions;
+		/** The learned no-goods by the queens receiving them. */
+		private final Map<Integer, List<NoGood>> noGoods = new LinkedHashMap<Integer, List<NoGood>>();
+
+		/** Flags and the number of the queens reported so far. */
+		private final boolean[] reported;
+		private int count = 0;
+
+		private Entry(int size) {
+			positions = new int[size];
+			Arrays.fill(positions, ChessBoard.INVALID_QUEEN_POSITION);
+			reported = new boolean[size];
+		}
+
+		/** @return the cached position of given queen */
+		public int getPosition(int queen) {
+			return positions[queen];
+		}
+
+		/** @return the cached no-goods received by given queen */
+		public List<NoGood> getNoGoods(int queen) {
+			final List<NoGood> list = noGoods.get(queen);
+			return (list == null) ? Collections.<NoGood>emptyList() : Collections.unmodifiableList(list);
+		}
+	}
+}
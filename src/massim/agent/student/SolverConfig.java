@@ -0,0 +1,131 @@
+package massim.agent.student;
+
+import java.util.Random;
+
+/**
+ * Configuration of the ABT solver of the {@link MyQueenAgent}.
+ * <p/>
+ * All the randomness of the solver derives from the seed, so a run is
+ * reproducible from its configuration.
+ */
+public class SolverConfig {
+
+	/** Available restart schedules. */
+	public enum Restarts {
+		/** No restarts. */
+		none,
+		/** Budgets following the Luby sequence 1, 1, 2, 1, 1, 2, 4, ... */
+		luby,
+		/** Budgets growing geometrically by the restart factor. */
+		geometric
+	}
+
+	/** Seed of the solver. */
+	public long seed = 0;
+	/** Whether the queens try their positions in a random order instead of left to right. */
+	public boolean randomOrdering = false;
+	/**
+	 * Whether to break the mirror symmetry of the chessboard, i.e. to search only a half of the solutions.
+	 * The dynamic constraints are not symmetric, the first one turns the symmetry breaking off.
+	 */
+	public boolean symmetryBreaking = false;
+
+	/**
+	 * The number of consecutive queens solved by one agent, see {@link BlockQueenAgent}.
+	 * The random ordering applies, the symmetry breaking and the restarts do not.
+	 */
+	public int blockSize = 1;
+
+	/** Restart schedule. */
+	public Restarts restarts = Restarts.none;
+	/** Base budget of the steps between restarts, 0 to disable. */
+	public int restartSteps = 100;
+	/** Base budget of the no-goods received by an agent between restarts, every agent counts its own, 0 to disable. */
+	public int restartNoGoods = 0;
+	/** Growth factor of the geometric schedule. */
+	public double restartFactor = 2.0;
+
+	/** File of the solution cache used to warm-start the agents (see {@link SolutionCache}), null to disable. */
+	public String cacheFile = null;
+	/** The maximal number of the puzzle configurations in the cache. */
+	public int cacheEntries = 64;
+	/** The maximal number of the no-goods cached for every queen, the shortest are kept. */
+	public int cacheNoGoods = 16;
+
+	/** Directory of the checkpoints of the agents (see {@link AgentCheckpoint}), null to disable. */
+	public String checkpointDir = null;
+	/** The number of steps between the checkpoints. */
+	public int checkpointSteps = 10;
+
+	/** Whether the agents register their MBeans, see {@link massim.agent.jmx.AgentStatus}. */
+	public boolean jmx = false;
+
+	/**
+	 * Reads the configuration from system properties, i.e. <tt>massim.solver.seed</tt>,
+	 * <tt>massim.solver.randomOrdering</tt>, <tt>massim.solver.symmetryBreaking</tt>, <tt>massim.solver.blockSize</tt>,
+	 * <tt>massim.solver.restarts</tt> (<tt>none</tt>, <tt>luby</tt> or <tt>geometric</tt>), <tt>massim.solver.restartSteps</tt>,
+	 * <tt>massim.solver.restartNoGoods</tt>, <tt>massim.solver.restartFactor</tt>, <tt>massim.solver.cacheFile</tt>,
+	 * <tt>massim.solver.cacheEntries</tt>, <tt>massim.solver.cacheNoGoods</tt>, <tt>massim.solver.checkpointDir</tt>
+	 * <tt>massim.solver.checkpointSteps</tt> and <tt>massim.solver.jmx</tt>.
+	 */
+	public static SolverConfig fromSystemProperties() {
+		final SolverConfig config = new SolverConfig();
+		config.seed = Long.getLong("massim.solver.seed", config.seed);
+		config.randomOrdering = Boolean.parseBoolean(System.getProperty("massim.solver.randomOrdering", String.valueOf(config.randomOrdering)));
+		config.symmetryBreaking = Boolean.parseBoolean(System.getProperty("massim.solver.symmetryBreaking", String.valueOf(config.symmetryBreaking)));
+		config.blockSize = Integer.getInteger("massim.solver.blockSize", config.blockSize);
+		config.restarts = Restarts.valueOf(System.getProperty("massim.solver.restarts", config.restarts.name()));
+		config.restartSteps = Integer.getInteger("massim.solver.restartSteps", config.restartSteps);
+		config.restartNoGoods = Integer.getInteger("massim.solver.restartNoGoods", config.restartNoGoods);
+		config.restartFactor = Double.parseDouble(System.getProperty("massim.solver.restartFactor", String.valueOf(config.restartFactor)));
+		config.cacheFile = System.getProperty("massim.solver.cacheFile", config.cacheFile);
+		config.cacheEntries = Integer.getInteger("massim.solver.cacheEntries", config.cacheEntries);
+		config.cacheNoGoods = Integer.getInteger("massim.solver.cacheNoGoods", config.cacheNoGoods);
+		config.checkpointDir = System.getProperty("massim.solver.checkpointDir", config.checkpointDir);
+		config.checkpointSteps = Integer.getInteger("massim.solver.checkpointSteps", config.checkpointSteps);
+		config.jmx = Boolean.parseBoolean(System.getProperty("massim.solver.jmx", String.valueOf(config.jmx)));
+		return config;
+	}
+
+	/** @return the solution cache, null if disabled */
+	public SolutionCache openCache() {
+		return (cacheFile == null) ? null : SolutionCache.open(cacheFile, cacheEntries);
+	}
+
+	/** @return random generator of given queen, derived from the seed */
+	public Random createRandom(int queen) {
+		return new Random(seed * 0x9E3779B97F4A7C15L + queen);
+	}
+
+	/** @return <tt>true</tt> IFF the solver restarts */
+	public boolean isRestarting() {
+		return restarts != Restarts.none && (restartSteps > 0 || restartNoGoods > 0);
+	}
+
+	/** @return multiplier of the base budgets for given restart (counted from 0) */
+	public double getRestartScale(int restart) {
+		switch (restarts) {
+			case luby:
+				return luby(restart + 1);
+			case geometric:
+				return Math.pow(restartFactor, restart);
+			case none:
+			default:
+				return Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/** @return i-th element of the Luby sequence (counted from 1) */
+	static long luby(int i) {
+		int k = 1;
+		while ((1L << k) - 1 < i) k++;
+		if ((1L << k) - 1 == i) return 1L << (k - 1);
+		return luby(i - (int) (1L << (k - 1)) + 1);
+	}
+
+	@Override
+	public String toString() {
+		return "SolverConfig [seed=" + seed + ", randomOrdering=" + randomOrdering + ", symmetryBreaking=" + symmetryBreaking + ", blockSize=" + blockSize + ", restarts=" + restarts
+				+ ", restartSteps=" + restartSteps + ", restartNoGoods=" + restartNoGoods + ", restartFactor=" + restartFactor + ", cacheFile=" + cacheFile + ", checkpointDir=" + checkpointDir + "]";
+	}
+}
@@ -19,12 +19,32 @@ public class TerminationToken implements PuzzleConstants, Serializable {
 
 	/** The message counter of this token. */
 	private int messageCounter;
+	/** The number of the messages received by the agents. */
+	private int receivedCounter;
+	/** Sequence number of this token of the initiator. */
+	private int wave;
 
 	/** Constructor of the TerminationToken class. */
 	public TerminationToken(MASQueenAgent initiator, String[] agentSequence) {
+		this(initiator, agentSequence, 0);
+	}
+
+	/** Constructor of the TerminationToken class. */
+	public TerminationToken(MASQueenAgent initiator, String[] agentSequence, int wave) {
 		this.initiator = initiator.getUsername();
 		this.agentSequence = agentSequence;
+		this.wave = wave;
 		messageCounter = 0;
+		receivedCounter = 0;
+	}
+
+	/** Constructor of the TerminationToken class, restores a token in transit. */
+	public TerminationToken(String initiator, String[] agentSequence, int wave, int messageCounter, int receivedCounter) {
+		this.initiator = initiator;
+		this.agentSequence = agentSequence;
+		this.wave = wave;
+		this.messageCounter = messageCounter;
+		this.receivedCounter = receivedCounter;
 	}
 
 	/** Increments the message counter by given value. */
@@ -37,6 +57,31 @@ public class TerminationToken implements PuzzleConstants, Serializable {
 		return messageCounter;
 	}
 
+	/** Increments the counter of the received messages by given value. */
+	public void incrementReceivedCounter(int value) {
+		receivedCounter += value;
+	}
+
+	/** @return the number of the messages received by the agents */
+	public int getReceivedCounter() {
+		return receivedCounter;
+	}
+
+	/** @return sequence number of this token of the initiator */
+	public int getWave() {
+		return wave;
+	}
+
+	/** @return name of the initiator agent */
+	public String getInitiator() {
+		return initiator;
+	}
+
+	/** @return the agent sequence of this token */
+	public String[] getAgentSequence() {
+		return agentSequence;
+	}
+
 	/** @return <tt>true</tt> IFF given agent is initiator of this token */
 	public boolean isInitiator(MASQueenAgent agent) {
 		return initiator.equals(agent.getUsername());
@@ -0,0 +1,63 @@
+package massim.agent.student.coloring;
+
+import massim.agent.student.csp.AgentView;
+import massim.agent.student.csp.Variable;
+
+/**
+ * The agent view of the graph coloring with the compiled checker of the
+ * coloring constraints, i.e. the number of the edges with both ends of the
+ * same color is updated by the assigned colors.
+ */
+public class ColoringView extends AgentView {
+
+	private static final long serialVersionUID = 6109583924786154937L;
+
+	/** The neighbours of the vertices. */
+	private final int[][] adjacency;
+	/** The number of the colors. */
+	private final int colors;
+	/** The number of the edges with both ends of the same color. */
+	private int conflicts;
+
+	/** Constructor of the ColoringView class. */
+	ColoringView(int[][] adjacency, int colors) {
+		super(adjacency.length);
+		this.adjacency = adjacency;
+		this.colors = colors;
+		conflicts = 0;
+	}
+
+	@Override
+	protected int getDomainSize(int variable) {
+		return colors;
+	}
+
+	@Override
+	protected void assigned(int vertex, int color) {
+		for (int neighbour : adjacency[vertex]) {
+			if (getValue(neighbour) == color) conflicts++;
+		}
+	}
+
+	@Override
+	protected void unassigned(int vertex, int color) {
+		for (int neighbour : adjacency[vertex]) {
+			if (getValue(neighbour) == color) conflicts--;
+		}
+	}
+
+	@Override
+	public boolean isConsistent() {
+		return conflicts == 0;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < size(); i++) {
+			if (i > 0) sb.append(' ');
+			sb.append((getValue(i) == Variable.UNASSIGNED) ? "?" : String.valueOf(getValue(i)));
+		}
+		return sb.append("] conflicts=").append(conflicts).toString();
+	}
+}
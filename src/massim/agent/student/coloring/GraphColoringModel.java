@@ -0,0 +1,100 @@
+package massim.agent.student.coloring;
+
+import massim.agent.student.csp.ConstraintModel;
+import massim.agent.student.csp.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The graph coloring as a constraint model, the variables are the vertices
+ * and the values their colors, the ends of every edge differ in color.
+ */
+public class GraphColoringModel implements ConstraintModel {
+
+	/** The neighbours of the vertices. */
+	private final int[][] adjacency;
+	/** The number of the colors. */
+	private final int colors;
+
+	/**
+	 * Constructor of the GraphColoringModel class.
+	 *
+	 * @param adjacency the neighbours of the vertices, the edges have to be listed at both ends
+	 * @param colors the number of the colors
+	 */
+	public GraphColoringModel(int[][] adjacency, int colors) {
+		if (adjacency.length < 1) throw new IllegalArgumentException("no vertices");
+		if (colors < 1) throw new IllegalArgumentException("colors=" + colors);
+		this.adjacency = adjacency;
+		this.colors = colors;
+	}
+
+	/**
+	 * Creates a random graph colorable by given number of colors, i.e. the
+	 * vertices are colored at random first and given ratio of the pairs of
+	 * the vertices of different colors are joined by the edges.
+	 *
+	 * @param vertices the number of the vertices
+	 * @param colors the number of the colors
+	 * @param density the probability of an edge between the vertices of different colors
+	 * @param seed seed of the random generator
+	 */
+	public static GraphColoringModel random(int vertices, int colors, double density, long seed) {
+		final Random random = new Random(seed);
+		final int[] hidden = new int[vertices];
+		for (int i = 0; i < vertices; i++) {
+			hidden[i] = random.nextInt(colors);
+		}
+		final List<List<Integer>> neighbours = new ArrayList<List<Integer>>(vertices);
+		for (int i = 0; i < vertices; i++) {
+			neighbours.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < vertices; i++) {
+			for (int j = i + 1; j < vertices; j++) {
+				if (hidden[i] != hidden[j] && random.nextDouble() < density) {
+					neighbours.get(i).add(j);
+					neighbours.get(j).add(i);
+				}
+			}
+		}
+		final int[][] adjacency = new int[vertices][];
+		for (int i = 0; i < vertices; i++) {
+			adjacency[i] = new int[neighbours.get(i).size()];
+			for (int k = 0; k < adjacency[i].length; k++) {
+				adjacency[i][k] = neighbours.get(i).get(k);
+			}
+		}
+		return new GraphColoringModel(adjacency, colors);
+	}
+
+	/** @return the number of the edges */
+	public int getEdges() {
+		int degrees = 0;
+		for (int[] neighbours : adjacency) {
+			degrees += neighbours.length;
+		}
+		return degrees / 2;
+	}
+
+	@Override
+	public int getVariables() {
+		return adjacency.length;
+	}
+
+	@Override
+	public Variable createVariable(int index) {
+		return new Variable(index, colors);
+	}
+
+	@Override
+	public ColoringView createView() {
+		return new ColoringView(adjacency, colors);
+	}
+
+	@Override
+	public String toString() {
+		return "coloring-" + adjacency.length + "x" + colors;
+	}
+}
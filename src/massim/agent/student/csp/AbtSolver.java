@@ -0,0 +1,216 @@
+package massim.agent.student.csp;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Asynchronous Backtracking (ABT) of one variable, independent of the
+ * constraint model and of the transport of the messages. The owner feeds
+ * the received values and no-goods to the solver, revises the value and
+ * sends the <tt>Ok?</tt> messages to the children or the no-good to the
+ * parent according to the result of the revision.
+ * <p/>
+ * The checks of the agent view take the compiled checker of the model, the
+ * solver itself only works with the int values of the variables.
+ *
+ * @param <N> type of the no-goods of the model
+ */
+public class AbtSolver<N extends VariableNoGood> {
+
+	/** Deadline of a revision indicating unlimited time budget. */
+	public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	/** Result of a revision of the value. */
+	public enum Revision {
+		/** The current value is consistent with the agent view. */
+		CONSISTENT,
+		/** A new consistent value was assigned, the children have to know it. */
+		CHANGED,
+		/** Out of time, the revision continues by the next call. */
+		SUSPENDED,
+		/** There is no consistent value, the variable is unassigned. */
+		INCONSISTENT
+	}
+
+	/** Listener of the changes of the value. */
+	public interface Listener {
+
+		/** Called for every change of the value, the values may be unassigned. */
+		void valueChanged(int from, int to);
+
+	}
+
+	/** The variable of the agent. */
+	private final Variable variable;
+	/** The agent view of the agent. */
+	private final AgentView view;
+	/** The no-good store, the no-goods by the values they rule out. */
+	private final Map<Integer, N> noGoodStore;
+	/** The entries of the no-good store, the view is created once to revise without allocation. */
+	private final Set<Map.Entry<Integer, N>> noGoodEntries;
+	/** No-goods learned by the previous runs, applied whenever valid. */
+	private final List<N> learned;
+	/** Listener of the value, may be null. */
+	private final Listener listener;
+
+	/** Scratch buffer of the values freed by the invalid no-goods. */
+	private final int[] freed;
+	/** The number of value revisions tried in the current context. */
+	private int revisions;
+	/** Flag indicating the agent view or the no-good store changed since the last revision. */
+	private boolean contextChanged;
+
+	/**
+	 * Constructor of the AbtSolver class.
+	 *
+	 * @param variable the variable of the agent
+	 * @param view the agent view, holding the value of the variable as well
+	 * @param learned the no-goods learned by the previous runs, may be extended by the owner
+	 * @param listener listener of the value, may be null
+	 */
+	public AbtSolver(Variable variable, AgentView view, List<N> learned, Listener listener) {
+		this.variable = variable;
+		this.view = view;
+		this.learned = learned;
+		this.listener = listener;
+		noGoodStore = new LinkedHashMap<Integer, N>(variable.getDomainSize());
+		noGoodEntries = noGoodStore.entrySet();
+		freed = new int[variable.getDomainSize()];
+		revisions = 0;
+		contextChanged = false;
+	}
+
+	/** @return the variable of the agent */
+	public Variable getVariable() {
+		return variable;
+	}
+
+	/** @return the agent view */
+	public AgentView getView() {
+		return view;
+	}
+
+	/**
+	 * @return the no-good store, the no-goods by the values they rule out,
+	 * the value of the variable is not a part of the context
+	 */
+	public Map<Integer, N> getNoGoodStore() {
+		return noGoodStore;
+	}
+
+	/** Marks the context changed, e.g. by a change of the domain, the revisions start over. */
+	public void contextChanged() {
+		contextChanged = true;
+	}
+
+	/** Updates the agent view by the value received from given variable. */
+	public void receiveValue(int sender, int value) {
+		view.setValue(sender, value);
+		contextChanged = true;
+	}
+
+	/**
+	 * Applies given received no-good if its context is the current agent
+	 * view, the value it rules out becomes unavailable.
+	 *
+	 * @return <tt>true</tt> IFF accepted
+	 */
+	public boolean receiveNoGood(N noGood) {
+		if (!noGood.verifyContext(view)) return false;
+		final int value = noGood.getValue(variable.getIndex());
+		variable.markUnavailable(value);
+		noGoodStore.put(value, noGood);
+		contextChanged = true;
+		return true;
+	}
+
+	/**
+	 * Revises the value of the variable, the no-goods not valid in the
+	 * current agent view are removed first. The values are tried until a
+	 * consistent one is found or all the values are tried, at least one
+	 * value is tried within given deadline (see System.nanoTime).
+	 */
+	public Revision revise(long deadline) {
+		// find & remove invalid no-goods
+		int nowAvailable = 0;
+		if (!noGoodStore.isEmpty()) {
+			for (Map.Entry<Integer, N> entry : noGoodEntries) {
+				if (!entry.getValue().verifyContext(view, variable)) {
+					// context is no longer valid
+					freed[nowAvailable++] = entry.getKey();
+				}
+			}
+		}
+		for (int i = 0; i < nowAvailable; i++) {
+			noGoodStore.remove(freed[i]);
+			variable.markAvailable(freed[i]);
+			contextChanged = true;
+		}
+
+		// apply the learned no-goods valid in the current context
+		for (int i = 0; i < learned.size(); i++) {
+			final N noGood = learned.get(i);
+			final int value = noGood.getValue(variable.getIndex());
+			if (!noGoodStore.containsKey(value) && noGood.verifyContext(view, variable)) {
+				variable.markUnavailable(value);
+				noGoodStore.put(value, noGood);
+				contextChanged = true;
+			}
+		}
+
+		// the revisions tried in a different context do not count
+		if (contextChanged) {
+			revisions = 0;
+			contextChanged = false;
+		}
+
+		// determine the value
+		boolean valid = variable.hasValue() && view.isConsistent();
+		boolean changed = false;
+		if (!valid && variable.hasNextValue()) {
+			final int domainSize = variable.getDomainSize();
+			while (revisions <= domainSize) {
+				if (revisions > 0 && !hasTime(deadline)) {
+					// out of time, continue by the next revision
+					return Revision.SUSPENDED;
+				}
+				revisions++;
+				final int from = variable.getValue();
+				variable.nextValue();
+				view.setValue(variable.getIndex(), variable.getValue());
+				if (from != variable.getValue() && listener != null) {
+					listener.valueChanged(from, variable.getValue());
+				}
+
+				// validate constraints
+				valid = variable.hasValue() && view.isConsistent();
+				if (valid) {
+					changed = true;
+					break;
+				}
+			}
+		}
+		revisions = 0;
+
+		if (valid) {
+			return changed ? Revision.CHANGED : Revision.CONSISTENT;
+		}
+		if (variable.hasValue() && listener != null) {
+			listener.valueChanged(variable.getValue(), Variable.UNASSIGNED);
+		}
+		variable.invalidate();
+		return Revision.INCONSISTENT;
+	}
+
+	/** @return the no-good of the variable, i.e. the agent view without the variable */
+	public VariableNoGood getNoGood() {
+		return view.getNoGood(variable.getIndex());
+	}
+
+	/** @return <tt>true</tt> IFF there is time left before given deadline */
+	private static boolean hasTime(long deadline) {
+		return deadline == NO_DEADLINE || System.nanoTime() - deadline < 0;
+	}
+}
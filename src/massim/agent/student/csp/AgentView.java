@@ -0,0 +1,89 @@
+package massim.agent.student.csp;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The agent view, i.e. the values of the variables known to an agent, with
+ * a compiled checker of the constraints among them. The checker of a model
+ * keeps its counters up to date as the values are assigned, so the check
+ * of the whole view takes a constant time instead of a scan of all the
+ * pairs of the variables.
+ */
+public abstract class AgentView implements Serializable {
+
+	private static final long serialVersionUID = -4217603718095281547L;
+
+	/** The values of the variables. */
+	private final int[] values;
+
+	/** Constructor of the AgentView class. */
+	protected AgentView(int variables) {
+		if (variables < 1) throw new IllegalArgumentException("variables=" + variables);
+		values = new int[variables];
+		Arrays.fill(values, Variable.UNASSIGNED);
+	}
+
+	/** @return the number of the variables */
+	public int size() {
+		return values.length;
+	}
+
+	/** @return value of given variable */
+	public int getValue(int variable) {
+		return values[variable];
+	}
+
+	/** Sets value of given variable, may be {@link Variable#UNASSIGNED}. */
+	public void setValue(int variable, int value) {
+		if (value != Variable.UNASSIGNED && (value < 0 || value >= getDomainSize(variable))) {
+			throw new IllegalArgumentException("invalid value " + value + " of " + variable);
+		}
+		final int old = values[variable];
+		if (old == value) return;
+		if (old != Variable.UNASSIGNED) {
+			values[variable] = Variable.UNASSIGNED;
+			unassigned(variable, old);
+		}
+		if (value != Variable.UNASSIGNED) {
+			assigned(variable, value);
+			values[variable] = value;
+		}
+	}
+
+	/** Unassigns all the variables. */
+	public void clear() {
+		for (int i = 0; i < values.length; i++) {
+			setValue(i, Variable.UNASSIGNED);
+		}
+	}
+
+	/** @return a no-good of given variable, i.e. the values of the other assigned variables */
+	public VariableNoGood getNoGood(int variable) {
+		final VariableNoGood noGood = createNoGood();
+		for (int i = 0; i < values.length; i++) {
+			if (i != variable && values[i] != Variable.UNASSIGNED) {
+				noGood.setValue(i, values[i]);
+			}
+		}
+		return noGood;
+	}
+
+	/** @return new empty no-good of the model */
+	protected VariableNoGood createNoGood() {
+		return new VariableNoGood();
+	}
+
+	/** @return the size of the domain of given variable */
+	protected abstract int getDomainSize(int variable);
+
+	/** Updates the checker by given variable assigned given value, the other variables already have their values. */
+	protected abstract void assigned(int variable, int value);
+
+	/** Updates the checker by given variable no longer having given value. */
+	protected abstract void unassigned(int variable, int value);
+
+	/** @return <tt>true</tt> IFF the assigned variables satisfy all the constraints */
+	public abstract boolean isConsistent();
+
+}
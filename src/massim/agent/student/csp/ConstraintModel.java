@@ -0,0 +1,18 @@
+package massim.agent.student.csp;
+
+/**
+ * A constraint model of a distributed CSP over int variables, the
+ * variables are indexed <tt>0..n-1</tt> and ordered by their indices.
+ */
+public interface ConstraintModel {
+
+	/** @return the number of the variables */
+	int getVariables();
+
+	/** @return new variable of given index, its domain possibly restricted by the model */
+	Variable createVariable(int index);
+
+	/** @return new agent view with the checker of the constraints of the model */
+	AgentView createView();
+
+}
@@ -0,0 +1,258 @@
+package massim.agent.student.csp;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A variable of a distributed constraint satisfaction problem owned by one
+ * agent, i.e. its domain of the values <tt>0..n-1</tt>, the order in which
+ * the values are tried and the current value.
+ * <p/>
+ * The variables are totally ordered by their indices, a variable receives
+ * the values of the preceding variables and sends its no-goods to the
+ * directly preceding variable.
+ */
+public class Variable implements Serializable {
+
+	private static final long serialVersionUID = 3870412695204416853L;
+
+	/** Indicator of an unassigned variable. */
+	public static final int UNASSIGNED = -1;
+
+	/** The index of the variable. */
+	private final int index;
+
+	/** The domain, available values. */
+	private final boolean[] domain;
+	/** Values excluded from the domain, the number of exclusions of every value. */
+	private final int[] excluded;
+
+	/** The order in which the values are tried, i.e. values by rank. */
+	private final int[] order;
+	/** Ranks of the values in the order. */
+	private final int[] rank;
+
+	/** Current value of the variable. */
+	private int value;
+	/** Previous value of the variable. */
+	private int previous;
+
+	/** Constructor of the Variable class. */
+	public Variable(int index, int domainSize) {
+		if (domainSize < 1) throw new IllegalArgumentException("domainSize=" + domainSize);
+		if (index < 0) throw new IllegalArgumentException("index=" + index);
+		this.index = index;
+		domain = new boolean[domainSize];
+		Arrays.fill(domain, true);
+		excluded = new int[domainSize];
+		order = new int[domainSize];
+		rank = new int[domainSize];
+		for (int v = 0; v < domainSize; v++) {
+			order[v] = v;
+			rank[v] = v;
+		}
+		invalidate();
+	}
+
+	/**
+	 * Shuffles the order in which the values are tried, the values are
+	 * tried in the ascending order by default.
+	 */
+	public void shuffle(Random random) {
+		for (int i = order.length - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		for (int r = 0; r < order.length; r++) {
+			rank[order[r]] = r;
+		}
+	}
+
+	/** @return the index of the variable */
+	public int getIndex() {
+		return index;
+	}
+
+	/** @return the number of the values of the complete domain */
+	public int getDomainSize() {
+		return domain.length;
+	}
+
+	/** Unassigns the variable. */
+	public void invalidate() {
+		value = UNASSIGNED;
+		previous = UNASSIGNED;
+	}
+
+	/** Marks given value as unavailable, the variable is unassigned if it has the value. */
+	public void markUnavailable(int v) {
+		if (v >= 0 && v < domain.length) {
+			domain[v] = false;
+			value = (value == v) ? UNASSIGNED : value;
+		}
+	}
+
+	/** Marks given values as unavailable. */
+	public void markUnavailable(int... values) {
+		for (int v : values) {
+			markUnavailable(v);
+		}
+	}
+
+	/** Marks given value as available, unless excluded. */
+	public void markAvailable(int v) {
+		if (v >= 0 && v < domain.length) {
+			domain[v] = excluded[v] == 0;
+		}
+	}
+
+	/** Marks given values as available, unless excluded. */
+	public void markAvailable(int... values) {
+		for (int v : values) {
+			markAvailable(v);
+		}
+	}
+
+	/**
+	 * Excludes given values from the domain, they do not become available
+	 * again until included back as many times as excluded.
+	 */
+	public void exclude(int... values) {
+		for (int v : values) {
+			if (v >= 0 && v < domain.length) {
+				excluded[v]++;
+			}
+		}
+		markUnavailable(values);
+	}
+
+	/**
+	 * Includes given excluded values back to the domain, the values not
+	 * excluded any more are marked as available.
+	 */
+	public void include(int... values) {
+		for (int v : values) {
+			if (v >= 0 && v < domain.length && excluded[v] > 0) {
+				excluded[v]--;
+			}
+		}
+		markAvailable(values);
+	}
+
+	/** @return <tt>true</tt> IFF the variable is assigned */
+	public boolean hasValue() {
+		return value != UNASSIGNED;
+	}
+
+	/** @return current value of the variable */
+	public int getValue() {
+		return value;
+	}
+
+	/** Assigns given value if available, e.g. to start from a known solution. */
+	public boolean moveTo(int value) {
+		if (value < 0 || value >= domain.length || !domain[value]) return false;
+		previous = this.value;
+		this.value = value;
+		return true;
+	}
+
+	/** @return <tt>true</tt> IFF the variable has more available values */
+	public boolean hasNextValue() {
+		for (boolean v : domain) {
+			if (v) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Assigns the next available value if any. The values are searched in
+	 * their order, in the direction of the last move first.
+	 */
+	public int nextValue() {
+		final int size = domain.length;
+		final int prev = rankOf(previous);
+		final int current = rankOf(value);
+		previous = value;
+
+		if (prev <= current) {
+			// search forward first
+			for (int r = current + 1; r < size; r++) {
+				if (domain[order[r]]) return value = order[r];
+			}
+			for (int r = current - 1; r >= 0; r--) {
+				if (domain[order[r]]) return value = order[r];
+			}
+		} else {
+			// search backward first
+			final int pos = (current == UNASSIGNED) ? size : current;
+			for (int r = pos - 1; r >= 0; r--) {
+				if (domain[order[r]]) return value = order[r];
+			}
+			for (int r = pos + 1; r < size; r++) {
+				if (domain[order[r]]) return value = order[r];
+			}
+		}
+
+		return value;
+	}
+
+	/** @return rank of given value, unassigned for the unassigned value */
+	private int rankOf(int value) {
+		return (value == UNASSIGNED) ? UNASSIGNED : rank[value];
+	}
+
+	/** @return <tt>true</tt> IFF given variable receives the no-goods of this variable */
+	public boolean isParent(int other) {
+		return index == other + 1;
+	}
+
+	/** @return <tt>true</tt> IFF given variable receives the values of this variable */
+	public boolean isChild(int other) {
+		return index < other;
+	}
+
+	/** Writes the complete state of the variable in a compact binary form. */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(index);
+		out.writeInt(domain.length);
+		for (int v = 0; v < domain.length; v++) {
+			out.writeInt(order[v]);
+			out.writeInt(excluded[v]);
+			out.writeBoolean(domain[v]);
+		}
+		out.writeInt(value);
+		out.writeInt(previous);
+	}
+
+	/** Reads the state following the index and the domain size, see {@link #writeTo(DataOutput)}. */
+	protected void readState(DataInput in) throws IOException {
+		for (int v = 0; v < domain.length; v++) {
+			order[v] = in.readInt();
+			rank[order[v]] = v;
+			excluded[v] = in.readInt();
+			domain[v] = in.readBoolean();
+		}
+		value = in.readInt();
+		previous = in.readInt();
+	}
+
+	/** @return the variable read from its binary form, see {@link #writeTo(DataOutput)} */
+	public static Variable readFrom(DataInput in) throws IOException {
+		final int index = in.readInt();
+		final Variable variable = new Variable(index, in.readInt());
+		variable.readState(in);
+		return variable;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("X%d:%d", index, value);
+	}
+}
@@ -0,0 +1,119 @@
+package massim.agent.student.csp;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A no-good of a distributed CSP, i.e. the values of some variables which
+ * cannot be extended to a solution. The variables are given by their
+ * indices, see {@link Variable}.
+ */
+public class VariableNoGood implements Serializable {
+
+	private static final long serialVersionUID = -2981950735469404870L;
+
+	/** The values of the variables, by the indices of the variables. */
+	private final Map<Integer, Integer> values;
+	/** The entries of the values, the view is created by the sender so the receiver verifies without allocation. */
+	private transient Set<Map.Entry<Integer, Integer>> entries;
+
+	/** Constructor of the VariableNoGood class. */
+	public VariableNoGood() {
+		values = new LinkedHashMap<Integer, Integer>();
+		entries = values.entrySet();
+	}
+
+	/** @return the entries of the values */
+	private Set<Map.Entry<Integer, Integer>> entries() {
+		if (entries == null) {
+			// deserialized
+			entries = values.entrySet();
+		}
+		return entries;
+	}
+
+	/** @return <tt>true</tt> IFF this no-good is empty */
+	public boolean isEmpty() {
+		return values.isEmpty();
+	}
+
+	/** @return the number of the variables in this no-good */
+	public int size() {
+		return values.size();
+	}
+
+	/** @return the values of the variables, by the indices of the variables */
+	public Map<Integer, Integer> getValues() {
+		return Collections.unmodifiableMap(values);
+	}
+
+	/** @return <tt>true</tt> IFF given variable has a value in this no-good */
+	public boolean hasValue(int variable) {
+		return values.containsKey(variable);
+	}
+
+	/** @return the value of given variable, {@link Variable#UNASSIGNED} if none */
+	public int getValue(int variable) {
+		final Integer value = values.get(variable);
+		return (value == null) ? Variable.UNASSIGNED : value;
+	}
+
+	/** Sets the value of given variable. */
+	public void setValue(int variable, int value) {
+		values.put(variable, value);
+	}
+
+	/** @return <tt>true</tt> IFF given agent view verifies the context of this no-good */
+	public boolean verifyContext(AgentView view) {
+		for (Map.Entry<Integer, Integer> entry : entries()) {
+			if (view.getValue(entry.getKey()) != entry.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return <tt>true</tt> IFF given agent view verifies the context of this no-good, except of given variable */
+	public boolean verifyContext(AgentView view, Variable variable) {
+		for (Map.Entry<Integer, Integer> entry : entries()) {
+			if (entry.getKey() != variable.getIndex() && view.getValue(entry.getKey()) != entry.getValue()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return name of given variable in {@link #toString()} */
+	protected String getName(int variable) {
+		return "X" + variable;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || o.getClass() != getClass()) return false;
+		return values.equals(((VariableNoGood) o).values);
+	}
+
+	@Override
+	public int hashCode() {
+		return values.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append('[');
+		for (Map.Entry<Integer, Integer> entry : values.entrySet()) {
+			sb.append(getName(entry.getKey())).append('=').append(entry.getValue()).append(", ");
+		}
+		if (sb.length() > 1) {
+			sb.delete(sb.length() - 2, sb.length());
+		}
+		sb.append(']');
+		return sb.toString();
+	}
+}
@@ -2,34 +2,46 @@ package massim.agent.student.puzzle;
 
 import massim.agent.Action;
 import massim.agent.student.NoGood;
+import massim.agent.student.csp.AgentView;
 
-import java.io.Serializable;
 import java.util.Arrays;
 
 /**
- * A class representing a chessboard for the N-queen puzzle.
+ * A class representing a chessboard for the N-queen puzzle, i.e. the agent
+ * view of the queens with the compiled checker of the N-queen constraints.
+ * <p/>
+ * The queens are counted in every column, diagonal and anti-diagonal, the
+ * number of the attacking pairs is updated by the moves of the queens, so
+ * the constraints are checked in a constant time.
  */
-public class ChessBoard implements PuzzleConstants, Serializable {
+public class ChessBoard extends AgentView implements PuzzleConstants {
 
 	private static final long serialVersionUID = -5399907655370283013L;
 
 	/** The size of the chess board. */
 	private final int size;
 
-	/** The positions of the queens. */
-	private final int[] queenPositions;
+	/** The numbers of the queens in the columns, diagonals and anti-diagonals. */
+	private final int[] columns, diagonals, antiDiagonals;
+	/** The number of the pairs of the queens attacking each other. */
+	private int attacks;
+
+	/** Whether the mirror symmetry of the chessboard is broken. */
+	private boolean symmetryBreaking;
 
 	/** Constructor of the ChessBoard class. */
 	public ChessBoard(int size) {
-		if (size < 1) throw new IllegalArgumentException("size=" + size);
+		super(size);
 		this.size = size;
-		queenPositions = new int[size];
-		invalidatePositions();
+		columns = new int[size];
+		diagonals = new int[2 * size - 1];
+		antiDiagonals = new int[2 * size - 1];
+		attacks = 0;
 	}
 
 	/** Invalidates positions of all the queens. */
 	public void invalidatePositions() {
-		Arrays.fill(queenPositions, INVALID_QUEEN_POSITION);
+		clear();
 	}
 
 	/** Sets position for the given queen. */
@@ -39,40 +51,69 @@ public class ChessBoard implements PuzzleConstants, Serializable {
 
 	/** Sets position for the given queen. */
 	public void setPosition(int queen, int position) {
-		validate(queen, position);
-		queenPositions[queen] = position;
+		setValue(queen, position);
 	}
 
 	/** @return position of the given queen */
 	public int getPosition(int queen) {
-		validate(queen);
-		return queenPositions[queen];
+		return getValue(queen);
+	}
+
+	@Override
+	protected int getDomainSize(int variable) {
+		return size;
+	}
+
+	@Override
+	protected void assigned(int queen, int position) {
+		attacks += columns[position]++ + diagonals[position - queen + size - 1]++ + antiDiagonals[position + queen]++;
+	}
+
+	@Override
+	protected void unassigned(int queen, int position) {
+		attacks -= --columns[position] + --diagonals[position - queen + size - 1] + --antiDiagonals[position + queen];
+	}
+
+	/**
+	 * Sets whether the mirror symmetry of the chessboard is broken. The
+	 * first queen is restricted to the left half of the chessboard (see
+	 * {@link Queen#breakSymmetry()}), which leaves the symmetric solutions
+	 * with the first queen in the middle column of odd sizes. These are
+	 * broken by the second queen restricted to the left half as well.
+	 */
+	public void setSymmetryBreaking(boolean symmetryBreaking) {
+		this.symmetryBreaking = symmetryBreaking;
 	}
 
 	/**
 	 * Checks whether all the constrains for the N-queen puzzle are
-	 * satisfied, i.e. uniqueness of row, column and diagonal positions.
+	 * satisfied, i.e. uniqueness of row, column and diagonal positions,
+	 * and the symmetry breaking constraint if enabled.
 	 */
-	public boolean checkConstraints() {
-		for (int i = 0; i < size; i++) {
-			int queen = queenPositions[i];
-			if (queen != INVALID_QUEEN_POSITION) {
-				for (int j = 0; j < size; j++) {
-					int other = queenPositions[j];
-					if (i != j && other != INVALID_QUEEN_POSITION) {
-						// check for column constraints
-						if (queen == other) {
-							return false;
-						}
-						// check for diagonal constraints
-						if (queen - i == other - j || queen + i == other + j) {
-							return false;
-						}
-					}
-				}
+	@Override
+	public boolean isConsistent() {
+		if (symmetryBreaking && size % 2 == 1 && size > 1) {
+			final int middle = size / 2;
+			if (getValue(0) == middle && getValue(1) > middle) {
+				return false;
 			}
 		}
-		return true;
+		return attacks == 0;
+	}
+
+	/** Same as {@link #isConsistent()}. */
+	public boolean checkConstraints() {
+		return isConsistent();
+	}
+
+	/**
+	 * @return <tt>true</tt> IFF given position of given queen satisfies the
+	 * constraints with the other placed queens, the position is not set
+	 */
+	public boolean isConsistent(int queen, int position) {
+		// the queen itself is counted in all three lines of its position
+		final int self = (getValue(queen) == position) ? 3 : 0;
+		return columns[position] + diagonals[position - queen + size - 1] + antiDiagonals[position + queen] == self;
 	}
 
 	/** @return a no-good (chessboard state) for given queen */
@@ -82,24 +123,12 @@ public class ChessBoard implements PuzzleConstants, Serializable {
 
 	/** @return a no-good (chessboard state) for given queen number */
 	public NoGood getNoGoodForQueen(int n) {
-		validate(n);
-		final NoGood noGood = new NoGood();
-		for (int i = 0; i < size; i++) {
-			int queen = queenPositions[i];
-			if (i != n && queen != INVALID_QUEEN_POSITION) {
-				noGood.setPosition(i, queen);
-			}
-		}
-		return noGood;
+		return (NoGood) getNoGood(n);
 	}
 
-	/** Throws an exception if given positions are not valid. */
-	private void validate(int... positions) {
-		for (int position : positions) {
-			if (position != INVALID_QUEEN_POSITION && (position < 0 || position >= size)) {
-				throw new IllegalArgumentException("invalid position " + position);
-			}
-		}
+	@Override
+	protected NoGood createNoGood() {
+		return new NoGood();
 	}
 
 	@Override
@@ -107,9 +136,9 @@ public class ChessBoard implements PuzzleConstants, Serializable {
 		final StringBuilder sb = new StringBuilder(size + size * size);
 		for (int i = 0; i < size; i++) {
 			char[] row = new char[size];
-			if (queenPositions[i] != INVALID_QUEEN_POSITION) {
+			if (getValue(i) != INVALID_QUEEN_POSITION) {
 				Arrays.fill(row, '-');
-				row[queenPositions[i]] = 'Q';
+				row[getValue(i)] = 'Q';
 			} else {
 				Arrays.fill(row, '?');
 			}
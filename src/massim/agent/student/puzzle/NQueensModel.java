@@ -0,0 +1,48 @@
+package massim.agent.student.puzzle;
+
+import massim.agent.student.csp.ConstraintModel;
+
+/**
+ * The N-queen puzzle as a constraint model, the variables are the queens
+ * and the values their columns.
+ */
+public class NQueensModel implements ConstraintModel {
+
+	/** The size of the chessboard. */
+	private final int size;
+	/** Whether the mirror symmetry of the chessboard is broken. */
+	private final boolean symmetryBreaking;
+
+	/** Constructor of the NQueensModel class. */
+	public NQueensModel(int size, boolean symmetryBreaking) {
+		if (size < 1) throw new IllegalArgumentException("size=" + size);
+		this.size = size;
+		this.symmetryBreaking = symmetryBreaking;
+	}
+
+	@Override
+	public int getVariables() {
+		return size;
+	}
+
+	@Override
+	public Queen createVariable(int index) {
+		final Queen queen = new Queen(index, size);
+		if (symmetryBreaking) {
+			queen.breakSymmetry();
+		}
+		return queen;
+	}
+
+	@Override
+	public ChessBoard createView() {
+		final ChessBoard chessBoard = new ChessBoard(size);
+		chessBoard.setSymmetryBreaking(symmetryBreaking);
+		return chessBoard;
+	}
+
+	@Override
+	public String toString() {
+		return "queens-" + size;
+	}
+}
@@ -1,6 +1,7 @@
 package massim.agent.student.puzzle;
 
 import massim.agent.Action;
+import massim.agent.student.csp.Variable;
 
 /**
  * Contains the constant of the puzzle (problem).
@@ -8,7 +9,7 @@ import massim.agent.Action;
 public interface PuzzleConstants {
 
 	/** Invalid queen position indicator, i.e. unassigned position. */
-	public static final int INVALID_QUEEN_POSITION = -1;
+	public static final int INVALID_QUEEN_POSITION = Variable.UNASSIGNED;
 
 	/** Possible actions of the agents. */
 	public static final Action[] ACTIONS = {
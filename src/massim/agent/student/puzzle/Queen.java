@@ -1,125 +1,97 @@
 package massim.agent.student.puzzle;
 
-import java.io.Serializable;
-import java.util.Arrays;
+import massim.agent.student.csp.Variable;
+
+import java.io.DataInput;
+import java.io.IOException;
 
 /**
- * A class representing a queen at the chessboard.
+ * A class representing a queen at the chessboard, i.e. the variable of a
+ * row whose value is the column of the queen.
  */
-public class Queen implements PuzzleConstants, Serializable {
+public class Queen extends Variable implements PuzzleConstants {
 
 	private static final long serialVersionUID = -5231646753847234315L;
 
-	/** The number or row of the queen. */
-	private final int number;
-
-	/** The domain, possible queen positions. */
-	private final boolean[] domain;
-
-	/** Current position of the queen. */
-	private int position;
-	/** Previous position of the queen. */
-	private int previous;
-
 	/** Constructor of the Queen class. */
 	public Queen(int number, int chessboardSize) {
-		if (chessboardSize < 1) throw new IllegalArgumentException("chessboardSize=" + chessboardSize);
+		super(number, chessboardSize);
 		if (number >= chessboardSize) throw new IllegalArgumentException("number=" + number);
-		this.number = number;
-		domain = new boolean[chessboardSize];
-		Arrays.fill(domain, true);
-		invalidate();
 	}
 
 	/** @return the number of the queen */
 	public int getNumber() {
-		return number;
+		return getIndex();
 	}
 
-	/** Invalidates position of the queen. */
-	public void invalidate() {
-		position = INVALID_QUEEN_POSITION;
-		previous = INVALID_QUEEN_POSITION;
-	}
-
-	/** Marks given positions as unavailable. */
-	public void markUnavailable(int... positions) {
-		for (int p : positions) {
-			if (p >= 0 && p < domain.length) {
-				domain[p] = false;
-				position = (position == p) ? INVALID_QUEEN_POSITION : position;
-			}
+	/**
+	 * Breaks the mirror symmetry of the chessboard, i.e. excludes the right
+	 * half of the domain of the first queen. For odd sizes the middle column
+	 * stays available, see {@link ChessBoard#setSymmetryBreaking(boolean)}.
+	 */
+	public void breakSymmetry() {
+		if (getNumber() != 0) return;
+		final int size = getDomainSize();
+		for (int p = (size - 1) / 2 + 1; p < size; p++) {
+			exclude(p);
 		}
 	}
 
-	/** Marks given positions as available. */
-	public void markAvailable(int... positions) {
-		for (int p : positions) {
-			if (p >= 0 && p < domain.length) {
-				domain[p] = true;
-			}
+	/**
+	 * Restores the mirror symmetry broken by {@link #breakSymmetry()}, i.e.
+	 * includes the right half of the domain of the first queen back.
+	 */
+	public void restoreSymmetry() {
+		if (getNumber() != 0) return;
+		final int size = getDomainSize();
+		for (int p = (size - 1) / 2 + 1; p < size; p++) {
+			include(p);
 		}
 	}
 
 	/** @return <tt>true</tt> IFF the queen has assigned some position */
 	public boolean hasPosition() {
-		return position != INVALID_QUEEN_POSITION;
+		return hasValue();
 	}
 
 	/** @return current position of the queen */
 	public int getPosition() {
-		return position;
+		return getValue();
 	}
 
 	/** @return <tt>true</tt> IFF the queen has more available positions */
 	public boolean hasNextPosition() {
-		for (boolean p : domain) {
-			if (p) return true;
-		}
-		return false;
+		return hasNextValue();
 	}
 
-	/** Moves the queen to next available position if any. */
+	/**
+	 * Moves the queen to next available position if any. The positions are
+	 * searched in their order, in the direction of the last move first.
+	 */
 	public int nextPosition() {
-		final int size = domain.length;
-		final int prev = previous;
-		previous = position;
-
-		if (prev <= position) {
-			// search forward first
-			final int pos = (position == INVALID_QUEEN_POSITION) ? -1 : position;
-			for (int p = pos + 1; p < size; p++) {
-				if (domain[p]) return position = p;
-			}
-			for (int p = pos - 1; p >= 0; p--) {
-				if (domain[p]) return position = p;
-			}
-		} else {
-			// search backward first
-			final int pos = (position == INVALID_QUEEN_POSITION) ? size : position;
-			for (int p = pos - 1; p >= 0; p--) {
-				if (domain[p]) return position = p;
-			}
-			for (int p = pos + 1; p < size; p++) {
-				if (domain[p]) return position = p;
-			}
-		}
+		return nextValue();
+	}
 
-		return position;
+	/** @return the queen read from its binary form, see {@link #writeTo(java.io.DataOutput)} */
+	public static Queen readFrom(DataInput in) throws IOException {
+		final int number = in.readInt();
+		final Queen queen = new Queen(number, in.readInt());
+		queen.readState(in);
+		return queen;
 	}
 
 	/** @return <tt>true</tt> IFF given queen is a parent of this queen */
 	public boolean isParentQueen(int queenNumber) {
-		return number == queenNumber + 1;
+		return isParent(queenNumber);
 	}
 
 	/** @return <tt>true</tt> IFF given queen is a child of this queen */
 	public boolean isChildQueen(int queenNumber) {
-		return number < queenNumber;
+		return isChild(queenNumber);
 	}
 
 	@Override
 	public String toString() {
-		return String.format("Q%d:%d", number, position);
+		return String.format("Q%d:%d", getNumber(), getPosition());
 	}
 }
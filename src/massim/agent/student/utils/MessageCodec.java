@@ -0,0 +1,267 @@
+package massim.agent.student.utils;
+
+import cz.agents.alite.communication.content.Content;
+import massim.agent.Position;
+import massim.agent.student.AgentState;
+import massim.agent.student.DomainConstraint;
+import massim.agent.student.NoGood;
+import massim.agent.student.TerminationToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the message contents. The data types used by
+ * the agents are encoded field by field with variable-length integers,
+ * other serializable data fall back to the Java serialization.
+ * <p/>
+ * The codec keeps a table of the strings, i.e. the message types and the
+ * agent names, a string is written in full once and then referenced by
+ * its index. A stream has to be decoded by a single codec in the order of
+ * encoding, the codec is not thread-safe.
+ */
+public class MessageCodec {
+
+	private static final int NULL = 0;
+	private static final int INTEGER = 1;
+	private static final int FALSE = 2;
+	private static final int TRUE = 3;
+	private static final int INT_ARRAY = 4;
+	private static final int STRING = 5;
+	private static final int AGENT_STATE = 6;
+	private static final int POSITION = 7;
+	private static final int NO_GOOD = 8;
+	private static final int TOKEN = 9;
+	private static final int CONSTRAINT = 10;
+	private static final int SERIALIZED = 11;
+
+	/** Indices of the strings written so far. */
+	private final Map<String, Integer> written = new HashMap<String, Integer>();
+	/** The strings read so far by their indices. */
+	private final List<String> read = new ArrayList<String>();
+
+	/** Writes given content of a message. */
+	public void writeContent(DataOutput out, Content content) throws IOException {
+		final Object data = content.getData();
+		if (data instanceof MessageData) {
+			final MessageData<?> messageData = (MessageData<?>) data;
+			out.writeBoolean(true);
+			writeString(out, messageData.getType());
+			writeValue(out, messageData.getData());
+		} else {
+			out.writeBoolean(false);
+			writeValue(out, data);
+		}
+	}
+
+	/** @return the content of a message read from given input */
+	public Content readContent(DataInput in) throws IOException {
+		if (in.readBoolean()) {
+			final String type = readString(in);
+			return MessageUtils.create(type, readValue(in));
+		}
+		return new Content(readValue(in));
+	}
+
+	/** Writes given string, a string written before is referenced by its index. */
+	public void writeString(DataOutput out, String string) throws IOException {
+		if (string == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		final Integer index = written.get(string);
+		if (index != null) {
+			writeVarInt(out, index + 2);
+		} else {
+			written.put(string, written.size());
+			writeVarInt(out, 1);
+			out.writeUTF(string);
+		}
+	}
+
+	/** @return the string read from given input */
+	public String readString(DataInput in) throws IOException {
+		final int code = readVarInt(in);
+		if (code == 0) return null;
+		if (code == 1) {
+			final String string = in.readUTF();
+			read.add(string);
+			return string;
+		}
+		if (code - 2 >= read.size()) throw new IOException("unknown string " + (code - 2));
+		return read.get(code - 2);
+	}
+
+	/** Writes given message data. */
+	public void writeValue(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			writeSignedVarInt(out, (Integer) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof int[]) {
+			final int[] array = (int[]) value;
+			out.writeByte(INT_ARRAY);
+			writeVarInt(out, array.length);
+			for (int i : array) {
+				writeSignedVarInt(out, i);
+			}
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof AgentState) {
+			out.writeByte(AGENT_STATE);
+			writeVarInt(out, ((AgentState) value).ordinal());
+		} else if (value instanceof Position) {
+			final Position position = (Position) value;
+			out.writeByte(POSITION);
+			writeSignedVarInt(out, position.getX());
+			writeSignedVarInt(out, position.getY());
+		} else if (value instanceof NoGood) {
+			final NoGood noGood = (NoGood) value;
+			out.writeByte(NO_GOOD);
+			writeVarInt(out, noGood.size());
+			for (Map.Entry<Integer, Integer> position : noGood.getPositions().entrySet()) {
+				writeVarInt(out, position.getKey());
+				writeSignedVarInt(out, position.getValue());
+			}
+			writeVarInt(out, noGood.getDependencies().size());
+			for (Integer dependency : noGood.getDependencies()) {
+				writeVarInt(out, dependency);
+			}
+		} else if (value instanceof TerminationToken) {
+			final TerminationToken token = (TerminationToken) value;
+			out.writeByte(TOKEN);
+			writeString(out, token.getInitiator());
+			writeVarInt(out, token.getAgentSequence().length);
+			for (String agent : token.getAgentSequence()) {
+				writeString(out, agent);
+			}
+			writeVarInt(out, token.getWave());
+			writeSignedVarInt(out, token.getMessageCounter());
+			writeVarInt(out, token.getReceivedCounter());
+		} else if (value instanceof DomainConstraint) {
+			final DomainConstraint constraint = (DomainConstraint) value;
+			out.writeByte(CONSTRAINT);
+			writeVarInt(out, constraint.getId());
+			writeVarInt(out, constraint.getQueen());
+			writeVarInt(out, constraint.getPosition());
+			out.writeBoolean(constraint.isPinned());
+		} else {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final ObjectOutputStream objects = new ObjectOutputStream(bytes);
+			objects.writeObject(value);
+			objects.close();
+			out.writeByte(SERIALIZED);
+			writeVarInt(out, bytes.size());
+			out.write(bytes.toByteArray());
+		}
+	}
+
+	/** @return the message data read from given input */
+	public Object readValue(DataInput in) throws IOException {
+		final int tag = in.readUnsignedByte();
+		switch (tag) {
+			case NULL:
+				return null;
+			case INTEGER:
+				return readSignedVarInt(in);
+			case FALSE:
+				return Boolean.FALSE;
+			case TRUE:
+				return Boolean.TRUE;
+			case INT_ARRAY: {
+				final int[] array = new int[readVarInt(in)];
+				for (int i = 0; i < array.length; i++) {
+					array[i] = readSignedVarInt(in);
+				}
+				return array;
+			}
+			case STRING:
+				return readString(in);
+			case AGENT_STATE:
+				return AgentState.values()[readVarInt(in)];
+			case POSITION:
+				return new Position(readSignedVarInt(in), readSignedVarInt(in));
+			case NO_GOOD: {
+				final NoGood noGood = new NoGood();
+				final int length = readVarInt(in);
+				for (int i = 0; i < length; i++) {
+					noGood.setPosition(readVarInt(in), readSignedVarInt(in));
+				}
+				final int nDependencies = readVarInt(in);
+				if (nDependencies > 0) {
+					final List<Integer> dependencies = new ArrayList<Integer>(nDependencies);
+					for (int i = 0; i < nDependencies; i++) {
+						dependencies.add(readVarInt(in));
+					}
+					noGood.addDependencies(dependencies);
+				}
+				return noGood;
+			}
+			case TOKEN: {
+				final String initiator = readString(in);
+				final String[] agentSequence = new String[readVarInt(in)];
+				for (int i = 0; i < agentSequence.length; i++) {
+					agentSequence[i] = readString(in);
+				}
+				return new TerminationToken(initiator, agentSequence, readVarInt(in), readSignedVarInt(in), readVarInt(in));
+			}
+			case CONSTRAINT:
+				return new DomainConstraint(readVarInt(in), readVarInt(in), readVarInt(in), in.readBoolean());
+			case SERIALIZED: {
+				final byte[] bytes = new byte[readVarInt(in)];
+				in.readFully(bytes);
+				try {
+					return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+				} catch (ClassNotFoundException e) {
+					throw new IOException("unknown message data " + e.getMessage());
+				}
+			}
+			default:
+				throw new IOException("unknown message data tag " + tag);
+		}
+	}
+
+	/** Writes given non-negative integer in 1-5 bytes. */
+	public static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/** @return non-negative integer read from given input */
+	public static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			final int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("malformed variable-length integer");
+	}
+
+	/** Writes given integer, the small negative numbers are short as well. */
+	public static void writeSignedVarInt(DataOutput out, int value) throws IOException {
+		writeVarInt(out, (value << 1) ^ (value >> 31));
+	}
+
+	/** @return integer read from given input */
+	public static int readSignedVarInt(DataInput in) throws IOException {
+		final int value = readVarInt(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -1,11 +1,13 @@
 package massim.agent.student.utils;
 
+import massim.agent.metrics.TypedMessage;
+
 import java.io.Serializable;
 
 /**
  * Message data container class.
  */
-public class MessageData<T> implements Serializable {
+public class MessageData<T> implements TypedMessage, Serializable {
 
 	private static final long serialVersionUID = -8701920249370513743L;
 
@@ -21,6 +23,7 @@ public class MessageData<T> implements Serializable {
 	}
 
 	/** Returns type string of the message. */
+	@Override
 	public String getType() {
 		return type;
 	}
@@ -0,0 +1,137 @@
+package massim.agent.trace;
+
+import cz.agents.alite.communication.Message;
+import massim.agent.student.utils.MessageCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the records of a trace written by {@link TraceRecorder} one by one.
+ * The fields of the last record are available by the getters, the fields
+ * not present in the record are not defined.
+ */
+public class TraceReader {
+
+	private final DataInputStream in;
+	private final MessageCodec codec = new MessageCodec();
+	private long nextMessageId = 0;
+
+	private String agent, type;
+	private List<String> agents;
+	private Message message;
+	private int posX, posY, step, millis, count, hash;
+
+	/**
+	 * Constructor of the TraceReader class.
+	 *
+	 * @param data the whole trace
+	 * @throws IOException if not a trace of the supported version
+	 */
+	public TraceReader(byte[] data) throws IOException {
+		in = new DataInputStream(new ByteArrayInputStream(data));
+		if (in.readInt() != TraceRecorder.MAGIC) throw new IOException("not a trace");
+		final int version = in.readInt();
+		if (version != TraceRecorder.VERSION) throw new IOException("unsupported trace version " + version);
+	}
+
+	/**
+	 * Reads the next record.
+	 *
+	 * @return type of the record (see {@link TraceRecorder#STEP} etc.), -1 at the end of the trace
+	 * @throws IOException if the trace is corrupted
+	 */
+	public int next() throws IOException {
+		final int record;
+		try {
+			record = in.readUnsignedByte();
+		} catch (EOFException e) {
+			return -1;
+		}
+		agent = codec.readString(in);
+		switch (record) {
+			case TraceRecorder.AGENT:
+				final int nAgents = MessageCodec.readVarInt(in);
+				agents = new ArrayList<String>(nAgents);
+				for (int i = 0; i < nAgents; i++) {
+					agents.add(codec.readString(in));
+				}
+				break;
+			case TraceRecorder.STEP:
+				posX = MessageCodec.readSignedVarInt(in);
+				posY = MessageCodec.readSignedVarInt(in);
+				step = MessageCodec.readVarInt(in);
+				millis = MessageCodec.readVarInt(in);
+				break;
+			case TraceRecorder.RECEIVE:
+				final String sender = codec.readString(in);
+				message = new Message(sender, codec.readContent(in), nextMessageId++);
+				break;
+			case TraceRecorder.POLL:
+				count = MessageCodec.readVarInt(in);
+				break;
+			case TraceRecorder.SEND:
+				type = codec.readString(in);
+				count = MessageCodec.readVarInt(in);
+				hash = in.readInt();
+				break;
+			default:
+				throw new IOException("unknown trace record " + record);
+		}
+		return record;
+	}
+
+	/** @return name of the agent of the record */
+	public String getAgent() {
+		return agent;
+	}
+
+	/** @return names of all the agents of an {@link TraceRecorder#AGENT} record */
+	public List<String> getAgents() {
+		return agents;
+	}
+
+	/** @return the received message of a {@link TraceRecorder#RECEIVE} record */
+	public Message getMessage() {
+		return message;
+	}
+
+	/** @return type of the sent message of a {@link TraceRecorder#SEND} record, null if unknown */
+	public String getType() {
+		return type;
+	}
+
+	/** @return hash of the content of the sent message of a {@link TraceRecorder#SEND} record, see {@link TraceRecorder#hash} */
+	public int getHash() {
+		return hash;
+	}
+
+	/** @return the perceived column of a {@link TraceRecorder#STEP} record */
+	public int getPosX() {
+		return posX;
+	}
+
+	/** @return the perceived row of a {@link TraceRecorder#STEP} record */
+	public int getPosY() {
+		return posY;
+	}
+
+	/** @return the simulation step of a {@link TraceRecorder#STEP} record */
+	public int getStep() {
+		return step;
+	}
+
+	/** @return time of a {@link TraceRecorder#STEP} record since the start of the recording (in milliseconds) */
+	public int getMillis() {
+		return millis;
+	}
+
+	/** @return the number of the messages of a {@link TraceRecorder#POLL} record, or of the receivers of a {@link TraceRecorder#SEND} record */
+	public int getCount() {
+		return count;
+	}
+}
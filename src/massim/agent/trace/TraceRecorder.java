@@ -0,0 +1,203 @@
+package massim.agent.trace;
+
+import cz.agents.alite.communication.Message;
+import cz.agents.alite.communication.content.Content;
+import massim.agent.MASPerception;
+import massim.agent.metrics.TypedMessage;
+import massim.agent.student.utils.MessageCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the inputs of the agents, i.e. the perceptions of the steps and
+ * the received messages in the order the agents see them, together with
+ * the sent messages. The trace is a compact binary stream, see
+ * {@link MessageCodec}, and is replayed by
+ * {@link massim.agent.driver.TraceReplayDriver}.
+ * <p/>
+ * The recording is serialized by the recorder, the messages received by an
+ * agent are recorded under the lock of its inbox, so the trace tells
+ * exactly which messages the agent took from the inbox in every step.
+ */
+public class TraceRecorder {
+
+	/** Version of the trace format, traces of other versions are not replayed. */
+	public static final int VERSION = 2;
+
+	/** Magic number of the trace, <tt>DCTR</tt>. */
+	static final int MAGIC = 0x44435452;
+
+	/** Record of an agent joining, with the names of all the agents. */
+	public static final int AGENT = 0;
+	/** Record of a step of an agent, with its perception. */
+	public static final int STEP = 1;
+	/** Record of a message added to the inbox of an agent. */
+	public static final int RECEIVE = 2;
+	/** Record of an agent taking the messages from its inbox. */
+	public static final int POLL = 3;
+	/** Record of a message sent by an agent, with the hash of its content. */
+	public static final int SEND = 4;
+
+	/** The recorder of the JVM, see {@link #getDefault()}. */
+	private static TraceRecorder defaultRecorder;
+	private static boolean defaultCreated = false;
+
+	private final File file;
+	private final DataOutputStream out;
+	private final MessageCodec codec = new MessageCodec();
+	private final long startNanos = System.nanoTime();
+	private long records = 0;
+	private boolean closed = false;
+
+	/** Constructor of the TraceRecorder class, the file is overwritten. */
+	public TraceRecorder(File file) throws IOException {
+		this.file = file;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/**
+	 * Returns the recorder of the JVM writing to the file given by the system
+	 * property <tt>massim.trace</tt>, null if the property is not set. The
+	 * trace is completed when the JVM exits.
+	 */
+	public static synchronized TraceRecorder getDefault() {
+		if (!defaultCreated) {
+			defaultCreated = true;
+			final String fileName = System.getProperty("massim.trace");
+			if (fileName != null) {
+				try {
+					defaultRecorder = new TraceRecorder(new File(fileName));
+					Runtime.getRuntime().addShutdownHook(new Thread("trace-close") {
+						@Override
+						public void run() {
+							defaultRecorder.close();
+						}
+					});
+				} catch (IOException e) {
+					System.out.println("cannot record the trace " + fileName + ": " + e.getMessage());
+				}
+			}
+		}
+		return defaultRecorder;
+	}
+
+	/** Records an agent joining the system of given agents. */
+	public synchronized void agent(String agent, List<String> agents) {
+		if (closed) return;
+		try {
+			out.writeByte(AGENT);
+			codec.writeString(out, agent);
+			MessageCodec.writeVarInt(out, agents.size());
+			for (String name : agents) {
+				codec.writeString(out, name);
+			}
+			records++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/** Records the start of a step of given agent. */
+	public synchronized void step(String agent, MASPerception percept) {
+		if (closed) return;
+		try {
+			out.writeByte(STEP);
+			codec.writeString(out, agent);
+			MessageCodec.writeSignedVarInt(out, percept.getPosX());
+			MessageCodec.writeSignedVarInt(out, percept.getPosY());
+			MessageCodec.writeVarInt(out, percept.getStep());
+			MessageCodec.writeVarInt(out, (int) ((System.nanoTime() - startNanos) / 1000000L));
+			records++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/** Records given message added to the inbox of given agent, called under the lock of the inbox. */
+	public synchronized void received(String agent, Message message) {
+		if (closed) return;
+		try {
+			out.writeByte(RECEIVE);
+			codec.writeString(out, agent);
+			codec.writeString(out, message.getSender());
+			codec.writeContent(out, message.getContent());
+			records++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/** Records given agent taking given number of messages from its inbox, called under the lock of the inbox. */
+	public synchronized void polled(String agent, int count) {
+		if (closed) return;
+		try {
+			out.writeByte(POLL);
+			codec.writeString(out, agent);
+			MessageCodec.writeVarInt(out, count);
+			records++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/** Records given agent sending a message with given content to given number of receivers. */
+	public synchronized void sent(String agent, Content content, int receivers) {
+		if (closed) return;
+		try {
+			out.writeByte(SEND);
+			codec.writeString(out, agent);
+			final Object data = content.getData();
+			codec.writeString(out, (data instanceof TypedMessage) ? ((TypedMessage) data).getType() : null);
+			MessageCodec.writeVarInt(out, receivers);
+			out.writeInt(hash(content));
+			records++;
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * @return hash of the encoded content, independent of the strings
+	 * encoded before, the replay compares the sent messages by the hash
+	 */
+	public static int hash(Content content) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new MessageCodec().writeContent(new DataOutputStream(bytes), content);
+		return Arrays.hashCode(bytes.toByteArray());
+	}
+
+	/** @return the number of records written so far */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/** Completes the trace, the next records are ignored. */
+	public synchronized void close() {
+		if (closed) return;
+		closed = true;
+		try {
+			out.close();
+		} catch (IOException e) {
+			System.out.println("cannot complete the trace " + file + ": " + e.getMessage());
+		}
+	}
+
+	/** Stops the recording after a failure. */
+	private void fail(IOException e) {
+		System.out.println("cannot record the trace " + file + ": " + e.getMessage());
+		closed = true;
+		try {
+			out.close();
+		} catch (IOException ignored) {
+		}
+	}
+}